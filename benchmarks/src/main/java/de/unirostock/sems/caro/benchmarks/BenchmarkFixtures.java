@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import de.unirostock.sems.caro.ContainerGenerator;
+
+
+
+
+/**
+ * The Class BenchmarkFixtures provides the containers to convert in the
+ * benchmarks. A source is either the name of a file in the fixture directory
+ * of CaRo (<code>test/</code>, can be changed using the system property
+ * <code>caro.fixtures</code>) or a generated container of the form
+ * <code>generated-&lt;entries&gt;x&lt;bytes&gt;[-annotated]</code>, that is
+ * <code>entries</code> files of <code>bytes</code> random bytes each, created
+ * by the {@link ContainerGenerator}. The first entry is a main entry and
+ * <code>-annotated</code> sources carry two meta data objects/annotations per
+ * entry.
+ * 
+ * @author Martin Scharm
+ */
+public class BenchmarkFixtures
+{
+	
+	/** The prefix of generated sources. */
+	public static final String	GENERATED_PREFIX	= "generated-";
+	
+	/** The suffix of generated sources carrying meta data. */
+	public static final String	ANNOTATED_SUFFIX	= "-annotated";
+	
+	/** The seed used to generate the containers. */
+	public static final long		SEED							= 42;
+	
+	
+	/**
+	 * Gets the directory containing CaRo's test fixtures.
+	 * 
+	 * @return the fixture directory
+	 */
+	public static File getFixtureDirectory ()
+	{
+		String dir = System.getProperty ("caro.fixtures");
+		if (dir != null)
+			return new File (dir);
+		// we are either running from CaRo's root or from the benchmarks module
+		File test = new File ("test");
+		if (test.isDirectory ())
+			return test;
+		return new File ("../test");
+	}
+	
+	
+	/**
+	 * Prepare a COMBINE archive to convert.
+	 * 
+	 * @param source
+	 *          the source as described above
+	 * @param workDir
+	 *          the directory to generate the container in
+	 * @return the COMBINE archive
+	 * @throws Exception
+	 *           if the archive cannot be generated
+	 */
+	public static File combineArchive (String source, File workDir)
+		throws Exception
+	{
+		if (!source.startsWith (GENERATED_PREFIX))
+			return fixture (source);
+		
+		return createGenerator (source).generateCombineArchive (
+			new File (workDir, source + ".omex"));
+	}
+	
+	
+	/**
+	 * Prepare a research object to convert.
+	 * 
+	 * @param source
+	 *          the source as described above
+	 * @param workDir
+	 *          the directory to generate the container in
+	 * @return the research object
+	 * @throws Exception
+	 *           if the research object cannot be generated
+	 */
+	public static File researchObject (String source, File workDir)
+		throws Exception
+	{
+		if (!source.startsWith (GENERATED_PREFIX))
+			return fixture (source);
+		
+		return createGenerator (source).generateResearchObject (
+			new File (workDir, source + ".ro"));
+	}
+	
+	
+	/**
+	 * Recursively delete a directory.
+	 * 
+	 * @param dir
+	 *          the directory
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public static void delete (File dir) throws IOException
+	{
+		if (dir == null || !dir.exists ())
+			return;
+		Files.walkFileTree (dir.toPath (), new SimpleFileVisitor<Path> ()
+		{
+			
+			@Override
+			public FileVisitResult visitFile (Path file, BasicFileAttributes attrs)
+				throws IOException
+			{
+				Files.delete (file);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			
+			@Override
+			public FileVisitResult postVisitDirectory (Path dir, IOException exc)
+				throws IOException
+			{
+				if (exc != null)
+					throw exc;
+				Files.delete (dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	
+	/**
+	 * Get a fixture shipped with CaRo.
+	 * 
+	 * @param name
+	 *          the name of the fixture
+	 * @return the fixture
+	 * @throws IOException
+	 *           if the fixture does not exist
+	 */
+	private static File fixture (String name) throws IOException
+	{
+		File file = new File (getFixtureDirectory (), name);
+		if (!file.isFile ())
+			throw new IOException ("cannot find fixture " + file.getAbsolutePath ()
+				+ " -- set the system property caro.fixtures to CaRo's test directory");
+		return file;
+	}
+	
+	
+	/**
+	 * Creates the generator for a generated source.
+	 * 
+	 * @param source
+	 *          the source
+	 * @return the generator
+	 */
+	private static ContainerGenerator createGenerator (String source)
+	{
+		String shape = source.substring (GENERATED_PREFIX.length ());
+		boolean annotated = shape.endsWith (ANNOTATED_SUFFIX);
+		if (annotated)
+			shape = shape.substring (0, shape.length () - ANNOTATED_SUFFIX.length ());
+		String[] dimensions = shape.split ("x");
+		long size = Long.parseLong (dimensions[1]);
+		
+		ContainerGenerator generator = new ContainerGenerator (SEED);
+		generator.setEntries (Integer.parseInt (dimensions[0]));
+		generator.setSizes (size, size);
+		generator.setMainEntries (1);
+		if (annotated)
+		{
+			generator.setMetadataDensity (1);
+			generator.setAnnotationFanOut (2);
+		}
+		return generator;
+	}
+}
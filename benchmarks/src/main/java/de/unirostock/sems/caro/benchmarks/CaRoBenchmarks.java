@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+
+
+/**
+ * The Class CaRoBenchmarks runs the benchmarks. It accepts the usual JMH
+ * command line arguments, but in contrast to JMH's own main class the GC
+ * profiler is always enabled, so that the allocation rates are reported next
+ * to the throughput.
+ * 
+ * @author Martin Scharm
+ */
+public class CaRoBenchmarks
+{
+	
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *          the JMH command line arguments
+	 * @throws Exception
+	 *           if the benchmarks cannot be run
+	 */
+	public static void main (String[] args) throws Exception
+	{
+		CommandLineOptions cmd = new CommandLineOptions (args);
+		if (cmd.shouldHelp ())
+		{
+			cmd.showHelp ();
+			return;
+		}
+		if (cmd.shouldList ())
+		{
+			new Runner (cmd).list ();
+			return;
+		}
+		Options options = cmd;
+		if (!hasGcProfiler (cmd))
+			options = new OptionsBuilder ().parent (cmd)
+				.addProfiler (GCProfiler.class).build ();
+		new Runner (options).run ();
+	}
+	
+	
+	/**
+	 * Was the GC profiler already requested on the command line?
+	 * 
+	 * @param options
+	 *          the options
+	 * @return true, if the GC profiler is requested
+	 */
+	private static boolean hasGcProfiler (Options options)
+	{
+		for (ProfilerConfig profiler : options.getProfilers ())
+			if (profiler.getKlass ().equals (GCProfiler.class.getName ())
+				|| profiler.getKlass ().equals ("gc"))
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+
+/**
+ * The Class ConvertedBytes counts the bytes of the source containers that were
+ * converted. As an operations counter JMH reports it as a rate, that is bytes
+ * per second in throughput mode.
+ * 
+ * @author Martin Scharm
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ConvertedBytes
+{
+	
+	/** The number of converted bytes. */
+	public long	bytes;
+	
+	
+	/**
+	 * Reset the counter before every iteration.
+	 */
+	@Setup(Level.Iteration)
+	public void reset ()
+	{
+		bytes = 0;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unirostock.sems.caro.converters.RoToCa;
+
+
+
+/**
+ * The Class RoToCaBenchmark measures the conversion of a research object into a
+ * COMBINE archive.
+ * 
+ * @author Martin Scharm
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoToCaBenchmark
+{
+	
+	/** The source to convert, see {@link BenchmarkFixtures}. */
+	@Param({ "DocumentObject.ro", "test-ro-metatests.ro", "test-ro-camanifest.ro",
+		"generated-10x1024", "generated-100x1024", "generated-1000x1024",
+		"generated-10x1048576", "generated-1000x1024-annotated" })
+	public String	source;
+	
+	/** The directory for generated sources and converted containers. */
+	private File	workDir;
+	
+	/** The container to convert. */
+	private File	container;
+	
+	/** The location of the converted container. */
+	private File	target;
+	
+	
+	/**
+	 * Prepare the container to convert.
+	 * 
+	 * @throws Exception
+	 *           if the container cannot be prepared
+	 */
+	@Setup(Level.Trial)
+	public void setUp () throws Exception
+	{
+		workDir = Files.createTempDirectory ("CaRoBenchmark").toFile ();
+		container = BenchmarkFixtures.researchObject (source, workDir);
+		target = new File (workDir, "converted.omex");
+	}
+	
+	
+	/**
+	 * Delete all files created by this benchmark.
+	 * 
+	 * @throws Exception
+	 *           if the files cannot be deleted
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown () throws Exception
+	{
+		BenchmarkFixtures.delete (workDir);
+	}
+	
+	
+	/**
+	 * Convert the container.
+	 * 
+	 * @param converted
+	 *          the counter of converted bytes
+	 * @return true, if the conversion succeeded
+	 * @throws Exception
+	 *           if the converted container cannot be removed
+	 */
+	@Benchmark
+	public boolean convert (ConvertedBytes converted) throws Exception
+	{
+		Files.deleteIfExists (target.toPath ());
+		boolean success = new RoToCa (container).convertTo (target);
+		if (!success)
+			throw new IllegalStateException ("conversion of " + container
+				+ " failed");
+		converted.bytes += container.length ();
+		return success;
+	}
+}
@@ -21,8 +21,12 @@ package de.unirostock.sems.caro;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 
 import org.apache.commons.cli.CommandLine;
@@ -34,6 +38,8 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import de.binfalse.bflog.LOGGER;
+import de.unirostock.sems.caro.CompressionPolicy.Compression;
+import de.unirostock.sems.caro.ContainerSniffer.ContainerType;
 import de.unirostock.sems.caro.converters.CaToRo;
 import de.unirostock.sems.caro.converters.RoToCa;
 
@@ -56,6 +62,9 @@ public class CaRo
 	/** The version of this library. */
 	public static String	CARO_VERSION	= "unknown";
 	
+	/** The file name standing for stdin or stdout. */
+	public static final String	STANDARD_STREAM	= "-";
+	
 	static
 	{
 		// read the current version of CaRo
@@ -96,11 +105,32 @@ public class CaRo
 			.desc ("convert a research object into a combine archive").build ());
 		options.addOption (Option.builder ().longOpt ("caro")
 			.desc ("convert a combine archive into a research object").build ());
+		options.addOption (Option.builder ("a").longOpt ("auto")
+			.desc ("detect whether the source is a combine archive or a research object and convert it into the other")
+			.build ());
 		options.addOption (Option.builder ("i").longOpt ("in").required ()
-			.argName ("FILE").hasArg ().desc ("source container to be converted")
+			.argName ("FILE").hasArg ().desc ("source container to be converted, - to read it from stdin, which spools it to a temporary file first")
 			.build ());
 		options.addOption (Option.builder ("o").longOpt ("out").required ()
-			.argName ("FILE").hasArg ().desc ("target container to be created")
+			.argName ("FILE").hasArg ().desc ("target container to be created, - to write it to stdout, which builds it in a temporary file first")
+			.build ());
+		options.addOption (Option.builder ("b").longOpt ("batch")
+			.desc ("batch mode: --in is a directory or a file listing the containers to be converted, --out is the directory for the converted containers")
+			.build ());
+		options.addOption (Option.builder ("j").longOpt ("jobs").argName ("N")
+			.hasArg ().desc ("number of concurrent conversions in batch mode, defaults to the number of cores")
+			.build ());
+		options.addOption (Option.builder ().longOpt ("plan")
+			.desc ("only print what would be converted, without writing the target container")
+			.build ());
+		options.addOption (Option.builder ().longOpt ("raw")
+			.desc ("copy the compressed bytes of entries without inflating and deflating them")
+			.build ());
+		options.addOption (Option.builder ().longOpt ("compression")
+			.argName ("LEVEL").hasArg ().desc ("repack the target container, storing images, nested archives and small entries and compressing all other entries using LEVEL: store, fast, default, or best")
+			.build ());
+		options.addOption (Option.builder ().longOpt ("virtual")
+			.desc ("batch mode: run every conversion and its entries in virtual threads, --jobs then limits the number of containers open and the number of entries copied at the same time")
 			.build ());
 		
 		CommandLineParser parser = new DefaultParser ();
@@ -121,50 +151,243 @@ public class CaRo
 			return;
 		}
 		
+		boolean stdin = STANDARD_STREAM.equals (line.getOptionValue ("in"));
+		boolean stdout = STANDARD_STREAM.equals (line.getOptionValue ("out"));
 		File in = new File (line.getOptionValue ("in"));
 		File out = new File (line.getOptionValue ("out"));
 		
-		if (!in.exists ())
+		if (line.hasOption ("batch") && (stdin || stdout))
+		{
+			help (options, "batch mode can neither read from stdin nor write to stdout");
+			return;
+		}
+		
+		int directions = (line.hasOption ("caro") ? 1 : 0)
+			+ (line.hasOption ("roca") ? 1 : 0) + (line.hasOption ("auto") ? 1 : 0);
+		if (directions != 1)
+		{
+			help (options, "you need to supply exactly one of --roca, --caro, and --auto");
+			return;
+		}
+		
+		if (!stdin && !in.exists ())
 		{
 			help (options, "file " + in + " does not exist");
 			return;
 		}
 		
-		if (out.exists ())
+		CompressionPolicy compressionPolicy = null;
+		if (line.hasOption ("compression"))
 		{
-			help (options, "file " + out + " already exist");
+			try
+			{
+				compressionPolicy = CompressionPolicy.createDefault (Compression
+					.valueOf (line.getOptionValue ("compression").toUpperCase (
+						Locale.ENGLISH)));
+			}
+			catch (IllegalArgumentException e)
+			{
+				help (options, "unknown compression level "
+					+ line.getOptionValue ("compression"));
+				return;
+			}
+		}
+		
+		if (line.hasOption ("batch"))
+		{
+			if (line.hasOption ("plan"))
+			{
+				help (options, "cannot plan conversions in batch mode");
+				return;
+			}
+			batch (options, line, in, out, compressionPolicy);
 			return;
 		}
 		
-		if (line.hasOption ("caro") && line.hasOption ("roca"))
+		if (!stdout && out.exists () && !line.hasOption ("plan"))
 		{
-			help (options, "only one of --roca and --caro is allowed");
+			help (options, "file " + out + " already exist");
 			return;
 		}
 		
-		CaRoConverter conv = null;
+		// a container read from stdin is spooled by the converter, unless its type
+		// needs to be detected first
+		CaRoWorkspace spool = null;
+		boolean success;
+		try
+		{
+			CaRoConverter conv = null;
+			
+			if (line.hasOption ("caro"))
+				conv = stdin ? new CaToRo (System.in) : new CaToRo (in);
+			else if (line.hasOption ("roca"))
+				conv = stdin ? new RoToCa (System.in) : new RoToCa (in);
+			else
+			{
+				if (stdin)
+					try
+					{
+						spool = new CaRoWorkspace (null);
+						in = spool.createFile ("CaRoStdin", "container");
+						Files.copy (System.in, in.toPath (),
+							StandardCopyOption.REPLACE_EXISTING);
+					}
+					catch (IOException e)
+					{
+						help (options, "cannot read stdin : " + e.getMessage ());
+						return;
+					}
+				ContainerType type;
+				try
+				{
+					type = ContainerSniffer.sniff (in);
+				}
+				catch (IOException e)
+				{
+					help (options, "cannot read " + in + " : " + e.getMessage ());
+					return;
+				}
+				if (type == ContainerType.COMBINE_ARCHIVE)
+					conv = new CaToRo (in);
+				else if (type == ContainerType.RESEARCH_OBJECT)
+					conv = new RoToCa (in);
+				else
+				{
+					help (options, (stdin ? "stdin" : "file " + in)
+						+ " is neither a combine archive nor a research object");
+					return;
+				}
+			}
+			
+			conv.setRawCopy (line.hasOption ("raw"));
+			conv.setCompressionPolicy (compressionPolicy);
+			if (line.hasOption ("plan"))
+			{
+				ConversionPlan plan = conv.plan ();
+				conv.close ();
+				success = plan != null;
+				if (success)
+					System.out.println (plan);
+			}
+			else if (stdout)
+			{
+				success = conv.convertTo (System.out);
+				System.out.flush ();
+				if (System.out.checkError ())
+				{
+					System.err.println ("wasn't able to write to stdout");
+					success = false;
+				}
+			}
+			else
+				success = conv.convertTo (out);
+			
+			if (conv.hasErrors ())
+				System.err.println ("There were errors!");
+			
+			if (conv.hasWarnings ())
+				System.err.println ("There were warnings!");
+			
+			// don't mix the notifications into a container written to stdout
+			PrintStream messages = stdout ? System.err : System.out;
+			CaRoNotifications notifications = conv.getNotifications ();
+			for (CaRoNotification note : notifications)
+				messages.println (note);
+			if (notifications.getSuppressed () > 0)
+				messages.println (notifications.getSuppressed ()
+					+ " similar notifications were suppressed");
+		}
+		finally
+		{
+			if (spool != null)
+				try
+				{
+					spool.close ();
+				}
+				catch (IOException e)
+				{
+					LOGGER.warn (e, "wasn't able to delete temporary workspace ",
+						spool.getDirectory ());
+				}
+		}
 		
+		if (!success && DIE)
+			System.exit (1);
+	}
+	
+	
+	/**
+	 * Run the batch mode.
+	 * 
+	 * @param options
+	 *          the options
+	 * @param line
+	 *          the parsed command line
+	 * @param in
+	 *          the directory or list file of containers to convert
+	 * @param out
+	 *          the directory to write the converted containers to
+	 * @param compressionPolicy
+	 *          the compression policy, may be <code>null</code>
+	 */
+	private static void batch (Options options, CommandLine line, File in,
+		File out, CompressionPolicy compressionPolicy)
+	{
+		CaRoBatch.Direction direction = null;
 		if (line.hasOption ("caro"))
-			conv = new CaToRo (in);
+			direction = CaRoBatch.Direction.CARO;
 		else if (line.hasOption ("roca"))
-			conv = new RoToCa (in);
-		else
+			direction = CaRoBatch.Direction.ROCA;
+		
+		int jobs = 0;
+		if (line.hasOption ("jobs"))
 		{
-			help (options, "you need to either supply --roca or --caro");
-			return;
+			try
+			{
+				jobs = Integer.parseInt (line.getOptionValue ("jobs"));
+			}
+			catch (NumberFormatException e)
+			{
+				help (options, "number of jobs must be an integer");
+				return;
+			}
 		}
-		conv.convertTo (out);
-		
-		if (conv.hasErrors ())
-			System.err.println ("There were errors!");
 		
-		if (conv.hasWarnings ())
-			System.err.println ("There were warnings!");
+		if (out.exists () && !out.isDirectory ())
+		{
+			help (options, "file " + out + " is not a directory");
+			return;
+		}
+		if (!out.exists () && !out.mkdirs ())
+		{
+			help (options, "cannot create directory " + out);
+			return;
+		}
 		
-		List<CaRoNotification> notifications = conv.getNotifications ();
-		for (CaRoNotification note : notifications)
-			System.out.println (note);
+		List<File> sources = null;
+		try
+		{
+			sources = CaRoBatch.collectSources (in);
+		}
+		catch (IOException e)
+		{
+			help (options, "cannot read containers from " + in + " : "
+				+ e.getMessage ());
+			return;
+		}
 		
+		CaRoBatch caroBatch = new CaRoBatch (direction, out, jobs);
+		caroBatch.setVirtualThreads (line.hasOption ("virtual"));
+		caroBatch.setRawCopy (line.hasOption ("raw"));
+		caroBatch.setCompressionPolicy (compressionPolicy);
+		int failures = caroBatch.convert (sources, System.out);
+		if (failures > 0)
+		{
+			System.err.println (failures + " of " + sources.size ()
+				+ " conversions failed!");
+			if (DIE)
+				System.exit (1);
+		}
 	}
 	
 	
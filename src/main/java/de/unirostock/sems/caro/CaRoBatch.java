@@ -0,0 +1,490 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import de.binfalse.bflog.LOGGER;
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+
+
+
+/**
+ * The Class CaRoBatch converts many containers concurrently on a bounded pool
+ * of workers. Alternatively, every conversion may run in its own virtual
+ * thread, see {@link #setVirtualThreads(boolean)}.
+ * 
+ * @author Martin Scharm
+ */
+public class CaRoBatch
+{
+	
+	/**
+	 * The direction of a conversion.
+	 */
+	public enum Direction
+	{
+		/** Convert combine archives into research objects. */
+		CARO (".ro"),
+		/** Convert research objects into combine archives. */
+		ROCA (".omex");
+		
+		/** The file extension of the converted containers. */
+		private final String	extension;
+		
+		
+		/**
+		 * Instantiates a new direction.
+		 * 
+		 * @param extension
+		 *          the extension of converted containers
+		 */
+		private Direction (String extension)
+		{
+			this.extension = extension;
+		}
+		
+		
+		/**
+		 * Creates a converter for the source container.
+		 * 
+		 * @param source
+		 *          the source container
+		 * @return the converter
+		 */
+		public CaRoConverter createConverter (File source)
+		{
+			if (this == CARO)
+				return new CaToRo (source);
+			return new RoToCa (source);
+		}
+		
+		
+		/**
+		 * Gets the file extension of the converted containers.
+		 * 
+		 * @return the extension
+		 */
+		public String getExtension ()
+		{
+			return extension;
+		}
+		
+		
+		/**
+		 * Find the direction to convert a container, based on the type of the
+		 * container as determined by {@link ContainerSniffer}.
+		 * 
+		 * @param source
+		 *          the source container
+		 * @return the direction, or <code>null</code> if the container is
+		 *         neither a combine archive nor a research object
+		 * @throws IOException
+		 *           Signals that an I/O exception has occurred.
+		 */
+		public static Direction detect (File source) throws IOException
+		{
+			switch (ContainerSniffer.sniff (source))
+			{
+				case COMBINE_ARCHIVE:
+					return CARO;
+				case RESEARCH_OBJECT:
+					return ROCA;
+				default:
+					return null;
+			}
+		}
+	}
+	
+	/** The direction of the conversions. */
+	private Direction					direction;
+	
+	/** The directory to write the converted containers to. */
+	private File							outputDirectory;
+	
+	/** The number of conversions to run concurrently. */
+	private int								threads;
+	
+	/** The number of entries every conversion processes concurrently. */
+	private int								parallelism;
+	
+	/** Should conversions run in virtual threads? */
+	private boolean						virtualThreads;
+	
+	/** Should compressed entries be copied without inflating them? */
+	private boolean						rawCopy;
+	
+	/** The compression policy for the converted containers. */
+	private CompressionPolicy	compressionPolicy;
+	
+	/** The targets claimed by the conversions of this batch. */
+	private Set<File>					targets;
+	
+	
+	/**
+	 * Instantiates a new batch converter.
+	 * 
+	 * @param direction
+	 *          the direction of the conversions, or <code>null</code> to detect
+	 *          the direction for every container, see
+	 *          {@link Direction#detect(File)}
+	 * @param outputDirectory
+	 *          the directory to write the converted containers to
+	 * @param threads
+	 *          the number of conversions to run concurrently, values smaller
+	 *          than 1 will default to the number of available processors
+	 */
+	public CaRoBatch (Direction direction, File outputDirectory, int threads)
+	{
+		this.direction = direction;
+		this.outputDirectory = outputDirectory;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime ()
+			.availableProcessors ();
+		targets = Collections.synchronizedSet (new HashSet<File> ());
+	}
+	
+	
+	/**
+	 * Run every conversion, and the processing of its entries, in a virtual
+	 * thread instead of a pool of platform threads. All conversions are then
+	 * started at once, but only as many as specified by <code>threads</code>
+	 * in the constructor may have their containers open at the same time, and
+	 * only as many entries may be processed at the same time by all
+	 * conversions, see {@link #setParallelism(int)}. Falls back to a cached
+	 * pool of platform threads if virtual threads are not supported, see
+	 * {@link CaRoExecutors#hasVirtualThreads()}.
+	 * 
+	 * @param virtualThreads
+	 *          should virtual threads be used?
+	 */
+	public void setVirtualThreads (boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+	
+	
+	/**
+	 * Set the number of entries every conversion processes concurrently, see
+	 * {@link CaRoConverter#setParallelism(int)}. Defaults to the number of
+	 * concurrent conversions if virtual threads are used, and to 1 otherwise.
+	 * 
+	 * @param parallelism
+	 *          the number of entries per conversion, values smaller than 1 will
+	 *          restore the default
+	 */
+	public void setParallelism (int parallelism)
+	{
+		this.parallelism = parallelism;
+	}
+	
+	
+	/**
+	 * Copy the compressed bytes of entries without inflating them, see
+	 * {@link CaRoConverter#setRawCopy(boolean)}.
+	 * 
+	 * @param rawCopy
+	 *          true to copy the compressed bytes of entries
+	 */
+	public void setRawCopy (boolean rawCopy)
+	{
+		this.rawCopy = rawCopy;
+	}
+	
+	
+	/**
+	 * Set the policy deciding how the entries of the converted containers are
+	 * compressed, see {@link CaRoConverter#setCompressionPolicy(CompressionPolicy)}.
+	 * 
+	 * @param compressionPolicy
+	 *          the compression policy, or <code>null</code> to keep the
+	 *          compression of the libraries
+	 */
+	public void setCompressionPolicy (CompressionPolicy compressionPolicy)
+	{
+		this.compressionPolicy = compressionPolicy;
+	}
+	
+	
+	/**
+	 * Collect the containers to convert. If <code>source</code> is a directory
+	 * all regular files in that directory will be converted. Otherwise
+	 * <code>source</code> is expected to be a list file, containing the path to
+	 * a container in every line. Empty lines and lines starting with a
+	 * <code>#</code> are ignored.
+	 * 
+	 * @param source
+	 *          the directory or list file
+	 * @return the containers to convert
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public static List<File> collectSources (File source) throws IOException
+	{
+		List<File> sources = new ArrayList<File> ();
+		if (source.isDirectory ())
+		{
+			File[] files = source.listFiles ();
+			if (files == null)
+				throw new IOException ("cannot list files in " + source);
+			Arrays.sort (files);
+			for (File f : files)
+				if (f.isFile ())
+					sources.add (f);
+		}
+		else
+		{
+			for (String line : Files.readAllLines (source.toPath (),
+				StandardCharsets.UTF_8))
+			{
+				line = line.trim ();
+				if (line.length () > 0 && !line.startsWith ("#"))
+					sources.add (new File (line));
+			}
+		}
+		return sources;
+	}
+	
+	
+	/**
+	 * Get the location of the converted container for a source container
+	 * converted in a certain direction.
+	 * 
+	 * @param source
+	 *          the source container
+	 * @param direction
+	 *          the direction of the conversion
+	 * @return the target location
+	 */
+	private File getTarget (File source, Direction direction)
+	{
+		String name = source.getName ();
+		int dot = name.lastIndexOf ('.');
+		if (dot > 0)
+			name = name.substring (0, dot);
+		return new File (outputDirectory, name + direction.getExtension ());
+	}
+	
+	
+	/**
+	 * Convert all <code>sources</code>. A result line is written to
+	 * <code>out</code> as soon as a conversion finished.
+	 * 
+	 * @param sources
+	 *          the containers to convert
+	 * @param out
+	 *          the stream to write the results to
+	 * @return the number of failed conversions
+	 */
+	public int convert (List<File> sources, PrintStream out)
+	{
+		ExecutorService executor;
+		final Semaphore permits;
+		final Semaphore entryPermits;
+		if (virtualThreads)
+		{
+			executor = CaRoExecutors.newVirtualThreadExecutor ("CaRo-batch");
+			permits = new Semaphore (threads);
+			entryPermits = new Semaphore (threads);
+		}
+		else
+		{
+			executor = Executors.newFixedThreadPool (threads);
+			permits = null;
+			entryPermits = null;
+		}
+		try
+		{
+			CompletionService<String> completion = new ExecutorCompletionService<String> (
+				executor);
+			for (final File source : sources)
+				completion.submit (new Callable<String> ()
+				{
+					
+					@Override
+					public String call ()
+					{
+						return convert (source, permits, entryPermits);
+					}
+				});
+			
+			int failures = 0;
+			for (int i = 0; i < sources.size (); i++)
+			{
+				String result;
+				try
+				{
+					result = completion.take ().get ();
+				}
+				catch (ExecutionException e)
+				{
+					LOGGER.error (e, "conversion crashed");
+					result = "FAILED: " + e.getCause ();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread ().interrupt ();
+					out.println ("FAILED: interrupted");
+					return failures + sources.size () - i;
+				}
+				if (!result.startsWith ("OK"))
+					failures++;
+				out.println (result);
+			}
+			return failures;
+		}
+		finally
+		{
+			executor.shutdownNow ();
+		}
+	}
+	
+	
+	/**
+	 * Convert a single container. The permit to open containers, if any, is
+	 * taken before the container is read for the first time, i.e. before its
+	 * direction is detected, and held until the conversion finished.
+	 * 
+	 * @param source
+	 *          the container to convert
+	 * @param permits
+	 *          the permits to open containers, or <code>null</code> if the
+	 *          conversions are bounded by the number of workers
+	 * @param entryPermits
+	 *          the permits to process entries, or <code>null</code> if the
+	 *          entries are bounded by the parallelism of every conversion
+	 * @return the result line
+	 */
+	private String convert (File source, Semaphore permits,
+		Semaphore entryPermits)
+	{
+		if (permits == null)
+			return convert (source, entryPermits);
+		try
+		{
+			permits.acquire ();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+			return "FAILED " + source + " : interrupted";
+		}
+		try
+		{
+			return convert (source, entryPermits);
+		}
+		finally
+		{
+			permits.release ();
+		}
+	}
+	
+	
+	/**
+	 * Convert a single container while holding the permit to open it.
+	 * 
+	 * @param source
+	 *          the container to convert
+	 * @param entryPermits
+	 *          the permits to process entries, or <code>null</code> if the
+	 *          entries are bounded by the parallelism of every conversion
+	 * @return the result line
+	 */
+	private String convert (File source, Semaphore entryPermits)
+	{
+		// the target is unknown if the direction is detected from the contents
+		if (!source.isFile ())
+			return "FAILED " + source
+				+ (direction == null ? "" : " -> " + getTarget (source, direction))
+				+ " : file does not exist";
+		
+		Direction direction = this.direction;
+		if (direction == null)
+		{
+			try
+			{
+				direction = Direction.detect (source);
+			}
+			catch (IOException e)
+			{
+				return "FAILED " + source + " : cannot read container : "
+					+ e.getMessage ();
+			}
+			if (direction == null)
+				return "FAILED " + source
+					+ " : neither a combine archive nor a research object";
+		}
+		
+		File target = getTarget (source, direction);
+		if (target.exists () || !targets.add (target))
+			return "FAILED " + source + " -> " + target + " : file already exist";
+		
+		CaRoConverter conv = createConverter (source, direction);
+		conv.setEntryPermits (entryPermits);
+		boolean success = conv.convertTo (target);
+		CaRoNotifications notifications = conv.getNotifications ();
+		int errors = notifications.getCount (CaRoNotification.SERVERITY_ERROR);
+		int warnings = notifications.getCount (CaRoNotification.SERVERITY_WARN);
+		
+		return (success ? "OK " : "FAILED ") + source + " -> " + target + " : "
+			+ errors + " errors, " + warnings + " warnings, "
+			+ conv.getStatistics ().getTotalTime (TimeUnit.MILLISECONDS) + " ms";
+	}
+	
+	
+	/**
+	 * Create and configure the converter for a single container.
+	 * 
+	 * @param source
+	 *          the container to convert
+	 * @param direction
+	 *          the direction of the conversion
+	 * @return the converter
+	 */
+	protected CaRoConverter createConverter (File source, Direction direction)
+	{
+		CaRoConverter conv = direction.createConverter (source);
+		if (parallelism > 0)
+			conv.setParallelism (parallelism);
+		else if (virtualThreads)
+			conv.setParallelism (threads);
+		conv.setVirtualThreads (virtualThreads);
+		conv.setRawCopy (rawCopy);
+		conv.setCompressionPolicy (compressionPolicy);
+		return conv;
+	}
+}
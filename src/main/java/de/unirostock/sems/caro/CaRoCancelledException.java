@@ -0,0 +1,50 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.InterruptedIOException;
+
+
+
+/**
+ * The Class CaRoCancelledException signals that a conversion was stopped
+ * because it was cancelled or exceeded its deadline, see
+ * {@link CancellationToken}.
+ * 
+ * @author Martin Scharm
+ */
+public class CaRoCancelledException
+	extends InterruptedIOException
+{
+	
+	/** The Constant serialVersionUID. */
+	private static final long	serialVersionUID	= 1L;
+	
+	
+	/**
+	 * Instantiates a new exception.
+	 * 
+	 * @param reason
+	 *          the reason of the cancellation
+	 */
+	public CaRoCancelledException (String reason)
+	{
+		super (reason);
+	}
+}
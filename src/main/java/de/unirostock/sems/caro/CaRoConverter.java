@@ -18,17 +18,44 @@
  */
 package de.unirostock.sems.caro;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import org.apache.taverna.robundle.Bundle;
 import org.apache.taverna.robundle.manifest.Agent;
 import org.jdom2.Namespace;
 
 import de.binfalse.bflog.LOGGER;
+import de.unirostock.sems.caro.CompressionPolicy.Compression;
+import de.unirostock.sems.caro.ConversionStatistics.Phase;
+import de.unirostock.sems.caro.events.CaRoEvents;
 import de.unirostock.sems.cbarchive.CombineArchive;
 import de.unirostock.sems.cbarchive.meta.omex.VCard;
 
@@ -38,9 +65,15 @@ import de.unirostock.sems.cbarchive.meta.omex.VCard;
  * The abstract class CaRoConverter defines the infrastructure for converting
  * containers.
  * 
+ * Converters reading the source container from a stream should be closed if
+ * they were used to {@link #plan()} a conversion that was not run afterwards,
+ * see {@link #close()}. Other converters don't hold any resources between
+ * conversions.
+ * 
  * @author Martin Scharm
  */
 public abstract class CaRoConverter
+	implements Closeable
 {
 	
 	/** file name restrictions for research objects. */
@@ -52,6 +85,12 @@ public abstract class CaRoConverter
 	public static final String[]			CA_RESTRICTIONS	= new String[] {
 		"/metadata.rdf", "/manifest.xml"								};
 	
+	/** The name of the mime type entry of research objects. */
+	private static final String				MIMETYPE			= "mimetype";
+	
+	/** The size of the buffer used to stream entries between containers. */
+	public static final int						COPY_BUFFER_SIZE	= 64 * 1024;
+	
 	/** The RDF namespace. */
 	public static Namespace						RDF_NAMESPACE		= Namespace
 																											.getNamespace ("rdf",
@@ -109,14 +148,121 @@ public abstract class CaRoConverter
 	/** The source file. */
 	protected File										sourceFile;
 	
+	/** The stream to read the source container from, if not given as a file. */
+	private InputStream								sourceStream;
+	
+	/** The workspace keeping the source container spooled by {@link #plan()}. */
+	private CaRoWorkspace							sourceWorkspace;
+	
 	/** The combine archive. */
 	protected CombineArchive					combineArchive;
 	
 	/** The research object. */
 	protected Bundle									researchObject;
 	
+	/** The executor shared by all asynchronous conversions. */
+	private static ExecutorService		asyncExecutor;
+	
+	/** The resolver shared by converters that don't have their own. */
+	private static FormatResolver			defaultFormatResolver	= new CachingFormatResolver ();
+	
 	/** The notifications. */
-	protected List<CaRoNotification>	notifications;
+	protected CaRoNotifications				notifications;
+	
+	/** The resolver for formats of entries that don't declare one. */
+	protected FormatResolver					formatResolver;
+	
+	/** Should we stream entries directly between the containers? */
+	protected boolean									streamEntries;
+	
+	/** The buffers that are reused for streaming entries, one per thread. */
+	private ThreadLocal<byte[]>				copyBuffer;
+	
+	/** The number of threads to process entries of a single container. */
+	private int												parallelism;
+	
+	/** The executor to process entries concurrently. */
+	private ExecutorService						executor;
+	
+	/** Should entries be processed in virtual threads? */
+	private boolean										virtualThreads;
+	
+	/** The permits to open containers, shared by converters. */
+	private Semaphore									containerPermits;
+	
+	/** The permits to process entries in virtual threads, shared by converters. */
+	private Semaphore									entryPermits;
+	
+	/** The directory to create temporary workspaces in. */
+	private File											temporaryRoot;
+	
+	/** The temporary workspace of the current conversion. */
+	protected CaRoWorkspace						workspace;
+	
+	/** The statistics of the current or last conversion. */
+	protected ConversionStatistics		statistics;
+	
+	/** The listeners following the conversion. */
+	private List<CaRoListener>				listeners;
+	
+	/** The number of entries to convert in the current conversion. */
+	private volatile long							totalEntries;
+	
+	/** The token to cancel conversions. */
+	private volatile CancellationToken	cancellation;
+	
+	/**
+	 * The token of the current asynchronous conversion, a child of
+	 * {@link #cancellation}, or <code>null</code> if there is none.
+	 */
+	private volatile CancellationToken	runCancellation;
+	
+	/** The time limit of a single conversion in nanoseconds, 0 for none. */
+	private long											timeout;
+	
+	/** The deadline of the current conversion, if there is a time limit. */
+	private volatile CancellationToken	deadline;
+	
+	/** Should compressed entries be copied without inflating them? */
+	private boolean										rawCopy;
+	
+	/** The central directory of the source container, if copying raw. */
+	private ZipDirectory							sourceDirectory;
+	
+	/** Did reading the central directory of the source container fail? */
+	private boolean										sourceDirectoryFailed;
+	
+	/** The entries of the source container to copy raw, by target name. */
+	private Map<String, ZipDirectory.Entry>	rawEntries;
+	
+	/** The stream to write the target container to, if not written to a file. */
+	private OutputStream							targetStream;
+	
+	/** The compression policy for the target container, if any. */
+	private CompressionPolicy					compressionPolicy;
+	
+	/** The formats of the entries of the target container, by target name. */
+	private Map<String, String>				targetFormats;
+	
+	
+	/**
+	 * Instantiates a new converter reading the source container from a stream.
+	 * The container is spooled into the temporary workspace of the conversion,
+	 * as the containers require random access, thus the workspace needs room
+	 * for the whole source container. The stream is read at the
+	 * beginning of the conversion, but not closed, thus the converter can only
+	 * convert once. If the conversion is planned first, see {@link #plan()}, the
+	 * spooled container is kept until the conversion finished or the converter
+	 * is closed.
+	 * 
+	 * @param source
+	 *          the stream of the source container
+	 */
+	public CaRoConverter (InputStream source)
+	{
+		this ((File) null);
+		sourceStream = source;
+	}
 	
 	
 	/**
@@ -130,132 +276,1710 @@ public abstract class CaRoConverter
 		this.sourceFile = sourceFile;
 		combineArchive = null;
 		researchObject = null;
-		notifications = new ArrayList<CaRoNotification> ();
+		listeners = new CopyOnWriteArrayList<CaRoListener> ();
+		cancellation = new CancellationToken ();
+		notifications = new CaRoNotifications ()
+		{
+			
+			@Override
+			public boolean add (CaRoNotification notification)
+			{
+				if (!isRecorded (notification.getSeverity ()))
+					return false;
+				boolean kept = super.add (notification);
+				fireNotified (notification);
+				return kept;
+			}
+		};
+		streamEntries = true;
+		parallelism = 1;
+		formatResolver = defaultFormatResolver;
+		rawEntries = new ConcurrentHashMap<String, ZipDirectory.Entry> ();
+		targetFormats = new ConcurrentHashMap<String, String> ();
+		statistics = new ConversionStatistics ();
+		copyBuffer = new ThreadLocal<byte[]> ()
+		{
+			
+			@Override
+			protected byte[] initialValue ()
+			{
+				return new byte[COPY_BUFFER_SIZE];
+			}
+		};
 	}
 	
 	
 	/**
-	 * Checks for errors.
+	 * Register a listener to follow the conversion while it is running.
 	 * 
-	 * @return true, if the converter reported errors
+	 * @param listener
+	 *          the listener
 	 */
-	public boolean hasErrors ()
+	public void addListener (CaRoListener listener)
 	{
-		for (CaRoNotification crn : notifications)
-			if (crn.getSeverity () == CaRoNotification.SERVERITY_ERROR)
-				return true;
-		return false;
+		listeners.add (listener);
 	}
 	
 	
 	/**
-	 * Checks for warnings. Might return <code>false</code> even if
-	 * {@link #hasErrors()} returns <code>true</code>.
+	 * Unregister a listener.
 	 * 
-	 * @return true, if the converter reported warnings
+	 * @param listener
+	 *          the listener
 	 */
-	public boolean hasWarnings ()
+	public void removeListener (CaRoListener listener)
 	{
-		for (CaRoNotification crn : notifications)
-			if (crn.getSeverity () == CaRoNotification.SERVERITY_WARN)
-				return true;
-		return false;
+		listeners.remove (listener);
+	}
+	
+	
+	/**
+	 * Abort the conversion. May be called from any thread, e.g. by a
+	 * {@link CaRoListener} on the first error. The conversion stops before the
+	 * next entry or while copying an entry, and {@link #convertTo(File)}
+	 * returns <code>false</code>. This cancels the converter's
+	 * {@link CancellationToken}, thus an aborted converter stays aborted.
+	 */
+	public void abort ()
+	{
+		cancellation.cancel ("conversion was aborted");
 	}
 	
 	
 	/**
-	 * Gets the notifications occured during the conversion.
+	 * Was the conversion aborted? That is the case if the
+	 * {@link CancellationToken} of this converter was cancelled or the current
+	 * conversion exceeded its time limit.
 	 * 
-	 * @return the notifications
+	 * @return true, if the conversion was aborted
 	 */
-	public List<CaRoNotification> getNotifications ()
+	public boolean isAborted ()
 	{
-		return notifications;
+		return getCancellationReason () != null;
 	}
 	
 	
 	/**
-	 * Open the source container.
+	 * Set the token to cancel conversions of this converter. Tokens may be
+	 * shared among converters, e.g. to stop all conversions of a batch at once.
 	 * 
-	 * @return true, if opening was successful
+	 * @param cancellation
+	 *          the cancellation token
 	 */
-	protected abstract boolean openSourceContainer ();
+	public void setCancellationToken (CancellationToken cancellation)
+	{
+		this.cancellation = cancellation;
+	}
 	
 	
 	/**
-	 * Open the source container.
+	 * Gets the token to cancel conversions of this converter.
 	 * 
-	 * @return true, if opening was successful
+	 * @return the cancellation token
 	 */
-	protected abstract boolean closeSourceContainer ();
+	public CancellationToken getCancellationToken ()
+	{
+		return cancellation;
+	}
 	
 	
 	/**
-	 * Convert the container.
+	 * Limit the time of a single conversion. Every call to
+	 * {@link #convertTo(File)} that takes longer will be aborted.
 	 * 
-	 * @return true, if converting was successful
+	 * @param timeout
+	 *          the time limit, 0 or less for no limit
+	 * @param unit
+	 *          the unit of <code>timeout</code>
 	 */
-	protected abstract boolean convert ();
+	public void setTimeout (long timeout, TimeUnit unit)
+	{
+		this.timeout = timeout > 0 ? unit.toNanos (timeout) : 0;
+	}
 	
 	
 	/**
-	 * Write the container.
+	 * Gets the reason why the conversion was aborted.
+	 * 
+	 * @return the reason, or <code>null</code> if the conversion was not
+	 *         aborted
+	 */
+	private String getCancellationReason ()
+	{
+		CancellationToken run = runCancellation;
+		String reason = (run != null ? run : cancellation).getReason ();
+		CancellationToken deadline = this.deadline;
+		if (reason == null && deadline != null)
+			reason = deadline.getReason ();
+		return reason;
+	}
+	
+	
+	/**
+	 * Throw an exception if the conversion was aborted. Converters should call
+	 * this before processing an entry.
+	 * 
+	 * @throws CaRoCancelledException
+	 *           if the conversion was aborted
+	 */
+	protected void checkAborted () throws CaRoCancelledException
+	{
+		String reason = getCancellationReason ();
+		if (reason != null)
+			throw new CaRoCancelledException (reason);
+	}
+	
+	
+	/**
+	 * Announce the number of entries to be converted, reported to the
+	 * listeners as part of the progress.
+	 * 
+	 * @param totalEntries
+	 *          the number of entries
+	 */
+	protected void setTotalEntries (long totalEntries)
+	{
+		this.totalEntries = totalEntries;
+	}
+	
+	
+	/**
+	 * Record that an entry was converted and tell the listeners about the
+	 * progress.
+	 */
+	protected void entryConverted ()
+	{
+		statistics.addEntry ();
+		if (listeners.isEmpty ())
+			return;
+		long entries = statistics.getEntries ();
+		long bytes = statistics.getBytesWritten ();
+		for (CaRoListener listener : listeners)
+			try
+			{
+				listener.progress (this, entries, totalEntries, bytes);
+			}
+			catch (RuntimeException e)
+			{
+				LOGGER.warn (e, "listener ", listener, " failed");
+			}
+	}
+	
+	
+	/**
+	 * Tell the listeners about a notification.
+	 * 
+	 * @param notification
+	 *          the notification
+	 */
+	private void fireNotified (CaRoNotification notification)
+	{
+		for (CaRoListener listener : listeners)
+			try
+			{
+				listener.notified (this, notification);
+			}
+			catch (RuntimeException e)
+			{
+				LOGGER.warn (e, "listener ", listener, " failed");
+			}
+	}
+	
+	
+	/**
+	 * Set the number of threads used to process the entries of a container.
+	 * Copying the entries, including format detection, is then done
+	 * concurrently while modifications of manifest, meta data and annotations
+	 * stay sequential. Defaults to 1, which processes all entries sequentially.
+	 * 
+	 * @param parallelism
+	 *          the number of threads
+	 */
+	public void setParallelism (int parallelism)
+	{
+		this.parallelism = parallelism;
+	}
+	
+	
+	/**
+	 * Gets the number of threads used to process the entries of a container.
+	 * 
+	 * @return the number of threads
+	 */
+	public int getParallelism ()
+	{
+		return parallelism;
+	}
+	
+	
+	/**
+	 * Process entries in virtual threads instead of a pool of platform threads,
+	 * see {@link CaRoExecutors#newVirtualThreadExecutor(String)}. The number of
+	 * entries processed concurrently is still limited by
+	 * {@link #setParallelism(int)}.
+	 * 
+	 * @param virtualThreads
+	 *          should virtual threads be used?
+	 */
+	public void setVirtualThreads (boolean virtualThreads)
+	{
+		this.virtualThreads = virtualThreads;
+	}
+	
+	
+	/**
+	 * Are entries processed in virtual threads?
+	 * 
+	 * @return true, if virtual threads are used
+	 */
+	public boolean isVirtualThreads ()
+	{
+		return virtualThreads;
+	}
+	
+	
+	/**
+	 * Set the permits to open containers. A conversion holds a permit while its
+	 * source and target containers are open and waits for a permit before it
+	 * starts. Sharing the permits among converters limits the number of
+	 * containers open at the same time, and thus the number of open files.
+	 * 
+	 * @param containerPermits
+	 *          the permits, or <code>null</code> to not limit conversions
+	 */
+	public void setContainerPermits (Semaphore containerPermits)
+	{
+		this.containerPermits = containerPermits;
+	}
+	
+	
+	/**
+	 * Set the permits to process entries in virtual threads, see
+	 * {@link #setVirtualThreads(boolean)}. Every entry that is processed
+	 * concurrently holds a permit while it is processed. Sharing the permits
+	 * among converters limits the number of entries processed at the same time
+	 * by all of them, in addition to the parallelism of every converter.
+	 * 
+	 * @param entryPermits
+	 *          the permits, or <code>null</code> to only limit the entries by
+	 *          {@link #setParallelism(int)}
+	 */
+	public void setEntryPermits (Semaphore entryPermits)
+	{
+		this.entryPermits = entryPermits;
+	}
+	
+	
+	/**
+	 * Should entries be streamed directly from the source container into the
+	 * target container? If disabled, every entry is first extracted to a
+	 * temporary file. Streaming is enabled by default, the temporary files are
+	 * still used as a fallback if streaming an entry fails.
+	 * 
+	 * @param streamEntries
+	 *          true to stream entries directly between the containers
+	 */
+	public void setStreamEntries (boolean streamEntries)
+	{
+		this.streamEntries = streamEntries;
+	}
+	
+	
+	/**
+	 * Are entries streamed directly between the containers?
+	 * 
+	 * @return true, if entries are streamed
+	 */
+	public boolean isStreamEntries ()
+	{
+		return streamEntries;
+	}
+	
+	
+	/**
+	 * Should the compressed bytes of payload entries be copied from the source
+	 * container into the target container without inflating and deflating
+	 * them? Only entries that are copied unchanged are transferred raw, the
+	 * meta data, manifests and annotations are written by the libraries as
+	 * usual. The target container is then repacked in a final pass, see
+	 * {@link RawZipWriter}. Disabled by default.
+	 * 
+	 * @param rawCopy
+	 *          true to copy the compressed bytes of entries
+	 */
+	public void setRawCopy (boolean rawCopy)
+	{
+		this.rawCopy = rawCopy;
+	}
+	
+	
+	/**
+	 * Are the compressed bytes of entries copied without inflating them?
+	 * 
+	 * @return true, if entries are copied raw
+	 */
+	public boolean isRawCopy ()
+	{
+		return rawCopy;
+	}
+	
+	
+	/**
+	 * Set the policy deciding how the entries of the target container are
+	 * compressed. If a policy is set, the target container is repacked in a
+	 * final pass, see {@link RawZipWriter}. Entries that are copied raw keep
+	 * the compression of the source container and the <code>mimetype</code> of
+	 * a research object is always stored uncompressed as the first entry. By
+	 * default there is no policy and the libraries deflate all entries.
+	 * 
+	 * @param compressionPolicy
+	 *          the compression policy, or <code>null</code> to keep the
+	 *          compression of the libraries
+	 */
+	public void setCompressionPolicy (CompressionPolicy compressionPolicy)
+	{
+		this.compressionPolicy = compressionPolicy;
+	}
+	
+	
+	/**
+	 * Gets the policy deciding how the entries of the target container are
+	 * compressed.
+	 * 
+	 * @return the compression policy, or <code>null</code> if there is none
+	 */
+	public CompressionPolicy getCompressionPolicy ()
+	{
+		return compressionPolicy;
+	}
+	
+	
+	/**
+	 * Remember the format of an entry of the target container, so that the
+	 * compression policy can take it into account.
 	 * 
 	 * @param target
-	 *          the target file to write to
-	 * @return true, if exporting was successful
+	 *          the file in the target container
+	 * @param format
+	 *          the format of the file, may be <code>null</code>
 	 */
-	protected abstract boolean write (File target);
+	protected void setTargetFormat (Path target, URI format)
+	{
+		if (format != null)
+			targetFormats.put (getEntryName (target), format.toString ());
+	}
 	
 	
 	/**
-	 * Convert this container to <code>target</code>.
+	 * Claim an entry of the source container to be copied raw into the target
+	 * container. If this returns an entry, the converter must only create an
+	 * empty placeholder at <code>target</code>, its contents will be copied
+	 * by {@link #writeTarget(File, File)}.
 	 * 
+	 * @param source
+	 *          the file in the source container
 	 * @param target
-	 *          the target file
-	 * @return true, if converting was successful
+	 *          the file in the target container
+	 * @return the entry of the source container, or <code>null</code> if the
+	 *         entry needs to be copied as usual
 	 */
-	public boolean convertTo (File target)
+	protected ZipDirectory.Entry claimRawEntry (Path source, Path target)
 	{
-		// open
-		if (!openSourceContainer ())
-		{
-			LOGGER.error ("wasn't able to open ", sourceFile);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR, "wasn't able to open " + sourceFile));
-			closeSourceContainer ();
-			return false;
-		}
-		// convert
-		if (!convert ())
+		if (!rawCopy)
+			return null;
+		ZipDirectory directory = getSourceDirectory ();
+		if (directory == null)
+			return null;
+		ZipDirectory.Entry entry = directory.getEntry (getEntryName (source));
+		if (entry == null || entry.isDirectory () || !entry.isRawCopyable ())
+			return null;
+		rawEntries.put (getEntryName (target), entry);
+		statistics.addBytesRead (entry.getSize ());
+		statistics.addBytesWritten (entry.getSize ());
+		return entry;
+	}
+	
+	
+	/**
+	 * Gets the central directory of the source container, it is read on first
+	 * access.
+	 * 
+	 * @return the central directory, or <code>null</code> if it cannot be read
+	 */
+	private synchronized ZipDirectory getSourceDirectory ()
+	{
+		if (sourceDirectory == null && !sourceDirectoryFailed)
 		{
-			LOGGER.error ("wasn't able to convert ", sourceFile);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR, "wasn't able to convert "
-					+ sourceFile));
-			closeSourceContainer ();
-			return false;
+			try
+			{
+				sourceDirectory = new ZipDirectory (sourceFile);
+			}
+			catch (IOException e)
+			{
+				sourceDirectoryFailed = true;
+				report (CaRoNotification.SERVERITY_WARN, e,
+					"wasn't able to read the central directory of %s : %s", sourceFile,
+					e.getMessage ());
+			}
 		}
-		// close source container
-		if (!closeSourceContainer ())
+		return sourceDirectory;
+	}
+	
+	
+	/**
+	 * Close the central directory of the source container, if it was read.
+	 */
+	private synchronized void closeSourceDirectory ()
+	{
+		if (sourceDirectory == null)
+			return;
+		try
 		{
-			LOGGER.error ("wasn't able to close ", sourceFile);
-			notifications
-				.add (new CaRoNotification (CaRoNotification.SERVERITY_ERROR,
-					"wasn't able to close " + sourceFile));
-			closeSourceContainer ();
-			return false;
+			sourceDirectory.close ();
 		}
-		// write target file
-		if (!write (target))
+		catch (IOException e)
 		{
-			LOGGER.error ("wasn't able to write ", target);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR, "wasn't able to write " + target));
-			closeSourceContainer ();
-			return false;
+			LOGGER.warn (e, "wasn't able to close ", sourceFile);
 		}
-		return true;
+		sourceDirectory = null;
+	}
+	
+	
+	/**
+	 * Gets the name of a zip entry corresponding to a path in a container.
+	 * 
+	 * @param path
+	 *          the path in the container
+	 * @return the entry name
+	 */
+	private static String getEntryName (Path path)
+	{
+		String name = path.toAbsolutePath ().normalize ().toString ();
+		while (name.startsWith ("/"))
+			name = name.substring (1);
+		return name;
+	}
+	
+	
+	/**
+	 * Were entries claimed to be copied raw in the current conversion?
+	 * 
+	 * @return true, if the target needs to be written using
+	 *         {@link #writeTarget(File, File)}
+	 */
+	protected boolean hasRawEntries ()
+	{
+		return !rawEntries.isEmpty ();
+	}
+	
+	
+	/**
+	 * Does the container written by a library need to be repacked? That is the
+	 * case if entries were claimed to be copied raw or if there is a
+	 * compression policy.
+	 * 
+	 * @return true, if the target needs to be written using
+	 *         {@link #writeTarget(File, File)}
+	 */
+	protected boolean needsRepack ()
+	{
+		return hasRawEntries () || compressionPolicy != null;
+	}
+	
+	
+	/**
+	 * Is the target container written to a stream? Then the container written
+	 * by a library always needs to be passed to
+	 * {@link #writeTarget(File, File)}.
+	 * 
+	 * @return true, if converting to a stream
+	 */
+	protected boolean writesToStream ()
+	{
+		return targetStream != null;
+	}
+	
+	
+	/**
+	 * Move a container that was written by a library to the target location.
+	 * If entries were claimed to be copied raw, the container is repacked,
+	 * replacing the placeholders of these entries by the compressed bytes from
+	 * the source container. If there is a compression policy, all other entries
+	 * are compressed according to the policy while repacking. If converting to
+	 * a stream, the container is written to the stream instead of
+	 * <code>target</code>, repacking it straight into the stream.
+	 * 
+	 * @param container
+	 *          the container written by a library
+	 * @param target
+	 *          the target location
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	protected void writeTarget (File container, File target) throws IOException
+	{
+		if (targetStream != null)
+		{
+			if (!needsRepack ())
+				try (InputStream in = Files.newInputStream (container.toPath ()))
+				{
+					copy (in, targetStream);
+				}
+			else
+			{
+				// a failed container must not get a central directory, as that
+				// would make it look complete
+				RawZipWriter writer = new RawZipWriter (targetStream);
+				repack (container, writer);
+				writer.close ();
+			}
+			Files.delete (container.toPath ());
+			return;
+		}
+		
+		Files.createDirectories (target.getAbsoluteFile ().getParentFile ()
+			.toPath ());
+		if (!needsRepack ())
+		{
+			Files.move (container.toPath (), target.toPath ());
+			return;
+		}
+		
+		boolean success = false;
+		try (RawZipWriter writer = new RawZipWriter (target))
+		{
+			repack (container, writer);
+			success = true;
+		}
+		finally
+		{
+			if (!success)
+				Files.deleteIfExists (target.toPath ());
+		}
+		Files.delete (container.toPath ());
+	}
+	
+	
+	/**
+	 * Repack a container that was written by a library, see
+	 * {@link #writeTarget(File, File)}.
+	 * 
+	 * @param container
+	 *          the container written by a library
+	 * @param writer
+	 *          the writer of the target container
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private void repack (File container, RawZipWriter writer) throws IOException
+	{
+		try (ZipDirectory written = new ZipDirectory (container))
+		{
+			// the mime type of a research object needs to come first
+			List<ZipDirectory.Entry> entries = new ArrayList<ZipDirectory.Entry> (
+				written.getEntries ());
+			ZipDirectory.Entry mimetype = written.getEntry (MIMETYPE);
+			if (mimetype != null)
+			{
+				entries.remove (mimetype);
+				entries.add (0, mimetype);
+			}
+			
+			int replaced = 0;
+			for (ZipDirectory.Entry entry : entries)
+			{
+				checkAborted ();
+				ZipDirectory.Entry raw = rawEntries.get (entry.getName ());
+				if (raw != null)
+				{
+					writer.copyEntry (written, entry, getSourceDirectory (), raw);
+					replaced++;
+				}
+				else if (compressionPolicy == null)
+					writer.copyEntry (written, entry);
+				else if (entry == mimetype)
+					writer.writeEntry (written, entry, Compression.STORE);
+				else
+					writer.writeEntry (written, entry, compressionPolicy.getCompression (
+						entry.getName (), targetFormats.get (entry.getName ()),
+						entry.getSize ()));
+			}
+			if (replaced != rawEntries.size ())
+				throw new IOException ("missing placeholders for raw entries in "
+					+ container);
+		}
+	}
+	
+	
+	/**
+	 * Set the resolver for the formats of entries that don't declare a format.
+	 * By default all converters share a {@link CachingFormatResolver}, see
+	 * {@link #getDefaultFormatResolver()}.
+	 * 
+	 * @param formatResolver
+	 *          the format resolver
+	 */
+	public void setFormatResolver (FormatResolver formatResolver)
+	{
+		this.formatResolver = formatResolver;
+	}
+	
+	
+	/**
+	 * Gets the resolver for the formats of entries that don't declare a format.
+	 * 
+	 * @return the format resolver
+	 */
+	public FormatResolver getFormatResolver ()
+	{
+		return formatResolver;
+	}
+	
+	
+	/**
+	 * Gets the format resolver shared by all converters, a
+	 * {@link CachingFormatResolver} unless replaced using
+	 * {@link #setDefaultFormatResolver(FormatResolver)}.
+	 * 
+	 * @return the default format resolver
+	 */
+	public static FormatResolver getDefaultFormatResolver ()
+	{
+		return defaultFormatResolver;
+	}
+	
+	
+	/**
+	 * Set the format resolver used by converters created afterwards.
+	 * 
+	 * @param formatResolver
+	 *          the default format resolver
+	 */
+	public static void setDefaultFormatResolver (FormatResolver formatResolver)
+	{
+		defaultFormatResolver = formatResolver;
+	}
+	
+	
+	/**
+	 * Set the directory to create the temporary workspaces of conversions in. A
+	 * fresh workspace is created for every conversion and deleted as soon as the
+	 * conversion finished or failed. Defaults to <code>null</code>, which means
+	 * that the system's default temporary directory is used.
+	 * 
+	 * @param temporaryRoot
+	 *          the directory for temporary files, e.g. a tmpfs mount
+	 */
+	public void setTemporaryRoot (File temporaryRoot)
+	{
+		this.temporaryRoot = temporaryRoot;
+	}
+	
+	
+	/**
+	 * Gets the directory to create the temporary workspaces in.
+	 * 
+	 * @return the directory for temporary files, or <code>null</code> if the
+	 *         system's default is used
+	 */
+	public File getTemporaryRoot ()
+	{
+		return temporaryRoot;
+	}
+	
+	
+	/**
+	 * Copy all bytes from <code>in</code> to <code>out</code> using a buffer that
+	 * is reused for all entries of this conversion processed by the current
+	 * thread. Neither of the streams will be closed. Copying stops as soon as
+	 * the conversion is aborted.
+	 * 
+	 * @param in
+	 *          the stream to read from
+	 * @param out
+	 *          the stream to write to
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	protected long copy (InputStream in, OutputStream out) throws IOException
+	{
+		byte[] buffer = copyBuffer.get ();
+		long copied = 0;
+		int n;
+		while ( (n = in.read (buffer)) > 0)
+		{
+			checkAborted ();
+			out.write (buffer, 0, n);
+			copied += n;
+		}
+		return copied;
+	}
+	
+	
+	/**
+	 * Copy a file to a new file, see {@link #copy(InputStream, OutputStream)}.
+	 * 
+	 * @param source
+	 *          the file to read
+	 * @param target
+	 *          the file to create, must not exist
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	protected long copy (Path source, Path target) throws IOException
+	{
+		try (InputStream in = Files.newInputStream (source);
+			OutputStream out = Files.newOutputStream (target,
+				StandardOpenOption.CREATE_NEW))
+		{
+			return copy (in, out);
+		}
+	}
+	
+	
+	/**
+	 * Execute some independent tasks. If the parallelism of this converter is
+	 * larger than 1, the tasks will be run concurrently, otherwise they run
+	 * sequentially in the current thread. Either way this method returns after
+	 * all tasks finished. If one of the tasks fails, the tasks that didn't
+	 * start yet are skipped, but the tasks that are running are waited for, so
+	 * that none of them still writes to the containers when this method
+	 * returns.
+	 * 
+	 * @param <T>
+	 *          the type of the results
+	 * @param tasks
+	 *          the tasks
+	 * @return the results of the tasks, in the order of <code>tasks</code>
+	 * @throws IOException
+	 *           Signals that one of the tasks failed.
+	 */
+	protected <T> List<T> execute (List<Callable<T>> tasks) throws IOException
+	{
+		List<T> results = new ArrayList<T> (tasks.size ());
+		if (parallelism < 2 || tasks.size () < 2)
+		{
+			for (Callable<T> task : tasks)
+			{
+				try
+				{
+					results.add (task.call ());
+				}
+				catch (Exception e)
+				{
+					throw asIOException (e);
+				}
+			}
+			return results;
+		}
+		
+		Semaphore slots = null;
+		Semaphore permits = null;
+		if (virtualThreads)
+		{
+			if (executor == null)
+				executor = CaRoExecutors.newVirtualThreadExecutor ("CaRo-entries");
+			slots = new Semaphore (parallelism);
+			permits = entryPermits;
+		}
+		else if (executor == null)
+			executor = Executors.newFixedThreadPool (parallelism);
+		
+		// tasks are not interrupted, as that would close the channels of the
+		// zip file systems shared by all tasks
+		AtomicBoolean failed = new AtomicBoolean ();
+		CountDownLatch finished = new CountDownLatch (tasks.size ());
+		List<Future<T>> futures = new ArrayList<Future<T>> (tasks.size ());
+		try
+		{
+			for (Callable<T> task : tasks)
+				futures.add (executor.submit (guarded (task, slots, permits, failed,
+					finished)));
+			for (Future<T> future : futures)
+				results.add (future.get ());
+			return results;
+		}
+		catch (ExecutionException e)
+		{
+			throw asIOException (e.getCause ());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ("interrupted while processing entries");
+		}
+		finally
+		{
+			if (results.size () < tasks.size ())
+			{
+				failed.set (true);
+				for (int i = futures.size (); i < tasks.size (); i++)
+					finished.countDown ();
+				awaitUninterruptibly (finished);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Guard a task of {@link #execute(List)}. The task only runs while holding
+	 * one of the <code>slots</code> and one of the <code>permits</code>, if
+	 * any, and is skipped if another task failed before. A failure of the task
+	 * is recorded in <code>failed</code>. Either way <code>finished</code> is
+	 * counted down as soon as the task is done.
+	 * 
+	 * @param <T>
+	 *          the type of the result
+	 * @param task
+	 *          the task
+	 * @param slots
+	 *          the slots, or <code>null</code> if the number of concurrent tasks
+	 *          is bounded by the executor
+	 * @param permits
+	 *          the permits shared with other converters, or <code>null</code>
+	 * @param failed
+	 *          did one of the tasks fail?
+	 * @param finished
+	 *          the latch counting the tasks that are done
+	 * @return the guarded task
+	 */
+	private static <T> Callable<T> guarded (final Callable<T> task,
+		final Semaphore slots, final Semaphore permits,
+		final AtomicBoolean failed, final CountDownLatch finished)
+	{
+		return new Callable<T> ()
+		{
+			
+			@Override
+			public T call () throws Exception
+			{
+				try
+				{
+					if (slots != null)
+						slots.acquire ();
+					try
+					{
+						if (permits != null)
+							permits.acquire ();
+						try
+						{
+							if (failed.get ())
+								return null;
+							return task.call ();
+						}
+						catch (Exception | Error e)
+						{
+							// before giving up the slot, so waiting tasks are skipped
+							failed.set (true);
+							throw e;
+						}
+						finally
+						{
+							if (permits != null)
+								permits.release ();
+						}
+					}
+					finally
+					{
+						if (slots != null)
+							slots.release ();
+					}
+				}
+				catch (Exception | Error e)
+				{
+					failed.set (true);
+					throw e;
+				}
+				finally
+				{
+					finished.countDown ();
+				}
+			}
+		};
+	}
+	
+	
+	/**
+	 * Wait for a latch, even if the current thread is interrupted. The
+	 * interrupt status is restored afterwards.
+	 * 
+	 * @param latch
+	 *          the latch
+	 */
+	private static void awaitUninterruptibly (CountDownLatch latch)
+	{
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				latch.await ();
+				break;
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread ().interrupt ();
+	}
+	
+	
+	/**
+	 * Turn an exception thrown by a task into an IOException.
+	 * 
+	 * @param e
+	 *          the exception
+	 * @return the IOException
+	 */
+	private static IOException asIOException (Throwable e)
+	{
+		if (e instanceof IOException)
+			return (IOException) e;
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		return new IOException (e);
+	}
+	
+	
+	/**
+	 * Checks for errors.
+	 * 
+	 * @return true, if the converter reported errors
+	 */
+	public boolean hasErrors ()
+	{
+		return notifications.getCount (CaRoNotification.SERVERITY_ERROR) > 0;
+	}
+	
+	
+	/**
+	 * Checks for warnings. Might return <code>false</code> even if
+	 * {@link #hasErrors()} returns <code>true</code>.
+	 * 
+	 * @return true, if the converter reported warnings
+	 */
+	public boolean hasWarnings ()
+	{
+		return notifications.getCount (CaRoNotification.SERVERITY_WARN) > 0;
+	}
+	
+	
+	/**
+	 * Gets the notifications occured during the current or last conversion.
+	 * They are cleared at the beginning of every conversion or plan. If the
+	 * notifications are bounded, see {@link #setNotificationLimit(int)}, the
+	 * list only contains the notifications that were kept.
+	 * 
+	 * @return the notifications
+	 */
+	public CaRoNotifications getNotifications ()
+	{
+		return notifications;
+	}
+	
+	
+	/**
+	 * Bound the notifications: keep at most <code>limit</code> notifications of
+	 * every kind, further notifications are only counted. This keeps the memory
+	 * for notifications constant, even if huge containers produce lots of
+	 * similar notes.
+	 * 
+	 * @param limit
+	 *          the maximum number of notifications per message template, 0 or
+	 *          less to keep all notifications
+	 */
+	public void setNotificationLimit (int limit)
+	{
+		notifications.setLimit (limit);
+	}
+	
+	
+	/**
+	 * Set the minimum severity of notifications. Notifications of a lower
+	 * severity are neither recorded nor logged, and their messages will never
+	 * be built. Note that {@link #hasWarnings()} won't report warnings if the
+	 * minimum severity is {@link CaRoNotification#SERVERITY_ERROR}.
+	 * 
+	 * @param severity
+	 *          the minimum severity, defaults to
+	 *          {@link CaRoNotification#SERVERITY_NOTE}
+	 */
+	public void setMinimumSeverity (int severity)
+	{
+		notifications.setMinimumSeverity (severity);
+	}
+	
+	
+	/**
+	 * Report something that happened during the conversion: record a
+	 * notification and log its message. Nothing is done if notifications of
+	 * this severity are not recorded, see {@link #setMinimumSeverity(int)}.
+	 * 
+	 * @param severity
+	 *          the severity
+	 * @param template
+	 *          the template of the message, see
+	 *          {@link String#format(String, Object...)}
+	 * @param args
+	 *          the arguments referenced by the template
+	 */
+	protected void report (int severity, String template, Object... args)
+	{
+		report (severity, null, template, args);
+	}
+	
+	
+	/**
+	 * Report a failure during the conversion: record a notification and log its
+	 * message including the exception. Nothing is done if notifications of this
+	 * severity are not recorded, see {@link #setMinimumSeverity(int)}, and
+	 * notifications suppressed by the limit are not logged, see
+	 * {@link #setNotificationLimit(int)}. The message is only formatted if it
+	 * is actually logged or requested.
+	 * 
+	 * @param severity
+	 *          the severity
+	 * @param e
+	 *          the exception causing the notification, may be <code>null</code>
+	 * @param template
+	 *          the template of the message, see
+	 *          {@link String#format(String, Object...)}
+	 * @param args
+	 *          the arguments referenced by the template
+	 */
+	protected void report (int severity, Exception e, String template,
+		Object... args)
+	{
+		if (!notifications.isRecorded (severity))
+			return;
+		CaRoNotification note = new CaRoNotification (severity, template, args);
+		// suppressed notifications are only counted, not logged
+		if (!notifications.add (note))
+			return;
+		// the logger only converts the message to a string if it logs the line
+		Object message = lazyMessage (note);
+		if (severity >= CaRoNotification.SERVERITY_ERROR)
+			LOGGER.error (e, message);
+		else if (severity >= CaRoNotification.SERVERITY_WARN)
+			LOGGER.warn (e, message);
+		else
+			LOGGER.info (e, message);
+	}
+	
+	
+	/**
+	 * Wrap the message of a notification, so that it is only formatted if
+	 * converted to a string.
+	 * 
+	 * @param note
+	 *          the notification
+	 * @return the lazy message
+	 */
+	private static Object lazyMessage (final CaRoNotification note)
+	{
+		return new Object ()
+		{
+			
+			@Override
+			public String toString ()
+			{
+				return note.getMessage ();
+			}
+		};
+	}
+	
+	
+	/**
+	 * Gets the statistics of the current or last conversion. Every call to
+	 * {@link #convertTo(File)} starts with fresh statistics.
+	 * 
+	 * @return the statistics
+	 */
+	public ConversionStatistics getStatistics ()
+	{
+		return statistics;
+	}
+	
+	
+	/**
+	 * Open the source container.
+	 * 
+	 * @return true, if opening was successful
+	 */
+	protected abstract boolean openSourceContainer ();
+	
+	
+	/**
+	 * Open the source container.
+	 * 
+	 * @return true, if opening was successful
+	 */
+	protected abstract boolean closeSourceContainer ();
+	
+	
+	/**
+	 * Convert the container.
+	 * 
+	 * @return true, if converting was successful
+	 */
+	protected abstract boolean convert ();
+	
+	
+	/**
+	 * Discard the target container after the conversion failed or was aborted,
+	 * releasing the resources of the libraries before the workspace is
+	 * removed. Must not fail if the target container was closed before.
+	 */
+	protected abstract void discardTargetContainer ();
+	
+	
+	/**
+	 * Write the container.
+	 * 
+	 * @param target
+	 *          the target file to write to
+	 * @return true, if exporting was successful
+	 */
+	protected abstract boolean write (File target);
+	
+	
+	/**
+	 * Plan the conversion of the opened source container, see {@link #plan()}.
+	 * 
+	 * @param plan
+	 *          the plan to add the entries to
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	protected abstract void planEntries (ConversionPlan plan) throws IOException;
+	
+	
+	/**
+	 * Plan the conversion of this container without converting it. Only the
+	 * manifest and meta data of the source container, as well as its central
+	 * directory for the sizes of entries, are read. Nothing is extracted and
+	 * nothing is written. Notifications are reported as during a conversion.
+	 * 
+	 * If the source container is given as a stream, the stream will be
+	 * consumed. The container is then kept in a temporary workspace, so it can
+	 * still be converted afterwards. That workspace is removed after the
+	 * conversion, or when the converter is closed, see {@link #close()}.
+	 * 
+	 * @return the plan, or <code>null</code> if the source container cannot be
+	 *         read
+	 */
+	public ConversionPlan plan ()
+	{
+		statistics = new ConversionStatistics ();
+		notifications.clear ();
+		totalEntries = 0;
+		rawEntries.clear ();
+		targetFormats.clear ();
+		sourceDirectoryFailed = false;
+		try
+		{
+			workspace = new CaRoWorkspace (temporaryRoot);
+		}
+		catch (IOException e)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to create temporary workspace in %s : %s", temporaryRoot,
+				e.getMessage ());
+			return null;
+		}
+		
+		try
+		{
+			if (!spoolSource (true))
+				return null;
+			if (!openSourceContainer ())
+			{
+				report (CaRoNotification.SERVERITY_ERROR, "wasn't able to open %s",
+					sourceFile);
+				closeSourceContainer ();
+				return null;
+			}
+			try
+			{
+				ConversionPlan plan = new ConversionPlan ();
+				planEntries (plan);
+				return plan;
+			}
+			catch (IOException e)
+			{
+				report (CaRoNotification.SERVERITY_ERROR, e,
+					"wasn't able to plan the conversion of %s : %s", sourceFile,
+					e.getMessage ());
+				return null;
+			}
+			finally
+			{
+				closeSourceContainer ();
+			}
+		}
+		finally
+		{
+			closeSourceDirectory ();
+			try
+			{
+				workspace.close ();
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn (e, "wasn't able to delete temporary workspace ",
+					workspace.getDirectory ());
+			}
+			workspace = null;
+		}
+	}
+	
+	
+	/**
+	 * Add an entry of the source container to a plan. The sizes of the entry
+	 * are taken from the central directory of the source container.
+	 * 
+	 * @param plan
+	 *          the plan
+	 * @param source
+	 *          the file in the source container
+	 * @param target
+	 *          the path in the target container, <code>null</code> if the entry
+	 *          isn't copied
+	 * @param action
+	 *          the action
+	 * @param format
+	 *          the format of the entry, may be <code>null</code>
+	 */
+	protected void planEntry (ConversionPlan plan, Path source, String target,
+		ConversionPlan.Action action, URI format)
+	{
+		long size = -1;
+		long compressedSize = -1;
+		ZipDirectory directory = getSourceDirectory ();
+		if (directory != null)
+		{
+			ZipDirectory.Entry entry = directory.getEntry (getEntryName (source));
+			if (entry != null)
+			{
+				size = entry.getSize ();
+				compressedSize = entry.getCompressedSize ();
+			}
+		}
+		plan.add (new ConversionPlan.Entry (source.toString (), target, action,
+			format, size, compressedSize));
+	}
+	
+	
+	/**
+	 * Convert this container to <code>target</code>.
+	 * 
+	 * @param target
+	 *          the target file
+	 * @return true, if converting was successful
+	 */
+	public boolean convertTo (File target)
+	{
+		return convertTo (target, null);
+	}
+	
+	
+	/**
+	 * Convert this container and write the result to <code>target</code>. The
+	 * converted container is built in the temporary workspace and copied to
+	 * the stream after the conversion succeeded, thus the workspace needs room
+	 * for the converted container in addition to the source container, if that
+	 * is spooled from a stream. If the container needs to be repacked, see
+	 * {@link #needsRepack()}, it is repacked straight into the stream, thus a
+	 * failure while repacking may leave a partial container in the stream. The
+	 * stream will not be closed.
+	 * 
+	 * @param target
+	 *          the stream to write the converted container to
+	 * @return true, if converting was successful
+	 */
+	public boolean convertTo (OutputStream target)
+	{
+		return convertTo (null, target);
+	}
+	
+	
+	/**
+	 * Convert this container to either a file or a stream.
+	 * 
+	 * @param target
+	 *          the target file, or <code>null</code> to write to
+	 *          <code>out</code>
+	 * @param out
+	 *          the target stream, or <code>null</code> to write to
+	 *          <code>target</code>
+	 * @return true, if converting was successful
+	 */
+	private boolean convertTo (File target, OutputStream out)
+	{
+		statistics = new ConversionStatistics ();
+		notifications.clear ();
+		totalEntries = 0;
+		rawEntries.clear ();
+		targetFormats.clear ();
+		sourceDirectoryFailed = false;
+		deadline = timeout > 0 ? new CancellationToken (timeout,
+			TimeUnit.NANOSECONDS) : null;
+		
+		Semaphore permits = containerPermits;
+		if (permits == null)
+			return convertWithWorkspace (target, out);
+		try
+		{
+			permits.acquire ();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+			report (CaRoNotification.SERVERITY_ERROR,
+				"interrupted while waiting to open %s", sourceFile);
+			return false;
+		}
+		try
+		{
+			return convertWithWorkspace (target, out);
+		}
+		finally
+		{
+			permits.release ();
+		}
+	}
+	
+	
+	/**
+	 * Convert this container in a new temporary workspace.
+	 * 
+	 * @param target
+	 *          the target file, or <code>null</code> to write to
+	 *          <code>out</code>
+	 * @param out
+	 *          the target stream, or <code>null</code> to write to
+	 *          <code>target</code>
+	 * @return true, if converting was successful
+	 */
+	private boolean convertWithWorkspace (File target, OutputStream out)
+	{
+		// create a workspace for temporary files
+		try
+		{
+			workspace = new CaRoWorkspace (temporaryRoot);
+		}
+		catch (IOException e)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to create temporary workspace in %s : %s", temporaryRoot,
+				e.getMessage ());
+			return false;
+		}
+		
+		try
+		{
+			if (!spoolSource (false))
+				return false;
+			if (out == null)
+				return convertInWorkspace (target);
+			
+			// the container is written to the stream by writeTarget
+			targetStream = out;
+			return convertInWorkspace (workspace.createLocation ("CaRoTarget",
+				"container"));
+		}
+		catch (IOException e)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to write the converted container : %s", e.getMessage ());
+			return false;
+		}
+		finally
+		{
+			targetStream = null;
+			shutdownExecutor ();
+			closeSourceDirectory ();
+			// remove the workspace
+			try
+			{
+				workspace.close ();
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn (e, "wasn't able to delete temporary workspace ",
+					workspace.getDirectory ());
+			}
+			workspace = null;
+			// a spooled source can only be converted once
+			close ();
+		}
+	}
+	
+	
+	/**
+	 * Remove the source container that was spooled into a temporary workspace
+	 * by {@link #plan()}, if it wasn't converted afterwards. Converters reading
+	 * from files don't need to be closed.
+	 */
+	@Override
+	public void close ()
+	{
+		if (sourceWorkspace == null)
+			return;
+		try
+		{
+			sourceWorkspace.close ();
+		}
+		catch (IOException e)
+		{
+			LOGGER.warn (e, "wasn't able to delete temporary workspace ",
+				sourceWorkspace.getDirectory ());
+		}
+		sourceWorkspace = null;
+	}
+	
+	
+	/**
+	 * Shut down the executor processing the entries of the current conversion
+	 * and wait for its threads to terminate.
+	 */
+	private void shutdownExecutor ()
+	{
+		if (executor == null)
+			return;
+		executor.shutdown ();
+		try
+		{
+			if (!executor.awaitTermination (1, TimeUnit.MINUTES))
+				LOGGER.warn ("entry processing didn't terminate in time");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+		executor = null;
+	}
+	
+	
+	/**
+	 * Convert this container to <code>target</code> asynchronously, using an
+	 * executor shared by all converters.
+	 * 
+	 * @param target
+	 *          the target file
+	 * @return the future result of the conversion
+	 * @see #convertToAsync(File, Executor)
+	 */
+	public CompletableFuture<ConversionResult> convertToAsync (File target)
+	{
+		return convertToAsync (target, getAsyncExecutor ());
+	}
+	
+	
+	/**
+	 * Convert this container to <code>target</code> asynchronously. The
+	 * conversion runs {@link #convertTo(File)} on the <code>executor</code>, the
+	 * future completes with the result of the conversion, even if the
+	 * conversion failed. Cancelling the future aborts this conversion only:
+	 * every run gets its own child of the {@link CancellationToken}, so neither
+	 * the shared token nor later conversions are affected.
+	 * 
+	 * A converter should only run a single conversion at a time.
+	 * 
+	 * @param target
+	 *          the target file
+	 * @param executor
+	 *          the executor to run the conversion
+	 * @return the future result of the conversion
+	 */
+	public CompletableFuture<ConversionResult> convertToAsync (
+		final File target, Executor executor)
+	{
+		final CancellationToken run = new CancellationToken (cancellation);
+		final CompletableFuture<ConversionResult> result = CompletableFuture
+			.supplyAsync (new Supplier<ConversionResult> ()
+			{
+				
+				@Override
+				public ConversionResult get ()
+				{
+					runCancellation = run;
+					try
+					{
+						return new ConversionResult (CaRoConverter.this, target,
+							convertTo (target));
+					}
+					finally
+					{
+						runCancellation = null;
+					}
+				}
+			}, executor);
+		result.whenComplete (new BiConsumer<ConversionResult, Throwable> ()
+		{
+			
+			@Override
+			public void accept (ConversionResult conversion, Throwable e)
+			{
+				if (result.isCancelled ())
+					run.cancel ("conversion was aborted");
+			}
+		});
+		return result;
+	}
+	
+	
+	/**
+	 * Gets the executor shared by all asynchronous conversions. It runs every
+	 * conversion in a virtual thread if possible, see
+	 * {@link CaRoExecutors#newVirtualThreadExecutor(String)}, so pending
+	 * conversions don't prevent the JVM from exiting.
+	 * 
+	 * @return the shared executor
+	 */
+	private static synchronized Executor getAsyncExecutor ()
+	{
+		if (asyncExecutor == null)
+			asyncExecutor = CaRoExecutors.newVirtualThreadExecutor ("CaRo-async");
+		return asyncExecutor;
+	}
+	
+	
+	/**
+	 * Copy the source container into a workspace if it was given as a stream.
+	 * 
+	 * @param keep
+	 *          should the container be kept beyond the current workspace, for
+	 *          a conversion after planning?
+	 * @return true, if the source container is available as a file
+	 */
+	private boolean spoolSource (boolean keep)
+	{
+		if (sourceStream == null)
+			return true;
+		try
+		{
+			CaRoWorkspace into = workspace;
+			if (keep)
+				into = sourceWorkspace = new CaRoWorkspace (temporaryRoot);
+			File spooled = into.createFile ("CaRoSource", "container");
+			try (OutputStream out = Files.newOutputStream (spooled.toPath ()))
+			{
+				statistics.addTemporaryBytes (copy (sourceStream, out));
+			}
+			sourceFile = spooled;
+			return true;
+		}
+		catch (IOException e)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to read the source container : %s", e.getMessage ());
+			return false;
+		}
+		finally
+		{
+			sourceStream = null;
+		}
+	}
+	
+	
+	/**
+	 * Convert this container to <code>target</code> using the current
+	 * {@link #workspace}.
+	 * 
+	 * @param target
+	 *          the target file
+	 * @return true, if converting was successful
+	 */
+	private boolean convertInWorkspace (File target)
+	{
+		// open
+		long start = System.nanoTime ();
+		Object event = CaRoEvents.beginPhase ();
+		boolean success = openSourceContainer ();
+		endPhase (Phase.OPEN, start, event, success);
+		if (!success)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, "wasn't able to open %s",
+				sourceFile);
+			closeSourceContainer ();
+			return false;
+		}
+		// convert
+		start = System.nanoTime ();
+		event = CaRoEvents.beginPhase ();
+		success = convert ();
+		endPhase (Phase.CONVERT, start, event, success);
+		if (!success)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, "wasn't able to convert %s",
+				sourceFile);
+			closeSourceContainer ();
+			discardTargetContainer ();
+			return false;
+		}
+		// close source container
+		start = System.nanoTime ();
+		event = CaRoEvents.beginPhase ();
+		success = closeSourceContainer ();
+		endPhase (Phase.CLOSE, start, event, success);
+		if (!success)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, "wasn't able to close %s",
+				sourceFile);
+			closeSourceContainer ();
+			discardTargetContainer ();
+			return false;
+		}
+		String reason = getCancellationReason ();
+		if (reason != null)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, "conversion of %s stopped: %s",
+				sourceFile, reason);
+			discardTargetContainer ();
+			return false;
+		}
+		// write target file
+		start = System.nanoTime ();
+		event = CaRoEvents.beginPhase ();
+		success = write (target);
+		endPhase (Phase.WRITE, start, event, success);
+		if (!success)
+		{
+			report (CaRoNotification.SERVERITY_ERROR, "wasn't able to write %s",
+				target);
+			closeSourceContainer ();
+			discardTargetContainer ();
+			return false;
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Finish a phase of the conversion: record its time in the statistics and
+	 * commit its flight recorder event.
+	 * 
+	 * @param phase
+	 *          the phase
+	 * @param start
+	 *          the start of the phase as returned by {@link System#nanoTime()}
+	 * @param event
+	 *          the event returned by {@link CaRoEvents#beginPhase()}
+	 * @param success
+	 *          was the phase successful?
+	 */
+	private void endPhase (Phase phase, long start, Object event,
+		boolean success)
+	{
+		statistics.addPhaseTime (phase, System.nanoTime () - start);
+		CaRoEvents.endPhase (event, this, sourceFile, phase.name (), success);
 	}
 	
 	
@@ -305,16 +2029,14 @@ public abstract class CaRoConverter
 	
 	
 	/**
-	 * Convert a CA vcard to an RO agent.
+	 * Convert a CA vcard to an RO agent. Problems are reported as
+	 * notifications of this converter.
 	 * 
 	 * @param vcard
 	 *          the vcard
-	 * @param notifications
-	 *          the notifications
 	 * @return the agent
 	 */
-	protected static Agent vcardToAgent (VCard vcard,
-		List<CaRoNotification> notifications)
+	protected Agent vcardToAgent (VCard vcard)
 	{
 		if (vcard == null)
 			return null;
@@ -346,10 +2068,8 @@ public abstract class CaRoConverter
 		}
 		catch (URISyntaxException e)
 		{
-			LOGGER.warn (e, "wasn't able to create mailto uri for ",
-				vcard.getEmail ());
-			notifications.add (new CaRoNotification (CaRoNotification.SERVERITY_WARN,
-				"wasn't able to create mailto uri for " + vcard.getEmail ()));
+			report (CaRoNotification.SERVERITY_WARN, e,
+				"wasn't able to create mailto uri for %s", vcard.getEmail ());
 		}
 		
 		return emptyAgent ? null : agent;
@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.binfalse.bflog.LOGGER;
+
+
+
+/**
+ * The Class CaRoExecutors creates the executors for concurrent conversions.
+ * 
+ * Conversions mainly wait for file and zip file system I/O. On Java 21 and
+ * later such work is best done in virtual threads, which are cheap enough to
+ * start one per task. As CaRo still runs on older Java versions, virtual
+ * threads are looked up reflectively and a cached pool of platform threads is
+ * used as a fallback.
+ * 
+ * @author Martin Scharm
+ */
+public final class CaRoExecutors
+{
+	
+	/** The factory method for virtual thread executors, if available. */
+	private static final Method	VIRTUAL_THREAD_EXECUTOR	= findVirtualThreadExecutor ();
+	
+	
+	/**
+	 * Not to be instantiated.
+	 */
+	private CaRoExecutors ()
+	{
+	}
+	
+	
+	/**
+	 * Find <code>Executors.newVirtualThreadPerTaskExecutor()</code>.
+	 * 
+	 * @return the method, or <code>null</code> if this JVM doesn't support
+	 *         virtual threads
+	 */
+	private static Method findVirtualThreadExecutor ()
+	{
+		try
+		{
+			return Executors.class.getMethod ("newVirtualThreadPerTaskExecutor");
+		}
+		catch (NoSuchMethodException | SecurityException e)
+		{
+			LOGGER.debug ("virtual threads are not available");
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Does this JVM support virtual threads?
+	 * 
+	 * @return true, if virtual threads are available
+	 */
+	public static boolean hasVirtualThreads ()
+	{
+		return VIRTUAL_THREAD_EXECUTOR != null;
+	}
+	
+	
+	/**
+	 * Create an executor that starts a new virtual thread for every task. If
+	 * virtual threads are not supported the executor will use a cached pool of
+	 * daemon threads instead. Either way the number of concurrent tasks is not
+	 * bounded by the executor.
+	 * 
+	 * @param name
+	 *          the name prefix of the fallback threads
+	 * @return the executor
+	 */
+	public static ExecutorService newVirtualThreadExecutor (String name)
+	{
+		if (VIRTUAL_THREAD_EXECUTOR != null)
+		{
+			try
+			{
+				return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke (null);
+			}
+			catch (ReflectiveOperationException | RuntimeException e)
+			{
+				LOGGER.warn (e, "wasn't able to create a virtual thread executor");
+			}
+		}
+		return Executors.newCachedThreadPool (newDaemonThreadFactory (name));
+	}
+	
+	
+	/**
+	 * Create a factory for daemon threads, which don't prevent the JVM from
+	 * exiting.
+	 * 
+	 * @param name
+	 *          the name prefix of the threads
+	 * @return the thread factory
+	 */
+	public static ThreadFactory newDaemonThreadFactory (final String name)
+	{
+		return new ThreadFactory ()
+		{
+			
+			private AtomicInteger	threads	= new AtomicInteger ();
+			
+			
+			@Override
+			public Thread newThread (Runnable runnable)
+			{
+				Thread thread = new Thread (runnable, name + "-"
+					+ threads.incrementAndGet ());
+				thread.setDaemon (true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+
+
+/**
+ * The interface CaRoListener to follow a conversion while it is running.
+ * 
+ * Listeners are registered at a converter using
+ * {@link CaRoConverter#addListener(CaRoListener)}. They are called from the
+ * threads doing the conversion, which may be several threads if the
+ * converter processes entries concurrently. Thus, implementations need to be
+ * thread-safe and should return quickly. A listener may stop the conversion
+ * by calling {@link CaRoConverter#abort()}.
+ * 
+ * @author Martin Scharm
+ */
+public interface CaRoListener
+{
+	
+	/**
+	 * Called whenever the converter records a notification, including
+	 * notifications that are not kept because of
+	 * {@link CaRoConverter#setNotificationLimit(int)}.
+	 * 
+	 * @param converter
+	 *          the converter
+	 * @param notification
+	 *          the notification
+	 */
+	public void notified (CaRoConverter converter,
+		CaRoNotification notification);
+	
+	
+	/**
+	 * Called whenever the converter finished an entry.
+	 * 
+	 * @param converter
+	 *          the converter
+	 * @param entries
+	 *          the number of entries converted so far
+	 * @param totalEntries
+	 *          the number of entries to convert, 0 if unknown
+	 * @param bytes
+	 *          the number of bytes written so far
+	 */
+	public void progress (CaRoConverter converter, long entries,
+		long totalEntries, long bytes);
+}
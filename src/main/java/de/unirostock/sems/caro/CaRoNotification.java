@@ -25,6 +25,10 @@ import de.binfalse.bflog.LOGGER;
 /**
  * The Class CaRoNotification to store notifications.
  * 
+ * A notification may be created from a message template and its arguments.
+ * The message is then only formatted when it is requested for the first time,
+ * so notifications that are never read don't pay for building their messages.
+ * 
  * @author Martin Scharm
  */
 public class CaRoNotification
@@ -39,9 +43,15 @@ public class CaRoNotification
 	/** The Constant SERVERITY_ERROR. */
 	public static final int	SERVERITY_ERROR	= LOGGER.ERROR;
 	
-	/** The message. */
+	/** The message, formatted on demand. */
 	private String					message;
 	
+	/** The template of the message. */
+	private String					template;
+	
+	/** The arguments referenced by the template. */
+	private Object[]				args;
+	
 	/** The severity. */
 	private int							severity;
 	
@@ -58,20 +68,58 @@ public class CaRoNotification
 	{
 		this.severity = severity;
 		this.message = message;
+		this.template = message;
+	}
+	
+	
+	/**
+	 * Create a notification from a message template. Notifications sharing a
+	 * template, e.g. <code>"dropping %s"</code>, are considered to be of the
+	 * same kind, see {@link CaRoNotifications#setLimit(int)}.
+	 * 
+	 * @param severity
+	 *          the severity
+	 * @param template
+	 *          the template of the message, see
+	 *          {@link String#format(String, Object...)}
+	 * @param args
+	 *          the arguments referenced by the template, which should not be
+	 *          modified afterwards as they are only formatted on demand
+	 */
+	public CaRoNotification (int severity, String template, Object... args)
+	{
+		this.severity = severity;
+		this.template = template;
+		this.args = args;
 	}
 	
 	
 	/**
-	 * Gets the message.
+	 * Gets the message. If this notification was created from a template the
+	 * message will be formatted when it is requested for the first time.
 	 * 
 	 * @return the message
 	 */
 	public String getMessage ()
 	{
+		if (message == null)
+			message = String.format (template, args);
 		return message;
 	}
 	
 	
+	/**
+	 * Gets the template of the message. For notifications created from a plain
+	 * message this is the message itself.
+	 * 
+	 * @return the template
+	 */
+	public String getTemplate ()
+	{
+		return template;
+	}
+	
+	
 	/**
 	 * Gets the severity.
 	 * 
@@ -109,6 +157,6 @@ public class CaRoNotification
 	 */
 	public String toString ()
 	{
-		return severityToString (severity) + ": " + message;
+		return severityToString (severity) + ": " + getMessage ();
 	}
 }
@@ -0,0 +1,287 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * The Class CaRoNotifications is the list of notifications of a conversion.
+ * 
+ * It counts the notifications per severity as they are added, so checking
+ * for errors or warnings does not need to scan the list. Optionally, the list
+ * can be bounded: if a limit is set, only the first notifications of every
+ * kind (i.e. with the same {@link CaRoNotification#getTemplate() template})
+ * are kept and all further ones are only counted. Thus, the memory used for
+ * notifications does not grow with the size of the converted containers.
+ * Notifications below a minimum severity are dropped entirely, see
+ * {@link #setMinimumSeverity(int)}.
+ * 
+ * Notifications may be added from multiple threads.
+ * 
+ * @author Martin Scharm
+ */
+public class CaRoNotifications
+	extends AbstractList<CaRoNotification>
+{
+	
+	/** The kept notifications. */
+	private List<CaRoNotification>	notifications;
+	
+	/** The number of notifications per severity, including suppressed ones. */
+	private Map<Integer, Integer>		severityCounts;
+	
+	/** The number of notifications per template, only tracked if bounded. */
+	private Map<String, Integer>		templateCounts;
+	
+	/** The number of suppressed notifications per template. */
+	private Map<String, Integer>		suppressedCounts;
+	
+	/** The number of suppressed notifications. */
+	private int											suppressed;
+	
+	/** The maximum number of notifications kept per template. */
+	private int											limit;
+	
+	/** The minimum severity of notifications to be recorded. */
+	private volatile int						minimumSeverity;
+	
+	
+	/**
+	 * Instantiates a new, unbounded list of notifications.
+	 */
+	public CaRoNotifications ()
+	{
+		notifications = new ArrayList<CaRoNotification> ();
+		severityCounts = new HashMap<Integer, Integer> ();
+		templateCounts = new HashMap<String, Integer> ();
+		suppressedCounts = new HashMap<String, Integer> ();
+		minimumSeverity = CaRoNotification.SERVERITY_NOTE;
+	}
+	
+	
+	/**
+	 * Instantiates a copy of some notifications, including their counts and
+	 * settings. Later changes of <code>other</code> don't affect the copy.
+	 * 
+	 * @param other
+	 *          the notifications to copy
+	 */
+	public CaRoNotifications (CaRoNotifications other)
+	{
+		synchronized (other)
+		{
+			notifications = new ArrayList<CaRoNotification> (other.notifications);
+			severityCounts = new HashMap<Integer, Integer> (other.severityCounts);
+			templateCounts = new HashMap<String, Integer> (other.templateCounts);
+			suppressedCounts = new HashMap<String, Integer> (
+				other.suppressedCounts);
+			suppressed = other.suppressed;
+			limit = other.limit;
+			minimumSeverity = other.minimumSeverity;
+		}
+	}
+	
+	
+	/**
+	 * Bound this list: keep at most <code>limit</code> notifications per
+	 * template, further notifications will only be counted. Notifications that
+	 * were already added are not affected.
+	 * 
+	 * @param limit
+	 *          the maximum number of notifications per template, 0 or less for
+	 *          an unbounded list
+	 */
+	public synchronized void setLimit (int limit)
+	{
+		this.limit = limit;
+	}
+	
+	
+	/**
+	 * Gets the maximum number of notifications kept per template.
+	 * 
+	 * @return the limit, 0 or less if this list is unbounded
+	 */
+	public synchronized int getLimit ()
+	{
+		return limit;
+	}
+	
+	
+	/**
+	 * Set the minimum severity of notifications. Notifications of a lower
+	 * severity are neither kept nor counted. Notifications that were already
+	 * added are not affected.
+	 * 
+	 * @param severity
+	 *          the minimum severity, e.g.
+	 *          {@link CaRoNotification#SERVERITY_WARN} to ignore notes
+	 */
+	public void setMinimumSeverity (int severity)
+	{
+		this.minimumSeverity = severity;
+	}
+	
+	
+	/**
+	 * Gets the minimum severity of notifications.
+	 * 
+	 * @return the minimum severity
+	 */
+	public int getMinimumSeverity ()
+	{
+		return minimumSeverity;
+	}
+	
+	
+	/**
+	 * Will notifications of a certain severity be recorded? Check this before
+	 * creating expensive notifications.
+	 * 
+	 * @param severity
+	 *          the severity
+	 * @return true, if notifications of that severity are not dropped
+	 */
+	public boolean isRecorded (int severity)
+	{
+		return severity >= minimumSeverity;
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#add(java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean add (CaRoNotification notification)
+	{
+		if (!isRecorded (notification.getSeverity ()))
+			return false;
+		
+		Integer count = severityCounts.get (notification.getSeverity ());
+		severityCounts.put (notification.getSeverity (), count == null ? 1
+			: count + 1);
+		
+		if (limit > 0)
+		{
+			String template = notification.getTemplate ();
+			count = templateCounts.get (template);
+			count = count == null ? 1 : count + 1;
+			templateCounts.put (template, count);
+			if (count > limit)
+			{
+				count = suppressedCounts.get (template);
+				suppressedCounts.put (template, count == null ? 1 : count + 1);
+				suppressed++;
+				return false;
+			}
+		}
+		modCount++;
+		return notifications.add (notification);
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	public synchronized CaRoNotification get (int index)
+	{
+		return notifications.get (index);
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public synchronized int size ()
+	{
+		return notifications.size ();
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#clear()
+	 */
+	@Override
+	public synchronized void clear ()
+	{
+		modCount++;
+		notifications.clear ();
+		severityCounts.clear ();
+		templateCounts.clear ();
+		suppressedCounts.clear ();
+		suppressed = 0;
+	}
+	
+	
+	/**
+	 * Gets the number of notifications of a certain severity, including
+	 * suppressed notifications.
+	 * 
+	 * @param severity
+	 *          the severity, e.g. {@link CaRoNotification#SERVERITY_ERROR}
+	 * @return the number of notifications
+	 */
+	public synchronized int getCount (int severity)
+	{
+		Integer count = severityCounts.get (severity);
+		return count == null ? 0 : count;
+	}
+	
+	
+	/**
+	 * Gets the number of notifications that were suppressed because of the
+	 * limit.
+	 * 
+	 * @return the number of suppressed notifications
+	 */
+	public synchronized int getSuppressed ()
+	{
+		return suppressed;
+	}
+	
+	
+	/**
+	 * Gets the number of suppressed notifications of a certain template.
+	 * 
+	 * @param template
+	 *          the template
+	 * @return the number of suppressed notifications
+	 */
+	public synchronized int getSuppressed (String template)
+	{
+		Integer count = suppressedCounts.get (template);
+		return count == null ? 0 : count;
+	}
+}
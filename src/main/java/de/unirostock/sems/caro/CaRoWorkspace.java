@@ -0,0 +1,155 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import de.binfalse.bflog.LOGGER;
+
+
+
+/**
+ * The Class CaRoWorkspace provides a temporary directory for the scratch files
+ * of a single conversion. All files created through a workspace are removed
+ * as soon as the workspace is closed, there is no need to register them using
+ * {@link java.io.File#deleteOnExit()}.
+ * 
+ * @author Martin Scharm
+ */
+public class CaRoWorkspace
+	implements Closeable
+{
+	
+	/** The directory of this workspace. */
+	private Path	directory;
+	
+	
+	/**
+	 * Create a new workspace.
+	 * 
+	 * @param root
+	 *          the directory to create the workspace in, or <code>null</code> to
+	 *          use the system's default temporary directory
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public CaRoWorkspace (File root) throws IOException
+	{
+		if (root == null)
+			directory = Files.createTempDirectory ("CaRo");
+		else
+		{
+			Files.createDirectories (root.toPath ());
+			directory = Files.createTempDirectory (root.toPath (), "CaRo");
+		}
+	}
+	
+	
+	/**
+	 * Gets the directory of this workspace.
+	 * 
+	 * @return the directory
+	 */
+	public File getDirectory ()
+	{
+		return directory.toFile ();
+	}
+	
+	
+	/**
+	 * Create a new empty file in this workspace.
+	 * 
+	 * @param prefix
+	 *          the prefix of the file name
+	 * @param suffix
+	 *          the suffix of the file name
+	 * @return the file
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public File createFile (String prefix, String suffix) throws IOException
+	{
+		return Files.createTempFile (directory, prefix, suffix).toFile ();
+	}
+	
+	
+	/**
+	 * Get a unique location in this workspace. In contrast to
+	 * {@link #createFile(String, String)} the file will not exist.
+	 * 
+	 * @param prefix
+	 *          the prefix of the file name
+	 * @param suffix
+	 *          the suffix of the file name
+	 * @return the location
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public File createLocation (String prefix, String suffix)
+		throws IOException
+	{
+		File location = createFile (prefix, suffix);
+		Files.delete (location.toPath ());
+		return location;
+	}
+	
+	
+	/**
+	 * Close this workspace and delete all files in it.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close () throws IOException
+	{
+		if (directory == null || !Files.exists (directory))
+			return;
+		Files.walkFileTree (directory, new SimpleFileVisitor<Path> ()
+		{
+			
+			@Override
+			public FileVisitResult visitFile (Path file, BasicFileAttributes attrs)
+				throws IOException
+			{
+				Files.delete (file);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			
+			@Override
+			public FileVisitResult postVisitDirectory (Path dir, IOException exc)
+				throws IOException
+			{
+				if (exc != null)
+					throw exc;
+				Files.delete (dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		LOGGER.debug ("deleted workspace ", directory);
+	}
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.binfalse.bflog.LOGGER;
+import de.unirostock.sems.cbext.Formatizer;
+
+
+
+/**
+ * The Class CachingFormatResolver avoids sniffing the contents of files using
+ * {@link Formatizer#guessFormat(File)} where possible.
+ * 
+ * A format is resolved in three steps:
+ * <ol>
+ * <li>A table of extensions, confirmed by the first bytes of the file. The
+ * table only knows formats that can be told from these, e.g. images and PDFs,
+ * but no XML dialects.</li>
+ * <li>A least recently used cache of previous guesses, keyed by the extension
+ * and a digest of the contents. Files larger than {@link #MAX_CACHED_SIZE}
+ * are not cached, thus they are never digested.</li>
+ * <li>{@link Formatizer#guessFormat(File)}, the result will be cached. Rules
+ * of the table without magic bytes, e.g. for plain text, are only used if
+ * the format cannot be guessed, as the extension alone doesn't tell anything
+ * about the contents.</li>
+ * </ol>
+ * 
+ * This class is thread-safe, a single instance may be shared by all
+ * conversions.
+ * 
+ * @author Martin Scharm
+ */
+public class CachingFormatResolver
+	implements FormatResolver
+{
+	
+	/** The default number of cached guesses. */
+	public static final int			DEFAULT_CACHE_SIZE	= 1024;
+	
+	/** The prefix of formats given by a mime type. */
+	public static final String	MEDIATYPES					= "http://purl.org/NET/mediatypes/";
+	
+	/** The size of the largest files whose guesses are cached, in bytes. */
+	public static final long		MAX_CACHED_SIZE			= 1024 * 1024;
+	
+	/** The algorithm used to digest the contents of files. */
+	private static final String	DIGEST							= "SHA-1";
+	
+	/**
+	 * A rule of the table of extensions.
+	 */
+	private static class Rule
+	{
+		
+		/** The format. */
+		private final URI			format;
+		
+		/** The first bytes of a file of that format, or <code>null</code>. */
+		private final byte[]	magic;
+		
+		
+		/**
+		 * Instantiates a new rule.
+		 * 
+		 * @param format
+		 *          the format
+		 * @param magic
+		 *          the magic bytes
+		 */
+		private Rule (URI format, byte[] magic)
+		{
+			this.format = format;
+			this.magic = magic;
+		}
+	}
+	
+	/** The rules, by lower case extension. */
+	private Map<String, Rule>						rules;
+	
+	/** The cached guesses, by extension and digest. */
+	private LinkedHashMap<String, URI>	cache;
+	
+	/** The number of formats resolved using the table of extensions. */
+	private AtomicLong									tableHits;
+	
+	/** The number of formats resolved using the cache. */
+	private AtomicLong									cacheHits;
+	
+	/** The number of formats that needed to be guessed. */
+	private AtomicLong									misses;
+	
+	
+	/**
+	 * Instantiates a new resolver caching {@link #DEFAULT_CACHE_SIZE} guesses.
+	 */
+	public CachingFormatResolver ()
+	{
+		this (DEFAULT_CACHE_SIZE);
+	}
+	
+	
+	/**
+	 * Instantiates a new resolver.
+	 * 
+	 * @param cacheSize
+	 *          the maximum number of cached guesses, 0 to disable the cache
+	 */
+	public CachingFormatResolver (final int cacheSize)
+	{
+		rules = new ConcurrentHashMap<String, Rule> ();
+		cache = new LinkedHashMap<String, URI> (16, 0.75f, true)
+		{
+			
+			private static final long	serialVersionUID	= 1L;
+			
+			
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+			 */
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<String, URI> eldest)
+			{
+				return size () > cacheSize;
+			}
+		};
+		tableHits = new AtomicLong ();
+		cacheHits = new AtomicLong ();
+		misses = new AtomicLong ();
+		
+		addMediaType ("image/png", new byte[] { (byte) 0x89, 'P', 'N', 'G' },
+			"png");
+		addMediaType ("image/jpeg", new byte[] { (byte) 0xff, (byte) 0xd8,
+			(byte) 0xff }, "jpg", "jpeg");
+		addMediaType ("image/gif", "GIF8".getBytes (StandardCharsets.US_ASCII),
+			"gif");
+		addMediaType ("image/tiff", new byte[] { 'I', 'I', 42, 0 }, "tif", "tiff");
+		addMediaType ("application/pdf",
+			"%PDF".getBytes (StandardCharsets.US_ASCII), "pdf");
+		addMediaType ("application/zip", new byte[] { 'P', 'K', 3, 4 }, "zip");
+		addMediaType ("application/x-gzip", new byte[] { 0x1f, (byte) 0x8b },
+			"gz");
+		addMediaType ("text/plain", null, "txt");
+		addMediaType ("text/csv", null, "csv");
+		addMediaType ("text/turtle", null, "ttl");
+	}
+	
+	
+	/**
+	 * Add a media type to the table of extensions.
+	 * 
+	 * @param mediaType
+	 *          the media type, e.g. <code>image/png</code>
+	 * @param magic
+	 *          the first bytes of files of that type, or <code>null</code> to
+	 *          only use the media type if the format cannot be guessed
+	 * @param extensions
+	 *          the extensions of files of that type
+	 */
+	public void addMediaType (String mediaType, byte[] magic,
+		String... extensions)
+	{
+		URI format = URI.create (MEDIATYPES + mediaType);
+		for (String extension : extensions)
+			rules.put (extension.toLowerCase (Locale.ENGLISH), new Rule (format,
+				magic));
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * de.unirostock.sems.caro.FormatResolver#resolveFormat(java.io.File)
+	 */
+	@Override
+	public URI resolveFormat (File file) throws IOException
+	{
+		String extension = getExtension (file);
+		Rule rule = rules.get (extension);
+		if (rule != null && rule.magic != null && startsWith (file, rule.magic))
+		{
+			tableHits.incrementAndGet ();
+			return rule.format;
+		}
+		
+		String key = null;
+		if (file.length () <= MAX_CACHED_SIZE)
+		{
+			key = extension + ":" + digest (file);
+			synchronized (cache)
+			{
+				URI format = cache.get (key);
+				if (format != null)
+				{
+					cacheHits.incrementAndGet ();
+					return format;
+				}
+			}
+		}
+		
+		misses.incrementAndGet ();
+		URI format = guessFormat (file);
+		if (format == null && rule != null && rule.magic == null)
+			format = rule.format;
+		LOGGER.debug ("guessed format of ", file, ": ", format);
+		if (format != null && key != null)
+			synchronized (cache)
+			{
+				cache.put (key, format);
+			}
+		return format;
+	}
+	
+	
+	/**
+	 * Guess the format of a file that is neither covered by the table of
+	 * extensions nor by the cache.
+	 * 
+	 * @param file
+	 *          the file
+	 * @return the format
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	protected URI guessFormat (File file) throws IOException
+	{
+		return Formatizer.guessFormat (file);
+	}
+	
+	
+	/**
+	 * Gets the number of formats resolved using the table of extensions.
+	 * 
+	 * @return the table hits
+	 */
+	public long getTableHits ()
+	{
+		return tableHits.get ();
+	}
+	
+	
+	/**
+	 * Gets the number of formats resolved using the cache of previous guesses.
+	 * 
+	 * @return the cache hits
+	 */
+	public long getCacheHits ()
+	{
+		return cacheHits.get ();
+	}
+	
+	
+	/**
+	 * Gets the number of formats that needed to be guessed.
+	 * 
+	 * @return the misses
+	 */
+	public long getMisses ()
+	{
+		return misses.get ();
+	}
+	
+	
+	/**
+	 * Gets the number of cached guesses.
+	 * 
+	 * @return the cache size
+	 */
+	public int getCacheSize ()
+	{
+		synchronized (cache)
+		{
+			return cache.size ();
+		}
+	}
+	
+	
+	/**
+	 * Forget all cached guesses.
+	 */
+	public void clearCache ()
+	{
+		synchronized (cache)
+		{
+			cache.clear ();
+		}
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString ()
+	{
+		return "format resolver -- table hits: " + getTableHits ()
+			+ ", cache hits: " + getCacheHits () + ", misses: " + getMisses ();
+	}
+	
+	
+	/**
+	 * Gets the lower case extension of a file.
+	 * 
+	 * @param file
+	 *          the file
+	 * @return the extension, or an empty string if there is none
+	 */
+	private static String getExtension (File file)
+	{
+		String name = file.getName ();
+		int dot = name.lastIndexOf ('.');
+		if (dot < 0)
+			return "";
+		return name.substring (dot + 1).toLowerCase (Locale.ENGLISH);
+	}
+	
+	
+	/**
+	 * Does a file start with some bytes?
+	 * 
+	 * @param file
+	 *          the file
+	 * @param magic
+	 *          the expected bytes
+	 * @return true, if the file starts with <code>magic</code>
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private static boolean startsWith (File file, byte[] magic)
+		throws IOException
+	{
+		byte[] head = new byte[magic.length];
+		int read = 0;
+		try (InputStream in = Files.newInputStream (file.toPath ()))
+		{
+			int n;
+			while (read < head.length
+				&& (n = in.read (head, read, head.length - read)) > 0)
+				read += n;
+		}
+		return read == head.length && Arrays.equals (head, magic);
+	}
+	
+	
+	/**
+	 * Digest the contents of a file.
+	 * 
+	 * @param file
+	 *          the file
+	 * @return the hex encoded digest
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private static String digest (File file) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance (DIGEST);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException ("cannot digest " + file, e);
+		}
+		byte[] buffer = new byte[CaRoConverter.COPY_BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream (file.toPath ()))
+		{
+			int n;
+			while ( (n = in.read (buffer)) > 0)
+				digest.update (buffer, 0, n);
+		}
+		StringBuilder hex = new StringBuilder ();
+		for (byte b : digest.digest ())
+			hex.append (String.format ("%02x", b));
+		return hex.toString ();
+	}
+}
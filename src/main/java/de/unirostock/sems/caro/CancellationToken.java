@@ -0,0 +1,179 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * The Class CancellationToken to stop running conversions.
+ * 
+ * A token is either cancelled explicitly using {@link #cancel(String)} or
+ * implicitly as soon as its deadline passed. Converters check their token
+ * between entries and while copying bytes, so a cancelled conversion stops
+ * shortly after, see {@link CaRoConverter#setCancellationToken(CancellationToken)}.
+ * A single token may be shared by multiple converters to stop all of them at
+ * once. Tokens are thread-safe, once cancelled they stay cancelled.
+ * 
+ * A child token, see {@link #CancellationToken(CancellationToken)}, is
+ * cancelled as soon as its parent is cancelled, but cancelling the child
+ * leaves the parent untouched. That way a single conversion can be stopped
+ * without affecting other conversions sharing the parent.
+ * 
+ * @author Martin Scharm
+ */
+public class CancellationToken
+{
+	
+	/** The reason of the cancellation, <code>null</code> if not cancelled. */
+	private volatile String		reason;
+	
+	/** The deadline as returned by {@link System#nanoTime()}. */
+	private volatile long			deadline;
+	
+	/** Does this token have a deadline? */
+	private volatile boolean	hasDeadline;
+	
+	/** The parent token, <code>null</code> if there is none. */
+	private final CancellationToken	parent;
+	
+	
+	/**
+	 * Instantiates a new token that is not cancelled and has no deadline.
+	 */
+	public CancellationToken ()
+	{
+		this ((CancellationToken) null);
+	}
+	
+	
+	/**
+	 * Instantiates a new child token of <code>parent</code>. The child is
+	 * cancelled if the parent is cancelled, but cancelling the child doesn't
+	 * cancel the parent.
+	 * 
+	 * @param parent
+	 *          the parent token, may be <code>null</code>
+	 */
+	public CancellationToken (CancellationToken parent)
+	{
+		this.parent = parent;
+		reason = null;
+		hasDeadline = false;
+	}
+	
+	
+	/**
+	 * Instantiates a new token that will be cancelled after
+	 * <code>timeout</code>.
+	 * 
+	 * @param timeout
+	 *          the time from now until the token is cancelled
+	 * @param unit
+	 *          the unit of <code>timeout</code>
+	 */
+	public CancellationToken (long timeout, TimeUnit unit)
+	{
+		this ();
+		setDeadline (timeout, unit);
+	}
+	
+	
+	/**
+	 * Cancel this token.
+	 */
+	public void cancel ()
+	{
+		cancel ("conversion was cancelled");
+	}
+	
+	
+	/**
+	 * Cancel this token. If it was cancelled before the original reason is
+	 * kept.
+	 * 
+	 * @param reason
+	 *          the reason of the cancellation
+	 */
+	public synchronized void cancel (String reason)
+	{
+		if (this.reason == null)
+			this.reason = reason;
+	}
+	
+	
+	/**
+	 * Set the deadline of this token. As soon as the deadline passed the token
+	 * is considered to be cancelled.
+	 * 
+	 * @param timeout
+	 *          the time from now until the token is cancelled
+	 * @param unit
+	 *          the unit of <code>timeout</code>
+	 */
+	public void setDeadline (long timeout, TimeUnit unit)
+	{
+		deadline = System.nanoTime () + unit.toNanos (timeout);
+		hasDeadline = true;
+	}
+	
+	
+	/**
+	 * Checks if this token is cancelled.
+	 * 
+	 * @return true, if cancelled, the deadline passed, or the parent is
+	 *         cancelled
+	 */
+	public boolean isCancelled ()
+	{
+		return getReason () != null;
+	}
+	
+	
+	/**
+	 * Gets the reason of the cancellation.
+	 * 
+	 * @return the reason, or <code>null</code> if this token is not cancelled
+	 */
+	public String getReason ()
+	{
+		String reason = this.reason;
+		if (reason == null && hasDeadline && System.nanoTime () - deadline >= 0)
+			return "conversion exceeded its deadline";
+		if (reason == null && parent != null)
+			return parent.getReason ();
+		return reason;
+	}
+	
+	
+	/**
+	 * Throw an exception if this token is cancelled.
+	 * 
+	 * @throws CaRoCancelledException
+	 *           if the token is cancelled, the deadline passed, or the parent
+	 *           is cancelled
+	 */
+	public void check () throws CaRoCancelledException
+	{
+		String reason = getReason ();
+		if (reason != null)
+			throw new CaRoCancelledException (reason);
+	}
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+
+
+/**
+ * The Class CompressionPolicy decides how the entries of a converted container
+ * are compressed. Rules can be given per media type, either exact (e.g.
+ * <code>image/png</code>) or for a whole type (e.g. <code>video/*</code>),
+ * and for entries below a size threshold. The media type of an entry is taken
+ * from the format declared in the container if that is a media type, and
+ * otherwise guessed from the extension of the entry's name.
+ * 
+ * A policy is applied in the final pass that writes the target container, see
+ * {@link CaRoConverter#setCompressionPolicy(CompressionPolicy)}.
+ * 
+ * @author Martin Scharm
+ */
+public class CompressionPolicy
+{
+	
+	/**
+	 * The ways to compress an entry.
+	 */
+	public enum Compression
+	{
+		/** Store the entry uncompressed. */
+		STORE (ZipDirectory.STORED, 0),
+		/** Deflate the entry as fast as possible. */
+		FAST (ZipDirectory.DEFLATED, Deflater.BEST_SPEED),
+		/** Deflate the entry using the default level. */
+		DEFAULT (ZipDirectory.DEFLATED, Deflater.DEFAULT_COMPRESSION),
+		/** Deflate the entry as small as possible. */
+		BEST (ZipDirectory.DEFLATED, Deflater.BEST_COMPRESSION);
+		
+		/** The zip compression method. */
+		private final int	method;
+		
+		/** The deflate level. */
+		private final int	level;
+		
+		
+		/**
+		 * Instantiates a new compression.
+		 * 
+		 * @param method
+		 *          the zip compression method
+		 * @param level
+		 *          the deflate level
+		 */
+		private Compression (int method, int level)
+		{
+			this.method = method;
+			this.level = level;
+		}
+		
+		
+		/**
+		 * Gets the zip compression method.
+		 * 
+		 * @return the method, either {@link ZipDirectory#STORED} or
+		 *         {@link ZipDirectory#DEFLATED}
+		 */
+		public int getMethod ()
+		{
+			return method;
+		}
+		
+		
+		/**
+		 * Gets the deflate level.
+		 * 
+		 * @return the level, see {@link Deflater#setLevel(int)}
+		 */
+		public int getLevel ()
+		{
+			return level;
+		}
+	}
+	
+	/** The size below which entries are stored by the default policy. */
+	public static final long					DEFAULT_SMALL_SIZE	= 512;
+	
+	/** The compression of entries without a matching rule. */
+	private Compression								defaultCompression;
+	
+	/** The compressions per media type. */
+	private Map<String, Compression>	mediaTypes;
+	
+	/** The media types per file extension. */
+	private Map<String, String>				extensions;
+	
+	/** The size below which entries are compressed differently. */
+	private long											smallSize;
+	
+	/** The compression of small entries. */
+	private Compression								smallCompression;
+	
+	
+	/**
+	 * Instantiates a new policy compressing all entries the same way.
+	 * 
+	 * @param defaultCompression
+	 *          the compression of all entries
+	 */
+	public CompressionPolicy (Compression defaultCompression)
+	{
+		this.defaultCompression = defaultCompression;
+		mediaTypes = new HashMap<String, Compression> ();
+		extensions = new HashMap<String, String> ();
+		smallSize = 0;
+		
+		addExtensions ("image/png", "png");
+		addExtensions ("image/jpeg", "jpg", "jpeg");
+		addExtensions ("image/gif", "gif");
+		addExtensions ("application/zip", "zip", "omex", "sedx", "ro");
+		addExtensions ("application/gzip", "gz", "tgz");
+		addExtensions ("application/x-bzip2", "bz2");
+		addExtensions ("application/x-xz", "xz");
+		addExtensions ("application/x-hdf5", "h5", "hdf5");
+		addExtensions ("application/xml", "xml", "sbml", "cellml", "sedml", "rdf");
+		addExtensions ("text/plain", "txt");
+	}
+	
+	
+	/**
+	 * Create the default policy. It stores formats that are compressed
+	 * already, such as images, zip files (including nested containers), gzip
+	 * files, and HDF5 files, as well as all entries smaller than
+	 * {@link #DEFAULT_SMALL_SIZE}. All other entries are deflated using the
+	 * default level.
+	 * 
+	 * @return the policy
+	 */
+	public static CompressionPolicy createDefault ()
+	{
+		return createDefault (Compression.DEFAULT);
+	}
+	
+	
+	/**
+	 * Create the default policy, see {@link #createDefault()}, but compress
+	 * entries without a matching rule using <code>defaultCompression</code>.
+	 * 
+	 * @param defaultCompression
+	 *          the compression of entries without a matching rule
+	 * @return the policy
+	 */
+	public static CompressionPolicy createDefault (Compression defaultCompression)
+	{
+		CompressionPolicy policy = new CompressionPolicy (defaultCompression);
+		policy.setCompression ("image/png", Compression.STORE);
+		policy.setCompression ("image/jpeg", Compression.STORE);
+		policy.setCompression ("image/gif", Compression.STORE);
+		policy.setCompression ("application/zip", Compression.STORE);
+		policy.setCompression ("application/gzip", Compression.STORE);
+		policy.setCompression ("application/x-gzip", Compression.STORE);
+		policy.setCompression ("application/x-bzip2", Compression.STORE);
+		policy.setCompression ("application/x-xz", Compression.STORE);
+		policy.setCompression ("application/x-hdf5", Compression.STORE);
+		policy.setCompression ("audio/*", Compression.STORE);
+		policy.setCompression ("video/*", Compression.STORE);
+		policy.setSmallEntries (DEFAULT_SMALL_SIZE, Compression.STORE);
+		return policy;
+	}
+	
+	
+	/**
+	 * Sets the compression of entries without a matching rule.
+	 * 
+	 * @param defaultCompression
+	 *          the default compression
+	 */
+	public void setDefaultCompression (Compression defaultCompression)
+	{
+		this.defaultCompression = defaultCompression;
+	}
+	
+	
+	/**
+	 * Gets the compression of entries without a matching rule.
+	 * 
+	 * @return the default compression
+	 */
+	public Compression getDefaultCompression ()
+	{
+		return defaultCompression;
+	}
+	
+	
+	/**
+	 * Sets the compression of entries of a media type. The media type may end
+	 * with <code>/*</code> to match all its subtypes, exact media types take
+	 * precedence.
+	 * 
+	 * @param mediaType
+	 *          the media type, such as <code>image/png</code> or
+	 *          <code>image/*</code>
+	 * @param compression
+	 *          the compression, or <code>null</code> to remove the rule
+	 */
+	public void setCompression (String mediaType, Compression compression)
+	{
+		mediaType = mediaType.toLowerCase (Locale.ENGLISH);
+		if (compression == null)
+			mediaTypes.remove (mediaType);
+		else
+			mediaTypes.put (mediaType, compression);
+	}
+	
+	
+	/**
+	 * Compress entries smaller than <code>size</code> bytes using
+	 * <code>compression</code>, unless there is a rule for their media type.
+	 * 
+	 * @param size
+	 *          the size threshold, 0 to disable the rule
+	 * @param compression
+	 *          the compression of small entries
+	 */
+	public void setSmallEntries (long size, Compression compression)
+	{
+		smallSize = size;
+		smallCompression = compression;
+	}
+	
+	
+	/**
+	 * Register file extensions of a media type, to recognise entries whose
+	 * format is not a media type.
+	 * 
+	 * @param mediaType
+	 *          the media type
+	 * @param extensions
+	 *          the extensions, without the leading dot
+	 */
+	public void addExtensions (String mediaType, String... extensions)
+	{
+		for (String extension : extensions)
+			this.extensions.put (extension.toLowerCase (Locale.ENGLISH),
+				mediaType.toLowerCase (Locale.ENGLISH));
+	}
+	
+	
+	/**
+	 * Gets the media type of an entry.
+	 * 
+	 * @param name
+	 *          the name of the entry
+	 * @param format
+	 *          the format declared for the entry, may be <code>null</code>
+	 * @return the media type, or <code>null</code> if unknown
+	 */
+	public String getMediaType (String name, String format)
+	{
+		if (format != null)
+		{
+			if (format.startsWith (CachingFormatResolver.MEDIATYPES))
+				format = format
+					.substring (CachingFormatResolver.MEDIATYPES.length ());
+			if (format.matches ("[\\w.+-]+/[\\w.+-]+"))
+				return format.toLowerCase (Locale.ENGLISH);
+		}
+		int dot = name.lastIndexOf ('.');
+		if (dot < 0 || dot < name.lastIndexOf ('/'))
+			return null;
+		return extensions.get (name.substring (dot + 1).toLowerCase (
+			Locale.ENGLISH));
+	}
+	
+	
+	/**
+	 * Decide how to compress an entry.
+	 * 
+	 * @param name
+	 *          the name of the entry
+	 * @param format
+	 *          the format declared for the entry, may be <code>null</code>
+	 * @param size
+	 *          the uncompressed size of the entry
+	 * @return the compression
+	 */
+	public Compression getCompression (String name, String format, long size)
+	{
+		String mediaType = getMediaType (name, format);
+		if (mediaType != null)
+		{
+			Compression compression = mediaTypes.get (mediaType);
+			if (compression != null)
+				return compression;
+			compression = mediaTypes.get (mediaType.substring (0,
+				mediaType.indexOf ('/'))
+				+ "/*");
+			if (compression != null)
+				return compression;
+		}
+		if (size < smallSize)
+			return smallCompression;
+		return defaultCompression;
+	}
+	
+	
+	/**
+	 * Decide how to compress an entry.
+	 * 
+	 * @param name
+	 *          the name of the entry
+	 * @param format
+	 *          the format declared for the entry, may be <code>null</code>
+	 * @param size
+	 *          the uncompressed size of the entry
+	 * @return the compression
+	 */
+	public Compression getCompression (String name, URI format, long size)
+	{
+		return getCompression (name, format == null ? null : format.toString (),
+			size);
+	}
+}
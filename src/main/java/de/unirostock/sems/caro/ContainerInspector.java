@@ -0,0 +1,243 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import de.unirostock.sems.caro.ContainerSniffer.ContainerType;
+
+
+
+/**
+ * The Class ContainerInspector provides a quick overview of a container. It
+ * only reads the central directory of the zip file (see {@link ZipDirectory})
+ * and thus needs neither to extract nor to parse any of the entries. The
+ * costs of an inspection depend on the number of entries, not on the size of
+ * the container.
+ * 
+ * @author Martin Scharm
+ */
+public class ContainerInspector
+{
+	
+	/**
+	 * The kinds of entries in a container.
+	 */
+	public enum EntryKind
+	{
+		/** A directory. */
+		DIRECTORY,
+		/** The manifest or the mime type of the container. */
+		MANIFEST,
+		/** A meta data file, such as the metadata.rdf of a combine archive. */
+		METADATA,
+		/** An annotation of a research object. */
+		ANNOTATION,
+		/** Any other file. */
+		PAYLOAD
+	}
+	
+	/** The name of the manifest of combine archives. */
+	private static final String							CA_MANIFEST			= "manifest.xml";
+	
+	/** The name of the manifest of research objects. */
+	private static final String							RO_MANIFEST			= ".ro/manifest.json";
+	
+	/** The name of the mimetype entry of research objects. */
+	private static final String							MIMETYPE				= "mimetype";
+	
+	/** The directory of the research object's meta data. */
+	private static final String							RO_DIRECTORY		= ".ro/";
+	
+	/** The directory of the research object's annotations. */
+	private static final String							RO_ANNOTATIONS	= ".ro/annotations/";
+	
+	/** The container file. */
+	private File														file;
+	
+	/** The type of the container. */
+	private ContainerType										type;
+	
+	/** The entries of the container. */
+	private List<ZipDirectory.Entry>				entries;
+	
+	/** The number of entries per kind. */
+	private Map<EntryKind, Integer>					counts;
+	
+	/** The sum of the uncompressed sizes. */
+	private long														size;
+	
+	/** The sum of the compressed sizes. */
+	private long														compressedSize;
+	
+	
+	/**
+	 * Inspect a container.
+	 * 
+	 * @param file
+	 *          the container
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred, e.g. if the file is
+	 *           not a zip file.
+	 */
+	public ContainerInspector (File file) throws IOException
+	{
+		this.file = file;
+		try (ZipDirectory directory = new ZipDirectory (file))
+		{
+			type = ContainerSniffer.sniff (directory);
+			entries = directory.getEntries ();
+		}
+		
+		counts = new EnumMap<EntryKind, Integer> (EntryKind.class);
+		for (EntryKind kind : EntryKind.values ())
+			counts.put (kind, 0);
+		for (ZipDirectory.Entry entry : entries)
+		{
+			EntryKind kind = getKind (entry);
+			counts.put (kind, counts.get (kind) + 1);
+			size += entry.getSize ();
+			compressedSize += entry.getCompressedSize ();
+		}
+	}
+	
+	
+	/**
+	 * Determine the kind of an entry from its name.
+	 * 
+	 * @param entry
+	 *          the entry
+	 * @return the kind of the entry
+	 */
+	public static EntryKind getKind (ZipDirectory.Entry entry)
+	{
+		String name = entry.getName ();
+		if (entry.isDirectory ())
+			return EntryKind.DIRECTORY;
+		if (name.equals (CA_MANIFEST) || name.equals (RO_MANIFEST)
+			|| name.equals (MIMETYPE))
+			return EntryKind.MANIFEST;
+		if (name.startsWith (RO_ANNOTATIONS))
+			return EntryKind.ANNOTATION;
+		if (name.startsWith (RO_DIRECTORY)
+			|| (name.indexOf ('/') < 0 && name.startsWith ("metadata") && name
+				.endsWith (".rdf")))
+			return EntryKind.METADATA;
+		return EntryKind.PAYLOAD;
+	}
+	
+	
+	/**
+	 * Gets the inspected container.
+	 * 
+	 * @return the file
+	 */
+	public File getFile ()
+	{
+		return file;
+	}
+	
+	
+	/**
+	 * Gets the type of the container.
+	 * 
+	 * @return the type
+	 */
+	public ContainerType getType ()
+	{
+		return type;
+	}
+	
+	
+	/**
+	 * Gets the entries of the container, in the order of the central directory.
+	 * 
+	 * @return the entries
+	 */
+	public List<ZipDirectory.Entry> getEntries ()
+	{
+		return Collections.unmodifiableList (entries);
+	}
+	
+	
+	/**
+	 * Gets the number of entries of a certain kind.
+	 * 
+	 * @param kind
+	 *          the kind
+	 * @return the number of entries
+	 */
+	public int getCount (EntryKind kind)
+	{
+		return counts.get (kind);
+	}
+	
+	
+	/**
+	 * Gets the sum of the uncompressed sizes of all entries.
+	 * 
+	 * @return the size in bytes
+	 */
+	public long getSize ()
+	{
+		return size;
+	}
+	
+	
+	/**
+	 * Gets the sum of the compressed sizes of all entries.
+	 * 
+	 * @return the compressed size in bytes
+	 */
+	public long getCompressedSize ()
+	{
+		return compressedSize;
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString ()
+	{
+		StringBuilder str = new StringBuilder ();
+		for (ZipDirectory.Entry entry : entries)
+			str.append (entry.getCompressedSize ()).append ("\t")
+				.append (entry.getSize ()).append ("\t").append (entry.getName ())
+				.append ("\n");
+		str.append (file.getName ()).append (": ").append (type).append (", ")
+			.append (entries.size ()).append (" entries (")
+			.append (getCount (EntryKind.PAYLOAD)).append (" payload, ")
+			.append (getCount (EntryKind.METADATA)).append (" meta data, ")
+			.append (getCount (EntryKind.ANNOTATION)).append (" annotations, ")
+			.append (getCount (EntryKind.MANIFEST)).append (" manifests, ")
+			.append (getCount (EntryKind.DIRECTORY)).append (" directories) -- ")
+			.append (compressedSize).append (" of ").append (size)
+			.append (" bytes");
+		return str.toString ();
+	}
+}
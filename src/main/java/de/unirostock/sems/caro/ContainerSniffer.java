@@ -0,0 +1,168 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+import org.apache.taverna.robundle.fs.BundleFileSystemProvider;
+
+
+
+/**
+ * The Class ContainerSniffer tells combine archives and research objects
+ * apart by looking at a few structures of the zip file, without opening it as
+ * a file system.
+ * 
+ * A research object starts with a stored <code>mimetype</code> entry
+ * containing {@link BundleFileSystemProvider#APPLICATION_VND_WF4EVER_ROBUNDLE_ZIP}.
+ * Otherwise the central directory decides: a <code>manifest.xml</code> at the
+ * root denotes a combine archive, a <code>.ro/manifest.json</code> denotes a
+ * research object. The central directory is read using {@link ZipDirectory},
+ * so zip64 containers are supported, and at most the first entry is read in
+ * addition.
+ * 
+ * @author Martin Scharm
+ */
+public final class ContainerSniffer
+{
+	
+	/**
+	 * The types of containers.
+	 */
+	public enum ContainerType
+	{
+		/** A combine archive. */
+		COMBINE_ARCHIVE,
+		/** A research object. */
+		RESEARCH_OBJECT,
+		/** Neither of them, or not a zip file at all. */
+		UNKNOWN
+	}
+	
+	/** The name of the manifest of combine archives. */
+	private static final String	CA_MANIFEST									= "manifest.xml";
+	
+	/** The name of the manifest of research objects. */
+	private static final String	RO_MANIFEST									= ".ro/manifest.json";
+	
+	/** The name of the mimetype entry of research objects. */
+	private static final String	MIMETYPE										= "mimetype";
+	
+	
+	/**
+	 * Not to be instantiated.
+	 */
+	private ContainerSniffer ()
+	{
+	}
+	
+	
+	/**
+	 * Find out what kind of container a file is.
+	 * 
+	 * @param file
+	 *          the file
+	 * @return the type of the container
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public static ContainerType sniff (File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open (file.toPath (),
+			StandardOpenOption.READ))
+		{
+			return sniff (channel);
+		}
+	}
+	
+	
+	/**
+	 * Find out what kind of container a zip file is, given its central
+	 * directory.
+	 * 
+	 * @param directory
+	 *          the central directory
+	 * @return the type of the container
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public static ContainerType sniff (ZipDirectory directory)
+		throws IOException
+	{
+		// research objects start with their mime type
+		byte[] expected = BundleFileSystemProvider.APPLICATION_VND_WF4EVER_ROBUNDLE_ZIP
+			.getBytes (StandardCharsets.US_ASCII);
+		for (ZipDirectory.Entry entry : directory.getEntries ())
+			if (entry.getLocalHeaderOffset () == 0
+				&& entry.getName ().equals (MIMETYPE)
+				&& entry.getMethod () == ZipDirectory.STORED
+				&& entry.getSize () == expected.length
+				&& Arrays.equals (directory.readStored (entry), expected))
+				return ContainerType.RESEARCH_OBJECT;
+		
+		// otherwise look for the manifests
+		if (directory.getEntry (CA_MANIFEST) != null)
+			return ContainerType.COMBINE_ARCHIVE;
+		if (directory.getEntry (RO_MANIFEST) != null)
+			return ContainerType.RESEARCH_OBJECT;
+		return ContainerType.UNKNOWN;
+	}
+	
+	
+	/**
+	 * Find out what kind of container is available through a channel. The
+	 * position of the channel will be changed.
+	 * 
+	 * @param channel
+	 *          the channel
+	 * @return the type of the container
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public static ContainerType sniff (SeekableByteChannel channel)
+		throws IOException
+	{
+		ZipDirectory directory;
+		try
+		{
+			directory = new ZipDirectory (channel);
+		}
+		catch (ZipException | EOFException e)
+		{
+			// not a zip file
+			return ContainerType.UNKNOWN;
+		}
+		try
+		{
+			return sniff (directory);
+		}
+		finally
+		{
+			directory.close ();
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+
+/**
+ * The Class ConversionPlan describes what a conversion would do, see
+ * {@link CaRoConverter#plan()}. It is created from the manifest and meta data
+ * of the source container only, no payload is extracted.
+ * 
+ * @author Martin Scharm
+ */
+public class ConversionPlan
+{
+	
+	/**
+	 * What happens to an entry of the source container.
+	 */
+	public enum Action
+	{
+		/** The entry is copied into the target container. */
+		COPY,
+		/** The entry is copied, but its format needs to be guessed first. */
+		GUESS_FORMAT,
+		/** The entry is dropped, as it is a special file of the target. */
+		DROP,
+		/** The entry is skipped, as it is no local file. */
+		REMOTE,
+		/** The entry is an annotation that is merged into the target's manifest. */
+		REINTEGRATE
+	}
+	
+	
+	/**
+	 * An entry of the source container.
+	 */
+	public static class Entry
+	{
+		
+		/** The path in the source container. */
+		private String	source;
+		
+		/** The path in the target container, <code>null</code> if not copied. */
+		private String	target;
+		
+		/** The action. */
+		private Action	action;
+		
+		/** The format, <code>null</code> if unknown. */
+		private URI			format;
+		
+		/** The uncompressed size, -1 if unknown. */
+		private long		size;
+		
+		/** The compressed size, -1 if unknown. */
+		private long		compressedSize;
+		
+		
+		/**
+		 * Instantiates a new entry.
+		 * 
+		 * @param source
+		 *          the path in the source container
+		 * @param target
+		 *          the path in the target container
+		 * @param action
+		 *          the action
+		 * @param format
+		 *          the format
+		 * @param size
+		 *          the uncompressed size
+		 * @param compressedSize
+		 *          the compressed size
+		 */
+		public Entry (String source, String target, Action action, URI format,
+			long size, long compressedSize)
+		{
+			this.source = source;
+			this.target = target;
+			this.action = action;
+			this.format = format;
+			this.size = size;
+			this.compressedSize = compressedSize;
+		}
+		
+		
+		/**
+		 * Gets the path in the source container.
+		 * 
+		 * @return the source path
+		 */
+		public String getSource ()
+		{
+			return source;
+		}
+		
+		
+		/**
+		 * Gets the path in the target container.
+		 * 
+		 * @return the target path, or <code>null</code> if the entry isn't copied
+		 */
+		public String getTarget ()
+		{
+			return target;
+		}
+		
+		
+		/**
+		 * Gets the action.
+		 * 
+		 * @return the action
+		 */
+		public Action getAction ()
+		{
+			return action;
+		}
+		
+		
+		/**
+		 * Gets the format.
+		 * 
+		 * @return the format, or <code>null</code> if it needs to be guessed
+		 */
+		public URI getFormat ()
+		{
+			return format;
+		}
+		
+		
+		/**
+		 * Gets the uncompressed size.
+		 * 
+		 * @return the size, or -1 if unknown
+		 */
+		public long getSize ()
+		{
+			return size;
+		}
+		
+		
+		/**
+		 * Gets the compressed size in the source container.
+		 * 
+		 * @return the compressed size, or -1 if unknown
+		 */
+		public long getCompressedSize ()
+		{
+			return compressedSize;
+		}
+		
+		
+		/**
+		 * Is the entry written to the target container?
+		 * 
+		 * @return true, if the entry is copied
+		 */
+		public boolean isCopied ()
+		{
+			return action == Action.COPY || action == Action.GUESS_FORMAT;
+		}
+		
+		
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString ()
+		{
+			return action + " " + source + (target == null ? "" : " -> " + target)
+				+ (size < 0 ? "" : " (" + size + " bytes)");
+		}
+	}
+	
+	/** The overhead of an entry in a zip file, without its name. */
+	private static final int	ZIP_ENTRY_OVERHEAD	= ZipDirectory.LOCAL_HEADER_SIZE
+																									+ ZipDirectory.CENTRAL_HEADER_SIZE;
+	
+	/** The entries. */
+	private List<Entry>				entries;
+	
+	
+	/**
+	 * Instantiates a new, empty plan.
+	 */
+	public ConversionPlan ()
+	{
+		entries = new ArrayList<Entry> ();
+	}
+	
+	
+	/**
+	 * Add an entry to the plan.
+	 * 
+	 * @param entry
+	 *          the entry
+	 */
+	public void add (Entry entry)
+	{
+		entries.add (entry);
+	}
+	
+	
+	/**
+	 * Gets all entries of the source container, in the order they are
+	 * processed.
+	 * 
+	 * @return the entries
+	 */
+	public List<Entry> getEntries ()
+	{
+		return Collections.unmodifiableList (entries);
+	}
+	
+	
+	/**
+	 * Gets the entries with a certain action.
+	 * 
+	 * @param action
+	 *          the action
+	 * @return the entries
+	 */
+	public List<Entry> getEntries (Action action)
+	{
+		List<Entry> selected = new ArrayList<Entry> ();
+		for (Entry entry : entries)
+			if (entry.action == action)
+				selected.add (entry);
+		return selected;
+	}
+	
+	
+	/**
+	 * Gets the number of entries with a certain action.
+	 * 
+	 * @param action
+	 *          the action
+	 * @return the number of entries
+	 */
+	public int getCount (Action action)
+	{
+		return getEntries (action).size ();
+	}
+	
+	
+	/**
+	 * Gets the uncompressed size of all entries that are copied. Entries of
+	 * unknown size are ignored.
+	 * 
+	 * @return the number of bytes to copy
+	 */
+	public long getPayloadSize ()
+	{
+		long size = 0;
+		for (Entry entry : entries)
+			if (entry.isCopied () && entry.size > 0)
+				size += entry.size;
+		return size;
+	}
+	
+	
+	/**
+	 * Estimate the size of the target container. The estimation assumes the
+	 * entries to compress as well as in the source container and includes the
+	 * zip headers, but not the manifest and meta data created during the
+	 * conversion.
+	 * 
+	 * @return the estimated size in bytes
+	 */
+	public long getEstimatedSize ()
+	{
+		long size = ZipDirectory.END_OF_DIRECTORY_SIZE;
+		for (Entry entry : entries)
+			if (entry.isCopied ())
+			{
+				if (entry.compressedSize >= 0)
+					size += entry.compressedSize;
+				else if (entry.size >= 0)
+					size += entry.size;
+				size += ZIP_ENTRY_OVERHEAD + 2 * entry.target.length ();
+			}
+		return size;
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString ()
+	{
+		StringBuilder str = new StringBuilder ();
+		for (Entry entry : entries)
+			str.append (entry).append ("\n");
+		str.append (getCount (Action.COPY) + getCount (Action.GUESS_FORMAT))
+			.append (" entries to copy (").append (getCount (Action.GUESS_FORMAT))
+			.append (" formats to guess), ").append (getCount (Action.DROP))
+			.append (" dropped, ").append (getCount (Action.REMOTE))
+			.append (" remote, ").append (getCount (Action.REINTEGRATE))
+			.append (" reintegrated -- ").append (getPayloadSize ())
+			.append (" bytes of payload, estimated size ")
+			.append (getEstimatedSize ()).append (" bytes");
+		return str.toString ();
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.File;
+
+
+
+/**
+ * The Class ConversionResult describes a finished conversion, see
+ * {@link CaRoConverter#convertToAsync(File)}.
+ * 
+ * @author Martin Scharm
+ */
+public class ConversionResult
+{
+	
+	/** The converter. */
+	private CaRoConverter					converter;
+	
+	/** The target file. */
+	private File									target;
+	
+	/** Was the conversion successful? */
+	private boolean								successful;
+	
+	/** The statistics of the conversion. */
+	private ConversionStatistics	statistics;
+	
+	/** The notifications of the conversion. */
+	private CaRoNotifications			notifications;
+	
+	
+	/**
+	 * Instantiates a new result. The statistics and notifications of the
+	 * converter are taken at once, so they are not affected by later
+	 * conversions.
+	 * 
+	 * @param converter
+	 *          the converter
+	 * @param target
+	 *          the target file
+	 * @param successful
+	 *          was the conversion successful?
+	 */
+	public ConversionResult (CaRoConverter converter, File target,
+		boolean successful)
+	{
+		this.converter = converter;
+		this.target = target;
+		this.successful = successful;
+		this.statistics = converter.getStatistics ();
+		this.notifications = new CaRoNotifications (converter.getNotifications ());
+	}
+	
+	
+	/**
+	 * Gets the converter that did the conversion. It gives access to the
+	 * converted container.
+	 * 
+	 * @return the converter
+	 */
+	public CaRoConverter getConverter ()
+	{
+		return converter;
+	}
+	
+	
+	/**
+	 * Gets the target file.
+	 * 
+	 * @return the target file
+	 */
+	public File getTarget ()
+	{
+		return target;
+	}
+	
+	
+	/**
+	 * Was the conversion successful?
+	 * 
+	 * @return true, if the target was written
+	 */
+	public boolean isSuccessful ()
+	{
+		return successful;
+	}
+	
+	
+	/**
+	 * Checks for errors.
+	 * 
+	 * @return true, if the converter reported errors
+	 */
+	public boolean hasErrors ()
+	{
+		return notifications.getCount (CaRoNotification.SERVERITY_ERROR) > 0;
+	}
+	
+	
+	/**
+	 * Checks for warnings.
+	 * 
+	 * @return true, if the converter reported warnings
+	 */
+	public boolean hasWarnings ()
+	{
+		return notifications.getCount (CaRoNotification.SERVERITY_WARN) > 0;
+	}
+	
+	
+	/**
+	 * Gets the notifications of the conversion.
+	 * 
+	 * @return the notifications
+	 */
+	public CaRoNotifications getNotifications ()
+	{
+		return notifications;
+	}
+	
+	
+	/**
+	 * Gets the statistics of the conversion.
+	 * 
+	 * @return the statistics
+	 */
+	public ConversionStatistics getStatistics ()
+	{
+		return statistics;
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString ()
+	{
+		return (successful ? "converted " : "failed to convert ")
+			+ converter.sourceFile + " to " + target + ": " + statistics;
+	}
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+
+/**
+ * The Class ConversionStatistics collects figures about a single conversion:
+ * the wall time spent in every phase of
+ * {@link CaRoConverter#convertTo(java.io.File)} and counters for the work done
+ * by the converter. All counters are thread-safe, as entries may be processed
+ * concurrently.
+ * 
+ * @author Martin Scharm
+ */
+public class ConversionStatistics
+{
+	
+	/**
+	 * The phases of a conversion.
+	 */
+	public enum Phase
+	{
+		/** Opening the source container. */
+		OPEN,
+		/** Converting the contents. */
+		CONVERT,
+		/** Closing the source container. */
+		CLOSE,
+		/** Writing the target container. */
+		WRITE
+	}
+	
+	/** The wall time per phase in nanoseconds. */
+	private AtomicLongArray	phaseTimes;
+	
+	/** The number of processed entries. */
+	private AtomicLong			entries;
+	
+	/** The number of bytes read from the source container. */
+	private AtomicLong			bytesRead;
+	
+	/** The number of bytes written into the target container. */
+	private AtomicLong			bytesWritten;
+	
+	/** The number of bytes written to temporary files. */
+	private AtomicLong			temporaryBytes;
+	
+	/** The number of converted annotations. */
+	private AtomicLong			annotations;
+	
+	/** The number of formats guessed from the contents of an entry. */
+	private AtomicLong			formatGuesses;
+	
+	
+	/**
+	 * Instantiates new, empty statistics.
+	 */
+	public ConversionStatistics ()
+	{
+		phaseTimes = new AtomicLongArray (Phase.values ().length);
+		entries = new AtomicLong ();
+		bytesRead = new AtomicLong ();
+		bytesWritten = new AtomicLong ();
+		temporaryBytes = new AtomicLong ();
+		annotations = new AtomicLong ();
+		formatGuesses = new AtomicLong ();
+	}
+	
+	
+	/**
+	 * Add the time spent in a phase.
+	 * 
+	 * @param phase
+	 *          the phase
+	 * @param nanos
+	 *          the time in nanoseconds
+	 */
+	public void addPhaseTime (Phase phase, long nanos)
+	{
+		phaseTimes.addAndGet (phase.ordinal (), nanos);
+	}
+	
+	
+	/**
+	 * Gets the wall time spent in a phase.
+	 * 
+	 * @param phase
+	 *          the phase
+	 * @param unit
+	 *          the unit of the result
+	 * @return the time
+	 */
+	public long getPhaseTime (Phase phase, TimeUnit unit)
+	{
+		return unit.convert (phaseTimes.get (phase.ordinal ()),
+			TimeUnit.NANOSECONDS);
+	}
+	
+	
+	/**
+	 * Gets the wall time spent in all phases.
+	 * 
+	 * @param unit
+	 *          the unit of the result
+	 * @return the time
+	 */
+	public long getTotalTime (TimeUnit unit)
+	{
+		long total = 0;
+		for (int i = 0; i < phaseTimes.length (); i++)
+			total += phaseTimes.get (i);
+		return unit.convert (total, TimeUnit.NANOSECONDS);
+	}
+	
+	
+	/**
+	 * Count a processed entry.
+	 */
+	public void addEntry ()
+	{
+		entries.incrementAndGet ();
+	}
+	
+	
+	/**
+	 * Gets the number of processed entries.
+	 * 
+	 * @return the number of entries
+	 */
+	public long getEntries ()
+	{
+		return entries.get ();
+	}
+	
+	
+	/**
+	 * Count bytes read from the source container.
+	 * 
+	 * @param bytes
+	 *          the number of bytes
+	 */
+	public void addBytesRead (long bytes)
+	{
+		bytesRead.addAndGet (bytes);
+	}
+	
+	
+	/**
+	 * Gets the number of bytes read from the source container.
+	 * 
+	 * @return the number of bytes
+	 */
+	public long getBytesRead ()
+	{
+		return bytesRead.get ();
+	}
+	
+	
+	/**
+	 * Count bytes written into the target container.
+	 * 
+	 * @param bytes
+	 *          the number of bytes
+	 */
+	public void addBytesWritten (long bytes)
+	{
+		bytesWritten.addAndGet (bytes);
+	}
+	
+	
+	/**
+	 * Gets the number of bytes written into the target container.
+	 * 
+	 * @return the number of bytes
+	 */
+	public long getBytesWritten ()
+	{
+		return bytesWritten.get ();
+	}
+	
+	
+	/**
+	 * Count bytes written to temporary files.
+	 * 
+	 * @param bytes
+	 *          the number of bytes
+	 */
+	public void addTemporaryBytes (long bytes)
+	{
+		temporaryBytes.addAndGet (bytes);
+	}
+	
+	
+	/**
+	 * Gets the number of bytes written to temporary files.
+	 * 
+	 * @return the number of bytes
+	 */
+	public long getTemporaryBytes ()
+	{
+		return temporaryBytes.get ();
+	}
+	
+	
+	/**
+	 * Count a converted annotation.
+	 */
+	public void addAnnotation ()
+	{
+		annotations.incrementAndGet ();
+	}
+	
+	
+	/**
+	 * Gets the number of converted annotations.
+	 * 
+	 * @return the number of annotations
+	 */
+	public long getAnnotations ()
+	{
+		return annotations.get ();
+	}
+	
+	
+	/**
+	 * Count a format that was guessed from the contents of an entry.
+	 */
+	public void addFormatGuess ()
+	{
+		formatGuesses.incrementAndGet ();
+	}
+	
+	
+	/**
+	 * Gets the number of formats guessed from the contents of entries.
+	 * 
+	 * @return the number of format guesses
+	 */
+	public long getFormatGuesses ()
+	{
+		return formatGuesses.get ();
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString ()
+	{
+		StringBuilder str = new StringBuilder ();
+		for (Phase phase : Phase.values ())
+			str.append (phase.name ().toLowerCase ()).append (": ")
+				.append (getPhaseTime (phase, TimeUnit.MILLISECONDS)).append (" ms, ");
+		return str.append ("entries: ").append (getEntries ())
+			.append (", read: ").append (getBytesRead ())
+			.append (" bytes, written: ").append (getBytesWritten ())
+			.append (" bytes, temporary: ").append (getTemporaryBytes ())
+			.append (" bytes, annotations: ").append (getAnnotations ())
+			.append (", format guesses: ").append (getFormatGuesses ()).toString ();
+	}
+}
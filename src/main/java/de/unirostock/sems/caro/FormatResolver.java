@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+
+
+/**
+ * The Interface FormatResolver determines the format of an entry that doesn't
+ * declare one.
+ * 
+ * @author Martin Scharm
+ */
+public interface FormatResolver
+{
+	
+	/**
+	 * Resolve the format of a file.
+	 * 
+	 * @param file
+	 *          the file
+	 * @return the format, or <code>null</code> if it cannot be determined
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public URI resolveFormat (File file) throws IOException;
+}
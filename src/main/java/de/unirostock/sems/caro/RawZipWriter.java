@@ -0,0 +1,574 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import de.unirostock.sems.caro.CompressionPolicy.Compression;
+
+
+
+/**
+ * The Class RawZipWriter writes a zip file from entries of other zip files,
+ * copying their compressed bytes without inflating and deflating them. The
+ * header of an entry, that is its name, time, attributes, and extra fields,
+ * may be taken from a different zip file than its contents. Entries may also
+ * be compressed again, see
+ * {@link #writeEntry(ZipDirectory, ZipDirectory.Entry, Compression)}. Zip64
+ * records are written as needed. The zip file is written sequentially, thus
+ * it may also be written to a stream.
+ * 
+ * @author Martin Scharm
+ */
+public class RawZipWriter
+	implements Closeable
+{
+	
+	/** The version needed to extract stored entries. */
+	private static final int						STORE_VERSION							= 10;
+	
+	/** The version needed to extract deflated entries. */
+	private static final int						DEFLATE_VERSION						= 20;
+	
+	/** The version needed to extract zip64 entries. */
+	private static final int						ZIP64_VERSION							= 45;
+	
+	/** The size of the buffers used for compressing entries. */
+	private static final int						BUFFER_SIZE								= 64 * 1024;
+	
+	/** The flag of entries whose sizes are stored in a data descriptor. */
+	private static final int						FLAG_DATA_DESCRIPTOR			= 0x0008;
+	
+	/** The signature of a data descriptor. */
+	private static final int						DATA_DESCRIPTOR_SIGNATURE	= 0x08074b50;
+	
+	/** The channel to write to. */
+	private WritableByteChannel					channel;
+	
+	/** The file to write to, or <code>null</code> if writing to a stream. */
+	private FileChannel									file;
+	
+	/** Was the central directory written? */
+	private boolean											closed;
+	
+	/** The central directory records of the entries written so far. */
+	private List<ByteBuffer>						centralDirectory;
+	
+	/** The number of bytes written so far. */
+	private long												position;
+	
+	
+	/**
+	 * Instantiates a new writer creating a zip file.
+	 * 
+	 * @param target
+	 *          the file to create, must not exist
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public RawZipWriter (File target) throws IOException
+	{
+		file = FileChannel.open (target.toPath (), StandardOpenOption.WRITE,
+			StandardOpenOption.CREATE_NEW);
+		channel = file;
+		centralDirectory = new ArrayList<ByteBuffer> ();
+		position = 0;
+	}
+	
+	
+	/**
+	 * Instantiates a new writer writing a zip file to a stream. As the stream
+	 * cannot be rewound, the compressed sizes of entries that are compressed
+	 * again are written to data descriptors following their contents. The
+	 * stream will not be closed.
+	 * 
+	 * @param target
+	 *          the stream to write to
+	 */
+	public RawZipWriter (OutputStream target)
+	{
+		file = null;
+		channel = Channels.newChannel (target);
+		centralDirectory = new ArrayList<ByteBuffer> ();
+		position = 0;
+	}
+	
+	
+	/**
+	 * Copy an entry of a zip file.
+	 * 
+	 * @param source
+	 *          the zip file containing the entry
+	 * @param entry
+	 *          the entry
+	 * @return the number of compressed bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public long copyEntry (ZipDirectory source, ZipDirectory.Entry entry)
+		throws IOException
+	{
+		return copyEntry (source, entry, source, entry);
+	}
+	
+	
+	/**
+	 * Copy an entry of a zip file, but replace its contents by the contents of
+	 * an entry of another zip file. The name, time, attributes and extra fields
+	 * are taken from <code>entry</code>, the compression method, CRC, sizes and
+	 * compressed bytes are taken from <code>data</code>.
+	 * 
+	 * @param source
+	 *          the zip file containing the entry
+	 * @param entry
+	 *          the entry
+	 * @param dataSource
+	 *          the zip file containing the contents
+	 * @param data
+	 *          the entry containing the contents, must be
+	 *          {@link ZipDirectory.Entry#isRawCopyable() raw copyable}
+	 * @return the number of compressed bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public long copyEntry (ZipDirectory source, ZipDirectory.Entry entry,
+		ZipDirectory dataSource, ZipDirectory.Entry data) throws IOException
+	{
+		if (!data.isRawCopyable ())
+			throw new IOException ("cannot copy compressed bytes of " + data);
+		
+		long offset = position;
+		boolean zip64Sizes = data.getSize () >= ZipDirectory.ZIP64_LIMIT
+			|| data.getCompressedSize () >= ZipDirectory.ZIP64_LIMIT;
+		int flags = (data.getFlags () & 0x0006)
+			| (entry.getFlags () & ZipDirectory.FLAG_UTF8);
+		int versionNeeded = getVersionNeeded (
+			Math.max (entry.getVersionNeeded (), data.getVersionNeeded ()),
+			zip64Sizes, offset);
+		
+		writeLocalHeader (source, entry, versionNeeded, flags, data.getMethod (),
+			data.getCrc (), data.getCompressedSize (), data.getSize (), zip64Sizes);
+		long copied = dataSource.transferData (data, channel);
+		position += copied;
+		addCentralRecord (entry, versionNeeded, flags, data.getMethod (),
+			data.getCrc (), data.getCompressedSize (), data.getSize (), offset);
+		return copied;
+	}
+	
+	
+	/**
+	 * Write an entry of a zip file using a certain compression. Stored entries
+	 * that are to be stored and deflated entries that are to be deflated using
+	 * the default level are copied without inflating them, all other entries
+	 * are inflated and compressed again. The name, time, attributes and extra
+	 * fields are taken from <code>entry</code>.
+	 * 
+	 * @param source
+	 *          the zip file containing the entry
+	 * @param entry
+	 *          the entry
+	 * @param compression
+	 *          the compression
+	 * @return the number of compressed bytes written
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public long writeEntry (ZipDirectory source, ZipDirectory.Entry entry,
+		Compression compression) throws IOException
+	{
+		if (entry.getSize () == 0)
+			compression = Compression.STORE;
+		if (entry.getMethod () == compression.getMethod ()
+			&& (compression == Compression.STORE || compression == Compression.DEFAULT))
+			return copyEntry (source, entry);
+		
+		long offset = position;
+		long size = entry.getSize ();
+		int method = compression.getMethod ();
+		// deflating may slightly enlarge incompressible data
+		boolean zip64Sizes = (method == ZipDirectory.STORED ? size : size
+			+ (size >>> 8) + 64) >= ZipDirectory.ZIP64_LIMIT;
+		// the compressed size of a deflated entry is unknown until it is written
+		boolean descriptor = file == null && method == ZipDirectory.DEFLATED;
+		int flags = entry.getFlags () & ZipDirectory.FLAG_UTF8;
+		if (compression == Compression.BEST)
+			flags |= 0x0002;
+		else if (compression == Compression.FAST)
+			flags |= 0x0004;
+		if (descriptor)
+			flags |= FLAG_DATA_DESCRIPTOR;
+		int versionNeeded = getVersionNeeded (
+			method == ZipDirectory.DEFLATED ? DEFLATE_VERSION : STORE_VERSION,
+			zip64Sizes, offset);
+		
+		long compressedSizeField = descriptor ? writeLocalHeader (source, entry,
+			versionNeeded, flags, method, 0, 0, 0, zip64Sizes) : writeLocalHeader (
+			source, entry, versionNeeded, flags, method, entry.getCrc (), size, size,
+			zip64Sizes);
+		
+		CRC32 crc = new CRC32 ();
+		long read = 0;
+		long written = position;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		Deflater deflater = method == ZipDirectory.DEFLATED ? new Deflater (
+			compression.getLevel (), true) : null;
+		try (InputStream in = source.getInputStream (entry))
+		{
+			byte[] deflated = deflater == null ? null : new byte[BUFFER_SIZE];
+			int n;
+			while ( (n = in.read (buffer)) >= 0)
+			{
+				crc.update (buffer, 0, n);
+				read += n;
+				if (deflater == null)
+					write (ByteBuffer.wrap (buffer, 0, n));
+				else
+				{
+					deflater.setInput (buffer, 0, n);
+					while (!deflater.needsInput ())
+						write (ByteBuffer.wrap (deflated, 0, deflater.deflate (deflated)));
+				}
+			}
+			if (deflater != null)
+			{
+				deflater.finish ();
+				while (!deflater.finished ())
+					write (ByteBuffer.wrap (deflated, 0, deflater.deflate (deflated)));
+			}
+		}
+		finally
+		{
+			if (deflater != null)
+				deflater.end ();
+		}
+		long compressedSize = position - written;
+		
+		if (read != size || crc.getValue () != entry.getCrc ())
+			throw new ZipException ("corrupt entry " + entry.getName ()
+				+ " : size or CRC mismatch");
+		if (compressedSize >= ZipDirectory.ZIP64_LIMIT && !zip64Sizes)
+			throw new ZipException ("compressed size of " + entry.getName ()
+				+ " exceeds the zip64 limit");
+		if (descriptor)
+		{
+			ByteBuffer dataDescriptor = allocate (zip64Sizes ? 24 : 16);
+			dataDescriptor.putInt (DATA_DESCRIPTOR_SIGNATURE);
+			dataDescriptor.putInt ((int) entry.getCrc ());
+			if (zip64Sizes)
+			{
+				dataDescriptor.putLong (compressedSize);
+				dataDescriptor.putLong (size);
+			}
+			else
+			{
+				dataDescriptor.putInt ((int) compressedSize);
+				dataDescriptor.putInt ((int) size);
+			}
+			dataDescriptor.flip ();
+			write (dataDescriptor);
+		}
+		else if (compressedSize != size)
+		{
+			ByteBuffer field = allocate (zip64Sizes ? 8 : 4);
+			if (zip64Sizes)
+				field.putLong (compressedSize);
+			else
+				field.putInt ((int) compressedSize);
+			field.flip ();
+			while (field.hasRemaining ())
+				file.write (field, compressedSizeField + field.position ());
+		}
+		
+		addCentralRecord (entry, versionNeeded, flags, method, entry.getCrc (),
+			compressedSize, size, offset);
+		return compressedSize;
+	}
+	
+	
+	/**
+	 * Compute the version needed to extract an entry.
+	 * 
+	 * @param versionNeeded
+	 *          the version needed by the compression method
+	 * @param zip64Sizes
+	 *          are the sizes stored in zip64 extra fields?
+	 * @param offset
+	 *          the offset of the local header
+	 * @return the version needed to extract
+	 */
+	private static int getVersionNeeded (int versionNeeded, boolean zip64Sizes,
+		long offset)
+	{
+		if (zip64Sizes || offset >= ZipDirectory.ZIP64_LIMIT)
+			return Math.max (versionNeeded, ZIP64_VERSION);
+		return versionNeeded;
+	}
+	
+	
+	/**
+	 * Write the local file header of an entry.
+	 * 
+	 * @param source
+	 *          the zip file containing the entry
+	 * @param entry
+	 *          the entry providing name, time and extra field
+	 * @param versionNeeded
+	 *          the version needed to extract
+	 * @param flags
+	 *          the general purpose flags
+	 * @param method
+	 *          the compression method
+	 * @param crc
+	 *          the CRC of the contents
+	 * @param compressedSize
+	 *          the compressed size
+	 * @param size
+	 *          the uncompressed size
+	 * @param zip64Sizes
+	 *          should the sizes be stored in a zip64 extra field?
+	 * @return the position of the compressed size in the written header
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private long writeLocalHeader (ZipDirectory source, ZipDirectory.Entry entry,
+		int versionNeeded, int flags, int method, long crc, long compressedSize,
+		long size, boolean zip64Sizes) throws IOException
+	{
+		byte[] name = entry.getRawName ();
+		byte[] localExtra = source.readLocalExtra (entry);
+		int localZip64 = zip64Sizes ? 20 : 0;
+		long compressedSizeField = position
+			+ (zip64Sizes ? ZipDirectory.LOCAL_HEADER_SIZE + name.length + 12 : 18);
+		ByteBuffer local = allocate (ZipDirectory.LOCAL_HEADER_SIZE + name.length
+			+ localExtra.length + localZip64);
+		local.putInt (ZipDirectory.LOCAL_HEADER_SIGNATURE);
+		local.putShort ((short) versionNeeded);
+		local.putShort ((short) flags);
+		local.putShort ((short) method);
+		local.putInt (entry.getDosTime ());
+		local.putInt ((int) crc);
+		local.putInt ((int) (zip64Sizes ? ZipDirectory.ZIP64_LIMIT
+			: compressedSize));
+		local.putInt ((int) (zip64Sizes ? ZipDirectory.ZIP64_LIMIT : size));
+		local.putShort ((short) name.length);
+		local.putShort ((short) (localExtra.length + localZip64));
+		local.put (name);
+		if (zip64Sizes)
+		{
+			local.putShort ((short) ZipDirectory.ZIP64_EXTRA_ID);
+			local.putShort ((short) 16);
+			local.putLong (size);
+			local.putLong (compressedSize);
+		}
+		local.put (localExtra);
+		local.flip ();
+		write (local);
+		return compressedSizeField;
+	}
+	
+	
+	/**
+	 * Create the central directory record of an entry.
+	 * 
+	 * @param entry
+	 *          the entry providing name, time, attributes, extra field and
+	 *          comment
+	 * @param versionNeeded
+	 *          the version needed to extract
+	 * @param flags
+	 *          the general purpose flags
+	 * @param method
+	 *          the compression method
+	 * @param crc
+	 *          the CRC of the contents
+	 * @param compressedSize
+	 *          the compressed size
+	 * @param size
+	 *          the uncompressed size
+	 * @param offset
+	 *          the offset of the local header
+	 */
+	private void addCentralRecord (ZipDirectory.Entry entry, int versionNeeded,
+		int flags, int method, long crc, long compressedSize, long size,
+		long offset)
+	{
+		byte[] name = entry.getRawName ();
+		boolean zip64Offset = offset >= ZipDirectory.ZIP64_LIMIT;
+		int centralZip64 = (size >= ZipDirectory.ZIP64_LIMIT ? 8 : 0)
+			+ (compressedSize >= ZipDirectory.ZIP64_LIMIT ? 8 : 0)
+			+ (zip64Offset ? 8 : 0);
+		if (centralZip64 > 0)
+			centralZip64 += 4;
+		byte[] extra = entry.getExtra ();
+		byte[] comment = entry.getComment ();
+		ByteBuffer central = allocate (ZipDirectory.CENTRAL_HEADER_SIZE
+			+ name.length + extra.length + centralZip64 + comment.length);
+		central.putInt (ZipDirectory.CENTRAL_HEADER_SIGNATURE);
+		central.putShort ((short) entry.getVersionMadeBy ());
+		central.putShort ((short) versionNeeded);
+		central.putShort ((short) flags);
+		central.putShort ((short) method);
+		central.putInt (entry.getDosTime ());
+		central.putInt ((int) crc);
+		central.putInt ((int) Math.min (compressedSize, ZipDirectory.ZIP64_LIMIT));
+		central.putInt ((int) Math.min (size, ZipDirectory.ZIP64_LIMIT));
+		central.putShort ((short) name.length);
+		central.putShort ((short) (extra.length + centralZip64));
+		central.putShort ((short) comment.length);
+		central.putShort ((short) 0);
+		central.putShort ((short) entry.getInternalAttributes ());
+		central.putInt ((int) entry.getExternalAttributes ());
+		central.putInt ((int) Math.min (offset, ZipDirectory.ZIP64_LIMIT));
+		central.put (name);
+		if (centralZip64 > 0)
+		{
+			central.putShort ((short) ZipDirectory.ZIP64_EXTRA_ID);
+			central.putShort ((short) (centralZip64 - 4));
+			if (size >= ZipDirectory.ZIP64_LIMIT)
+				central.putLong (size);
+			if (compressedSize >= ZipDirectory.ZIP64_LIMIT)
+				central.putLong (compressedSize);
+			if (zip64Offset)
+				central.putLong (offset);
+		}
+		central.put (extra);
+		central.put (comment);
+		central.flip ();
+		centralDirectory.add (central);
+	}
+	
+	
+	/**
+	 * Gets the number of entries written so far.
+	 * 
+	 * @return the number of entries
+	 */
+	public int getEntryCount ()
+	{
+		return centralDirectory.size ();
+	}
+	
+	
+	/**
+	 * Write the central directory and close the zip file. A stream is not
+	 * closed.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public void close () throws IOException
+	{
+		if (closed)
+			return;
+		closed = true;
+		try
+		{
+			long directoryOffset = position;
+			for (ByteBuffer central : centralDirectory)
+				write (central);
+			long directorySize = position - directoryOffset;
+			long count = centralDirectory.size ();
+			
+			if (count >= 0xffff || directoryOffset >= ZipDirectory.ZIP64_LIMIT
+				|| directorySize >= ZipDirectory.ZIP64_LIMIT)
+			{
+				long zip64Offset = position;
+				ByteBuffer zip64 = allocate (ZipDirectory.ZIP64_END_OF_DIRECTORY_SIZE
+					+ ZipDirectory.ZIP64_LOCATOR_SIZE);
+				zip64.putInt (ZipDirectory.ZIP64_END_OF_DIRECTORY_SIGNATURE);
+				zip64.putLong (ZipDirectory.ZIP64_END_OF_DIRECTORY_SIZE - 12);
+				zip64.putShort ((short) ZIP64_VERSION);
+				zip64.putShort ((short) ZIP64_VERSION);
+				zip64.putInt (0);
+				zip64.putInt (0);
+				zip64.putLong (count);
+				zip64.putLong (count);
+				zip64.putLong (directorySize);
+				zip64.putLong (directoryOffset);
+				zip64.putInt (ZipDirectory.ZIP64_LOCATOR_SIGNATURE);
+				zip64.putInt (0);
+				zip64.putLong (zip64Offset);
+				zip64.putInt (1);
+				zip64.flip ();
+				write (zip64);
+			}
+			
+			ByteBuffer end = allocate (ZipDirectory.END_OF_DIRECTORY_SIZE);
+			end.putInt (ZipDirectory.END_OF_DIRECTORY_SIGNATURE);
+			end.putShort ((short) 0);
+			end.putShort ((short) 0);
+			end.putShort ((short) Math.min (count, 0xffff));
+			end.putShort ((short) Math.min (count, 0xffff));
+			end.putInt ((int) Math.min (directorySize, ZipDirectory.ZIP64_LIMIT));
+			end.putInt ((int) Math.min (directoryOffset, ZipDirectory.ZIP64_LIMIT));
+			end.putShort ((short) 0);
+			end.flip ();
+			write (end);
+		}
+		finally
+		{
+			if (file != null)
+				file.close ();
+		}
+	}
+	
+	
+	/**
+	 * Allocate a little-endian buffer.
+	 * 
+	 * @param size
+	 *          the size of the buffer
+	 * @return the buffer
+	 */
+	private static ByteBuffer allocate (int size)
+	{
+		return ByteBuffer.allocate (size).order (ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	
+	/**
+	 * Write the remaining bytes of a buffer.
+	 * 
+	 * @param buffer
+	 *          the buffer
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private void write (ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining ())
+			position += channel.write (buffer);
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.taverna.robundle.manifest.Agent;
+
+import de.unirostock.sems.cbarchive.meta.omex.VCard;
+
+
+
+/**
+ * The Class VCardIndex is a set of VCards with constant-time lookups.
+ * 
+ * A VCard is considered to be in the index if the index contains another
+ * VCard that is the same according to
+ * {@link CaRoConverter#sameVcard(VCard, VCard)}: Both VCards need to have the
+ * same names set, and either these names or the mail addresses need to match.
+ * Thus, every VCard is represented by two hashable keys, one for the names and
+ * one for the mail address.
+ * 
+ * @author Martin Scharm
+ */
+public class VCardIndex
+{
+	
+	/** The keys of the names. */
+	private Set<List<Object>>	nameKeys;
+	
+	/** The keys of the mail addresses. */
+	private Set<List<Object>>	mailKeys;
+	
+	
+	/**
+	 * Instantiates a new, empty index.
+	 */
+	public VCardIndex ()
+	{
+		nameKeys = new HashSet<List<Object>> ();
+		mailKeys = new HashSet<List<Object>> ();
+	}
+	
+	
+	/**
+	 * Gets the key representing the names of a VCard.
+	 * 
+	 * @param vcard
+	 *          the VCard
+	 * @return the key, or <code>null</code> if the VCard doesn't have names
+	 */
+	public static List<Object> nameKey (VCard vcard)
+	{
+		if (vcard.getGivenName () == null && vcard.getFamilyName () == null)
+			return null;
+		return Arrays.<Object> asList (vcard.getGivenName (),
+			vcard.getFamilyName ());
+	}
+	
+	
+	/**
+	 * Gets the key representing the mail address of a VCard. As the names set
+	 * need to match as well, the key also encodes which names are set.
+	 * 
+	 * @param vcard
+	 *          the VCard
+	 * @return the key, or <code>null</code> if the VCard doesn't have a mail
+	 *         address
+	 */
+	public static List<Object> mailKey (VCard vcard)
+	{
+		if (vcard.getEmail () == null)
+			return null;
+		return Arrays.<Object> asList (vcard.getGivenName () == null,
+			vcard.getFamilyName () == null, vcard.getEmail ());
+	}
+	
+	
+	/**
+	 * Add a VCard to the index.
+	 * 
+	 * @param vcard
+	 *          the VCard
+	 */
+	public void add (VCard vcard)
+	{
+		List<Object> key = nameKey (vcard);
+		if (key != null)
+			nameKeys.add (key);
+		key = mailKey (vcard);
+		if (key != null)
+			mailKeys.add (key);
+	}
+	
+	
+	/**
+	 * Add all VCards to the index.
+	 * 
+	 * @param vcards
+	 *          the VCards
+	 */
+	public void addAll (List<VCard> vcards)
+	{
+		for (VCard vcard : vcards)
+			if (vcard != null)
+				add (vcard);
+	}
+	
+	
+	/**
+	 * Does the index contain a VCard that is the same as <code>vcard</code>?
+	 * 
+	 * @param vcard
+	 *          the VCard
+	 * @return true, if a same VCard was added before
+	 */
+	public boolean contains (VCard vcard)
+	{
+		List<Object> key = nameKey (vcard);
+		if (key != null && nameKeys.contains (key))
+			return true;
+		key = mailKey (vcard);
+		return key != null && mailKeys.contains (key);
+	}
+	
+	
+	/**
+	 * Does the index contain a VCard that is the same as the VCard of an RO
+	 * agent?
+	 * 
+	 * @param agent
+	 *          the agent
+	 * @return true, if a same VCard was added before
+	 */
+	public boolean contains (Agent agent)
+	{
+		VCard vcard = CaRoConverter.agentToVCard (agent);
+		return vcard != null && contains (vcard);
+	}
+}
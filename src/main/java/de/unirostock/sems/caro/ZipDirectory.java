@@ -0,0 +1,954 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+
+
+/**
+ * The Class ZipDirectory reads the central directory of a zip file. It gives
+ * access to the entries as they are stored in the file, that is to their
+ * compressed bytes, without inflating them. Zip64 extensions are supported.
+ * 
+ * Only the end of the zip file, that is the end of central directory record
+ * and the central directory, is read into heap buffers, so reading the
+ * directory of a large zip file doesn't touch its contents. Nothing is
+ * memory-mapped, the file is released as soon as the directory is closed.
+ * 
+ * @author Martin Scharm
+ */
+public class ZipDirectory
+	implements Closeable
+{
+	
+	/** The signature of a local file header. */
+	public static final int					LOCAL_HEADER_SIGNATURE					= 0x04034b50;
+	
+	/** The signature of a central directory file header. */
+	public static final int					CENTRAL_HEADER_SIGNATURE				= 0x02014b50;
+	
+	/** The signature of the end of central directory record. */
+	public static final int					END_OF_DIRECTORY_SIGNATURE			= 0x06054b50;
+	
+	/** The signature of the zip64 end of central directory record. */
+	public static final int					ZIP64_END_OF_DIRECTORY_SIGNATURE	= 0x06064b50;
+	
+	/** The signature of the zip64 end of central directory locator. */
+	public static final int					ZIP64_LOCATOR_SIGNATURE					= 0x07064b50;
+	
+	/** The id of the zip64 extended information extra field. */
+	public static final int					ZIP64_EXTRA_ID									= 0x0001;
+	
+	/** The size of a local file header without name and extra field. */
+	public static final int					LOCAL_HEADER_SIZE								= 30;
+	
+	/** The size of a central file header without name, extra and comment. */
+	public static final int					CENTRAL_HEADER_SIZE							= 46;
+	
+	/** The size of the end of central directory record without comment. */
+	public static final int					END_OF_DIRECTORY_SIZE						= 22;
+	
+	/** The size of the zip64 end of central directory record. */
+	public static final int					ZIP64_END_OF_DIRECTORY_SIZE			= 56;
+	
+	/** The size of the zip64 end of central directory locator. */
+	public static final int					ZIP64_LOCATOR_SIZE							= 20;
+	
+	/** Sizes and offsets from this value on are stored in zip64 extra fields. */
+	public static final long				ZIP64_LIMIT											= 0xffffffffL;
+	
+	/** The compression method of stored entries. */
+	public static final int					STORED													= 0;
+	
+	/** The compression method of deflated entries. */
+	public static final int					DEFLATED												= 8;
+	
+	/** The flag of encrypted entries. */
+	public static final int					FLAG_ENCRYPTED									= 0x0001;
+	
+	/** The flag of entries followed by a data descriptor. */
+	public static final int					FLAG_DATA_DESCRIPTOR						= 0x0008;
+	
+	/** The flag of entries with UTF-8 names. */
+	public static final int					FLAG_UTF8												= 0x0800;
+	
+	/** The maximum length of the zip file comment. */
+	private static final int				MAX_COMMENT_SIZE								= 0xffff;
+	
+	/** The size of the buffer to transfer data from channels. */
+	private static final int				TRANSFER_BUFFER_SIZE						= 64 * 1024;
+	
+	/** The file, <code>null</code> if reading from a channel. */
+	private File										file;
+	
+	/** The file or channel, to be named in messages. */
+	private Object									origin;
+	
+	/** The channel to read the file. */
+	private SeekableByteChannel			channel;
+	
+	/** Should the channel be closed with this directory? */
+	private boolean									ownsChannel;
+	
+	/** The entries in the order of the central directory. */
+	private List<Entry>							entries;
+	
+	/** The entries by name. */
+	private Map<String, Entry>			entriesByName;
+	
+	
+	/**
+	 * An entry of the central directory.
+	 */
+	public static class Entry
+	{
+		
+		/** The name as stored in the zip file. */
+		private byte[]	rawName;
+		
+		/** The name. */
+		private String	name;
+		
+		/** The version made by. */
+		private int			versionMadeBy;
+		
+		/** The version needed to extract. */
+		private int			versionNeeded;
+		
+		/** The general purpose flags. */
+		private int			flags;
+		
+		/** The compression method. */
+		private int			method;
+		
+		/** The DOS time and date. */
+		private int			dosTime;
+		
+		/** The CRC-32 of the uncompressed contents. */
+		private long		crc;
+		
+		/** The compressed size. */
+		private long		compressedSize;
+		
+		/** The uncompressed size. */
+		private long		size;
+		
+		/** The internal file attributes. */
+		private int			internalAttributes;
+		
+		/** The external file attributes. */
+		private long		externalAttributes;
+		
+		/** The offset of the local file header. */
+		private long		localHeaderOffset;
+		
+		/** The extra field of the central directory, without zip64 fields. */
+		private byte[]	extra;
+		
+		/** The comment. */
+		private byte[]	comment;
+		
+		
+		/**
+		 * Gets the name of the entry.
+		 * 
+		 * @return the name
+		 */
+		public String getName ()
+		{
+			return name;
+		}
+		
+		
+		/**
+		 * Gets the name as stored in the zip file.
+		 * 
+		 * @return the raw name
+		 */
+		public byte[] getRawName ()
+		{
+			return rawName;
+		}
+		
+		
+		/**
+		 * Is this a directory?
+		 * 
+		 * @return true, if the entry is a directory
+		 */
+		public boolean isDirectory ()
+		{
+			return name.endsWith ("/");
+		}
+		
+		
+		/**
+		 * Gets the version made by.
+		 * 
+		 * @return the version made by
+		 */
+		public int getVersionMadeBy ()
+		{
+			return versionMadeBy;
+		}
+		
+		
+		/**
+		 * Gets the version needed to extract.
+		 * 
+		 * @return the version needed
+		 */
+		public int getVersionNeeded ()
+		{
+			return versionNeeded;
+		}
+		
+		
+		/**
+		 * Gets the general purpose flags.
+		 * 
+		 * @return the flags
+		 */
+		public int getFlags ()
+		{
+			return flags;
+		}
+		
+		
+		/**
+		 * Gets the compression method, see {@link ZipDirectory#STORED} and
+		 * {@link ZipDirectory#DEFLATED}.
+		 * 
+		 * @return the method
+		 */
+		public int getMethod ()
+		{
+			return method;
+		}
+		
+		
+		/**
+		 * Gets the modification time in DOS format, the time in the lower and the
+		 * date in the upper 16 bits.
+		 * 
+		 * @return the DOS time
+		 */
+		public int getDosTime ()
+		{
+			return dosTime;
+		}
+		
+		
+		/**
+		 * Gets the CRC-32 of the uncompressed contents.
+		 * 
+		 * @return the CRC
+		 */
+		public long getCrc ()
+		{
+			return crc;
+		}
+		
+		
+		/**
+		 * Gets the compressed size.
+		 * 
+		 * @return the compressed size
+		 */
+		public long getCompressedSize ()
+		{
+			return compressedSize;
+		}
+		
+		
+		/**
+		 * Gets the uncompressed size.
+		 * 
+		 * @return the size
+		 */
+		public long getSize ()
+		{
+			return size;
+		}
+		
+		
+		/**
+		 * Gets the internal file attributes.
+		 * 
+		 * @return the internal attributes
+		 */
+		public int getInternalAttributes ()
+		{
+			return internalAttributes;
+		}
+		
+		
+		/**
+		 * Gets the external file attributes.
+		 * 
+		 * @return the external attributes
+		 */
+		public long getExternalAttributes ()
+		{
+			return externalAttributes;
+		}
+		
+		
+		/**
+		 * Gets the offset of the local file header.
+		 * 
+		 * @return the offset
+		 */
+		public long getLocalHeaderOffset ()
+		{
+			return localHeaderOffset;
+		}
+		
+		
+		/**
+		 * Gets the extra field of the central directory, zip64 information
+		 * removed.
+		 * 
+		 * @return the extra field
+		 */
+		public byte[] getExtra ()
+		{
+			return extra;
+		}
+		
+		
+		/**
+		 * Gets the comment.
+		 * 
+		 * @return the comment
+		 */
+		public byte[] getComment ()
+		{
+			return comment;
+		}
+		
+		
+		/**
+		 * Can the compressed bytes of this entry be copied into another zip file?
+		 * That is the case for stored and deflated entries that aren't encrypted.
+		 * 
+		 * @return true, if the entry can be copied without inflating it
+		 */
+		public boolean isRawCopyable ()
+		{
+			return (method == STORED || method == DEFLATED)
+				&& (flags & FLAG_ENCRYPTED) == 0;
+		}
+		
+		
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString ()
+		{
+			return name + " [method: " + method + ", size: " + size
+				+ ", compressed: " + compressedSize + "]";
+		}
+	}
+	
+	
+	/**
+	 * Read the central directory of a zip file. The file is kept open to read
+	 * the entries until the directory is closed.
+	 * 
+	 * @param file
+	 *          the zip file
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred, e.g. if the file is
+	 *           not a zip file.
+	 */
+	public ZipDirectory (File file) throws IOException
+	{
+		this.file = file;
+		origin = file;
+		channel = FileChannel.open (file.toPath (), StandardOpenOption.READ);
+		ownsChannel = true;
+		try
+		{
+			readCentralDirectory ();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close ();
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * Read the central directory of a zip file available through a channel.
+	 * The channel is used to read the entries, but it won't be closed when
+	 * closing the directory. Its position may be changed at any time.
+	 * 
+	 * @param channel
+	 *          the channel
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred, e.g. if the channel
+	 *           doesn't contain a zip file.
+	 */
+	public ZipDirectory (SeekableByteChannel channel) throws IOException
+	{
+		this.channel = channel;
+		origin = channel;
+		ownsChannel = false;
+		readCentralDirectory ();
+	}
+	
+	
+	/**
+	 * Gets the zip file.
+	 * 
+	 * @return the file, or <code>null</code> if the directory was read from a
+	 *         channel
+	 */
+	public File getFile ()
+	{
+		return file;
+	}
+	
+	
+	/**
+	 * Gets the entries in the order of the central directory.
+	 * 
+	 * @return the entries
+	 */
+	public List<Entry> getEntries ()
+	{
+		return entries;
+	}
+	
+	
+	/**
+	 * Gets an entry.
+	 * 
+	 * @param name
+	 *          the name of the entry
+	 * @return the entry, or <code>null</code> if there is no such entry
+	 */
+	public Entry getEntry (String name)
+	{
+		return entriesByName.get (name);
+	}
+	
+	
+	/**
+	 * Read the extra field of the local file header of an entry, zip64
+	 * information removed.
+	 * 
+	 * @param entry
+	 *          the entry
+	 * @return the local extra field
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public byte[] readLocalExtra (Entry entry) throws IOException
+	{
+		ByteBuffer header = readLocalHeader (entry);
+		int nameLength = header.getShort (26) & 0xffff;
+		int extraLength = header.getShort (28) & 0xffff;
+		ByteBuffer extra = read (entry.localHeaderOffset + LOCAL_HEADER_SIZE
+			+ nameLength, extraLength);
+		return removeZip64 (extra, 0, extraLength);
+	}
+	
+	
+	/**
+	 * Gets the offset of the compressed bytes of an entry.
+	 * 
+	 * @param entry
+	 *          the entry
+	 * @return the offset of the data
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public long getDataOffset (Entry entry) throws IOException
+	{
+		ByteBuffer header = readLocalHeader (entry);
+		return entry.localHeaderOffset + LOCAL_HEADER_SIZE
+			+ (header.getShort (26) & 0xffff) + (header.getShort (28) & 0xffff);
+	}
+	
+	
+	/**
+	 * Transfer the compressed bytes of an entry to a channel.
+	 * 
+	 * @param entry
+	 *          the entry
+	 * @param target
+	 *          the channel to write to
+	 * @return the number of bytes transferred
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public long transferData (Entry entry, WritableByteChannel target)
+		throws IOException
+	{
+		long position = getDataOffset (entry);
+		long end = position + entry.compressedSize;
+		if (end > channel.size ())
+			throw new EOFException ("data of " + entry.name + " exceeds " + origin);
+		if (channel instanceof FileChannel)
+			while (position < end)
+			{
+				long n = ((FileChannel) channel).transferTo (position, end - position,
+					target);
+				if (n <= 0)
+					throw new EOFException ("cannot transfer data of " + entry.name);
+				position += n;
+			}
+		else
+		{
+			ByteBuffer buffer = ByteBuffer.allocate (TRANSFER_BUFFER_SIZE);
+			while (position < end)
+			{
+				buffer.clear ();
+				buffer.limit ((int) Math.min (buffer.capacity (), end - position));
+				if (readAt (buffer, position) < 0)
+					throw new EOFException ("cannot transfer data of " + entry.name);
+				buffer.flip ();
+				position += buffer.remaining ();
+				while (buffer.hasRemaining ())
+					target.write (buffer);
+			}
+		}
+		return entry.compressedSize;
+	}
+	
+	
+	/**
+	 * Read the contents of a stored entry.
+	 * 
+	 * @param entry
+	 *          the entry, must be stored uncompressed
+	 * @return the contents
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public byte[] readStored (Entry entry) throws IOException
+	{
+		if (entry.method != STORED || entry.size != entry.compressedSize
+			|| entry.size > Integer.MAX_VALUE)
+			throw new ZipException ("cannot read " + entry.name
+				+ " without inflating it");
+		ByteBuffer data = read (getDataOffset (entry), (int) entry.size);
+		byte[] contents = new byte[data.remaining ()];
+		data.get (contents);
+		return contents;
+	}
+	
+	
+	/**
+	 * Open a stream to read the uncompressed contents of an entry. Only stored
+	 * and deflated entries are supported. The stream reads directly from the
+	 * zip file, it must not be used after the directory was closed.
+	 * 
+	 * @param entry
+	 *          the entry
+	 * @return the stream
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	public InputStream getInputStream (Entry entry) throws IOException
+	{
+		if (!entry.isRawCopyable ())
+			throw new ZipException ("cannot read " + entry.name
+				+ " : unsupported compression or encryption");
+		long position = getDataOffset (entry);
+		if (position + entry.compressedSize > channel.size ())
+			throw new EOFException ("data of " + entry.name + " exceeds " + origin);
+		InputStream data = new EntryInputStream (position, position
+			+ entry.compressedSize);
+		if (entry.method == STORED)
+			return data;
+		final Inflater inflater = new Inflater (true);
+		return new InflaterInputStream (data, inflater)
+		{
+			
+			@Override
+			public void close () throws IOException
+			{
+				super.close ();
+				inflater.end ();
+			}
+		};
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close () throws IOException
+	{
+		if (ownsChannel)
+			channel.close ();
+	}
+	
+	
+	/**
+	 * Read the local file header of an entry.
+	 * 
+	 * @param entry
+	 *          the entry
+	 * @return the local header without name and extra field
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private ByteBuffer readLocalHeader (Entry entry) throws IOException
+	{
+		ByteBuffer header = read (entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt (0) != LOCAL_HEADER_SIGNATURE)
+			throw new ZipException ("invalid local header of " + entry.name + " in "
+				+ origin);
+		return header;
+	}
+	
+	
+	/**
+	 * Find and parse the central directory.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private void readCentralDirectory () throws IOException
+	{
+		long size = channel.size ();
+		if (size < END_OF_DIRECTORY_SIZE)
+			throw new ZipException (origin + " is not a zip file");
+		
+		// the end of central directory record is followed by a comment of
+		// unknown length
+		int tailLength = (int) Math.min (size, END_OF_DIRECTORY_SIZE
+			+ MAX_COMMENT_SIZE);
+		long tailStart = size - tailLength;
+		ByteBuffer tail = read (tailStart, tailLength);
+		int end = -1;
+		for (int i = tailLength - END_OF_DIRECTORY_SIZE; i >= 0 && end < 0; i--)
+			if (tail.getInt (i) == END_OF_DIRECTORY_SIGNATURE)
+				end = i;
+		if (end < 0)
+			throw new ZipException ("cannot find central directory of " + origin);
+		
+		long count = tail.getShort (end + 10) & 0xffff;
+		long directorySize = tail.getInt (end + 12) & 0xffffffffL;
+		long directoryOffset = tail.getInt (end + 16) & 0xffffffffL;
+		long endOffset = tailStart + end;
+		if (endOffset >= ZIP64_LOCATOR_SIZE)
+		{
+			ByteBuffer locator = read (endOffset - ZIP64_LOCATOR_SIZE,
+				ZIP64_LOCATOR_SIZE);
+			if (locator.getInt (0) == ZIP64_LOCATOR_SIGNATURE)
+			{
+				ByteBuffer zip64 = read (locator.getLong (8),
+					ZIP64_END_OF_DIRECTORY_SIZE);
+				if (zip64.getInt (0) != ZIP64_END_OF_DIRECTORY_SIGNATURE)
+					throw new ZipException ("invalid zip64 end of central directory in "
+						+ origin);
+				count = zip64.getLong (32);
+				directorySize = zip64.getLong (40);
+				directoryOffset = zip64.getLong (48);
+			}
+		}
+		if (directoryOffset + directorySize > size
+			|| directorySize > Integer.MAX_VALUE)
+			throw new ZipException ("invalid central directory in " + origin);
+		
+		ByteBuffer directory = read (directoryOffset, (int) directorySize);
+		entries = new ArrayList<Entry> ();
+		entriesByName = new HashMap<String, Entry> ();
+		int position = 0;
+		while (entries.size () < count)
+		{
+			if (position + CENTRAL_HEADER_SIZE > directory.limit ()
+				|| directory.getInt (position) != CENTRAL_HEADER_SIGNATURE)
+				throw new ZipException ("invalid central directory entry in " + origin);
+			Entry entry = readEntry (directory, position);
+			position += CENTRAL_HEADER_SIZE + entry.rawName.length
+				+ (directory.getShort (position + 30) & 0xffff)
+				+ entry.comment.length;
+			entries.add (entry);
+			entriesByName.put (entry.name, entry);
+		}
+		entries = Collections.unmodifiableList (entries);
+	}
+	
+	
+	/**
+	 * Parse an entry of the central directory.
+	 * 
+	 * @param directory
+	 *          the central directory
+	 * @param position
+	 *          the position of the entry
+	 * @return the entry
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private Entry readEntry (ByteBuffer directory, int position)
+		throws IOException
+	{
+		Entry entry = new Entry ();
+		entry.versionMadeBy = directory.getShort (position + 4) & 0xffff;
+		entry.versionNeeded = directory.getShort (position + 6) & 0xffff;
+		entry.flags = directory.getShort (position + 8) & 0xffff;
+		entry.method = directory.getShort (position + 10) & 0xffff;
+		entry.dosTime = directory.getInt (position + 12);
+		entry.crc = directory.getInt (position + 16) & 0xffffffffL;
+		entry.compressedSize = directory.getInt (position + 20) & 0xffffffffL;
+		entry.size = directory.getInt (position + 24) & 0xffffffffL;
+		int nameLength = directory.getShort (position + 28) & 0xffff;
+		int extraLength = directory.getShort (position + 30) & 0xffff;
+		int commentLength = directory.getShort (position + 32) & 0xffff;
+		entry.internalAttributes = directory.getShort (position + 36) & 0xffff;
+		entry.externalAttributes = directory.getInt (position + 38) & 0xffffffffL;
+		entry.localHeaderOffset = directory.getInt (position + 42) & 0xffffffffL;
+		
+		int start = position + CENTRAL_HEADER_SIZE;
+		if (start + nameLength + extraLength + commentLength > directory.limit ())
+			throw new ZipException ("invalid central directory entry in " + origin);
+		entry.rawName = new byte[nameLength];
+		entry.comment = new byte[commentLength];
+		for (int i = 0; i < nameLength; i++)
+			entry.rawName[i] = directory.get (start + i);
+		for (int i = 0; i < commentLength; i++)
+			entry.comment[i] = directory.get (start + nameLength + extraLength + i);
+		Charset charset = (entry.flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8
+			: StandardCharsets.ISO_8859_1;
+		entry.name = new String (entry.rawName, charset);
+		
+		// zip64 information replaces the fields that are set to the limit
+		int extra = start + nameLength;
+		int extraEnd = extra + extraLength;
+		while (extra + 4 <= extraEnd)
+		{
+			int id = directory.getShort (extra) & 0xffff;
+			int length = directory.getShort (extra + 2) & 0xffff;
+			if (id == ZIP64_EXTRA_ID)
+			{
+				int field = extra + 4;
+				if (entry.size == ZIP64_LIMIT && field + 8 <= extraEnd)
+				{
+					entry.size = directory.getLong (field);
+					field += 8;
+				}
+				if (entry.compressedSize == ZIP64_LIMIT && field + 8 <= extraEnd)
+				{
+					entry.compressedSize = directory.getLong (field);
+					field += 8;
+				}
+				if (entry.localHeaderOffset == ZIP64_LIMIT && field + 8 <= extraEnd)
+					entry.localHeaderOffset = directory.getLong (field);
+			}
+			extra += 4 + length;
+		}
+		entry.extra = removeZip64 (directory, start + nameLength, extraLength);
+		return entry;
+	}
+	
+	
+	/**
+	 * Copy an extra field, skipping zip64 information.
+	 * 
+	 * @param buffer
+	 *          the buffer containing the extra field
+	 * @param offset
+	 *          the offset of the extra field
+	 * @param length
+	 *          the length of the extra field
+	 * @return the extra field without zip64 information
+	 */
+	private static byte[] removeZip64 (ByteBuffer buffer, int offset, int length)
+	{
+		ByteBuffer copy = ByteBuffer.allocate (length);
+		int position = offset;
+		int end = offset + length;
+		while (position + 4 <= end)
+		{
+			int id = buffer.getShort (position) & 0xffff;
+			int fieldEnd = Math.min (end, position + 4
+				+ (buffer.getShort (position + 2) & 0xffff));
+			if (id != ZIP64_EXTRA_ID)
+				for (int i = position; i < fieldEnd; i++)
+					copy.put (buffer.get (i));
+			position = fieldEnd;
+		}
+		byte[] extra = new byte[copy.position ()];
+		copy.flip ();
+		copy.get (extra);
+		return extra;
+	}
+	
+	
+	/**
+	 * Read some bytes of the zip file.
+	 * 
+	 * @param position
+	 *          the position to start reading
+	 * @param length
+	 *          the number of bytes to read
+	 * @return the bytes in little-endian order
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred, or the file ends
+	 *           before <code>length</code> bytes were read.
+	 */
+	private ByteBuffer read (long position, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate (length).order (
+			ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining ())
+			if (readAt (buffer, position + buffer.position ()) < 0)
+				throw new EOFException ("unexpected end of " + origin);
+		buffer.flip ();
+		return buffer;
+	}
+	
+	
+	/**
+	 * Read a sequence of bytes at an absolute position of the channel. File
+	 * channels are read without changing their position, other channels are
+	 * positioned first.
+	 * 
+	 * @param buffer
+	 *          the buffer to read into
+	 * @param position
+	 *          the position to start reading
+	 * @return the number of bytes read, or -1 at the end of the channel
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private int readAt (ByteBuffer buffer, long position) throws IOException
+	{
+		if (channel instanceof FileChannel)
+			return ((FileChannel) channel).read (buffer, position);
+		synchronized (channel)
+		{
+			channel.position (position);
+			return channel.read (buffer);
+		}
+	}
+	
+	
+	/**
+	 * A stream of the compressed bytes of an entry, reading at absolute
+	 * positions of the channel.
+	 */
+	private class EntryInputStream
+		extends InputStream
+	{
+		
+		/** The next position to read. */
+		private long	position;
+		
+		/** The end of the data. */
+		private long	end;
+		
+		
+		/**
+		 * Instantiates a new stream.
+		 * 
+		 * @param position
+		 *          the position of the data
+		 * @param end
+		 *          the end of the data
+		 */
+		public EntryInputStream (long position, long end)
+		{
+			this.position = position;
+			this.end = end;
+		}
+		
+		
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read () throws IOException
+		{
+			byte[] b = new byte[1];
+			return read (b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+		
+		
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read (byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			if (position >= end)
+				return -1;
+			int n = readAt (
+				ByteBuffer.wrap (b, off, (int) Math.min (len, end - position)),
+				position);
+			if (n < 0)
+				throw new EOFException ("unexpected end of " + origin);
+			position += n;
+			return n;
+		}
+		
+		
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.InputStream#available()
+		 */
+		@Override
+		public int available ()
+		{
+			return (int) Math.min (end - position, Integer.MAX_VALUE);
+		}
+	}
+}
@@ -21,14 +21,19 @@ package de.unirostock.sems.caro.converters;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.taverna.robundle.Bundle;
 import org.apache.taverna.robundle.Bundles;
@@ -41,8 +46,12 @@ import org.jdom2.Element;
 import org.jdom2.JDOMException;
 
 import de.binfalse.bflog.LOGGER;
+import de.unirostock.sems.caro.CaRoCancelledException;
 import de.unirostock.sems.caro.CaRoConverter;
 import de.unirostock.sems.caro.CaRoNotification;
+import de.unirostock.sems.caro.ConversionPlan;
+import de.unirostock.sems.caro.ZipDirectory;
+import de.unirostock.sems.caro.events.CaRoEvents;
 import de.unirostock.sems.cbarchive.ArchiveEntry;
 import de.unirostock.sems.cbarchive.CombineArchive;
 import de.unirostock.sems.cbarchive.CombineArchiveException;
@@ -75,6 +84,19 @@ public class CaToRo
 	}
 	
 	
+	/**
+	 * Instantiates a new converter reading the combine archive from a stream, see
+	 * {@link CaRoConverter#CaRoConverter(InputStream)}.
+	 * 
+	 * @param combineArchive
+	 *          the stream of the combine archive
+	 */
+	public CaToRo (InputStream combineArchive)
+	{
+		super (combineArchive);
+	}
+	
+	
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -88,19 +110,15 @@ public class CaToRo
 			combineArchive = new CombineArchive (sourceFile);
 			List<String> errs = combineArchive.getErrors ();
 			for (String s : errs)
-				notifications.add (new CaRoNotification (
-					CaRoNotification.SERVERITY_WARN, "reading archive: " + s));
+				report (CaRoNotification.SERVERITY_WARN, "reading archive: %s", s);
 			return true;
 		}
 		catch (IOException | JDOMException | ParseException
 			| CombineArchiveException e)
 		{
-			LOGGER
-				.warn (e, "wasn't able to read the combine archive at ", sourceFile);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR,
-				"wasn't able to read the combine archive at " + sourceFile + " : "
-					+ e.getMessage ()));
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to read the combine archive at %s : %s", sourceFile,
+				e.getMessage ());
 		}
 		return false;
 	}
@@ -123,10 +141,9 @@ public class CaToRo
 		}
 		catch (IOException e)
 		{
-			LOGGER.error (e, "wasn't able to close combine archive ", sourceFile);
-			notifications.add (new CaRoNotification (CaRoNotification.SERVERITY_WARN,
-				"wasn't able to close the combine archive at " + sourceFile + " : "
-					+ e.getMessage ()));
+			report (CaRoNotification.SERVERITY_WARN, e,
+				"wasn't able to close the combine archive at %s : %s", sourceFile,
+				e.getMessage ());
 		}
 		return false;
 	}
@@ -143,15 +160,22 @@ public class CaToRo
 		try
 		{
 			// create ro infrastructure
-			researchObject = Bundles.createBundle ();
+			researchObject = Bundles.createBundle (workspace.createLocation (
+				"CaRoFromCa", ".ro").toPath ());
+			// move the bundle into place when saving it
+			researchObject.setDeleteOnClose (true);
 			Manifest roManifest = researchObject.getManifest ();
 			Path annotationsDir = researchObject.getRoot ().resolve (
 				"/.ro/annotations");
 			List<PathAnnotation> annotations = roManifest.getAnnotations ();
 			tagConvertedContainer (annotations);
 			// read the ca
-			List<ArchiveEntry> mainEntries = combineArchive.getMainEntries ();
+			Set<String> mainEntries = new HashSet<String> ();
+			for (ArchiveEntry mainEntry : combineArchive.getMainEntries ())
+				mainEntries.add (mainEntry.getFilePath ());
 			int annotationNumber = 0;
+			final List<ArchiveEntry> entries = new ArrayList<ArchiveEntry> ();
+			final List<Path> targets = new ArrayList<Path> ();
 			for (ArchiveEntry entry : combineArchive.getEntries ())
 			{
 				// check special annotations
@@ -163,9 +187,6 @@ public class CaToRo
 				}
 				
 				// consider copying the entries
-				File tmp = File.createTempFile ("CaRoFromCa", "tmp");
-				tmp.deleteOnExit ();
-				entry.extractFile (tmp);
 				Path target = researchObject.getRoot ()
 					.resolve (entry.getEntityPath ());
 				
@@ -173,16 +194,49 @@ public class CaToRo
 				if (!includeFile (target, entry))
 					continue;
 				
-				// copy entry
-				Files.createDirectories (target.getParent ());
-				Files.copy (tmp.toPath (), target);
+				entries.add (entry);
+				targets.add (target);
+			}
+			
+			// copy entries -- they are independent of each other, so this may run
+			// concurrently
+			setTotalEntries (entries.size ());
+			List<Callable<Void>> copies = new ArrayList<Callable<Void>> ();
+			for (int i = 0; i < entries.size (); i++)
+			{
+				final ArchiveEntry entry = entries.get (i);
+				final Path target = targets.get (i);
+				copies.add (new Callable<Void> ()
+				{
+					
+					@Override
+					public Void call () throws IOException
+					{
+						checkAborted ();
+						Object event = CaRoEvents.beginEntry ();
+						Files.createDirectories (target.getParent ());
+						long size = copyEntry (entry, target);
+						CaRoEvents.endEntry (event, CaToRo.this, "copy",
+							entry.getFilePath (), size, entry.getFormat (), false, false);
+						entryConverted ();
+						return null;
+					}
+				});
+			}
+			execute (copies);
+			
+			// convert meta data -- mutations of the manifest happen sequentially
+			for (int i = 0; i < entries.size (); i++)
+			{
+				checkAborted ();
+				ArchiveEntry entry = entries.get (i);
+				Path target = targets.get (i);
 				
 				// special case for evolution in turtle format
 				if (target.startsWith ("/.ro/evolution.ttl"))
 				{
-					notifications.add (new CaRoNotification (
-						CaRoNotification.SERVERITY_NOTE,
-						"adding history /.ro/evolution.ttl"));
+					report (CaRoNotification.SERVERITY_NOTE,
+						"adding history /.ro/evolution.ttl");
 					List<Path> hist = new ArrayList<Path> ();
 					hist.add (target);
 					roManifest.setHistory (hist);
@@ -190,26 +244,27 @@ public class CaToRo
 				else
 				{
 					// handle meta date
+					Object event = CaRoEvents.beginEntry ();
 					PathMetadata pmd = roManifest.getAggregation (target);
 					pmd.setConformsTo (entry.getFormat ());
 					annotationNumber = handleMetaData (pmd, target,
 						entry.getDescriptions (), annotationsDir, annotationNumber,
 						annotations);
 					// is this a main entry?
-					if (mainEntries.contains (entry))
+					if (mainEntries.contains (entry.getFilePath ()))
 						setMainEntry (target, annotations);
+					CaRoEvents.endEntry (event, this, "metadata", entry.getFilePath (),
+						-1, entry.getFormat (), false, !entry.getDescriptions ()
+							.isEmpty ());
 				}
 			}
 			return true;
 		}
 		catch (IOException e)
 		{
-			LOGGER.warn (e, "wasn't able to convert combine archive at ", sourceFile,
-				" into a research object");
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR,
-				"wasn't able to convert combine archive at " + sourceFile
-					+ " into a research object : " + e.getMessage ()));
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to convert combine archive at %s into a research object : %s",
+				sourceFile, e.getMessage ());
 		}
 		return false;
 	}
@@ -223,10 +278,17 @@ public class CaToRo
 			// reintegrate this annotation
 			try
 			{
-				File tmp = File.createTempFile ("CaRoFromCa", "ConvAnnotation");
-				entry.extractFile (tmp);
 				Properties properties = new Properties ();
-				FileInputStream in = new FileInputStream (tmp);
+				InputStream in = null;
+				if (streamEntries)
+					in = Files.newInputStream (entry.getPath ());
+				else
+				{
+					File tmp = workspace.createFile ("CaRoFromCa", "ConvAnnotation");
+					entry.extractFile (tmp);
+					statistics.addTemporaryBytes (tmp.length ());
+					in = new FileInputStream (tmp);
+				}
 				properties.load (in);
 				in.close ();
 				
@@ -235,16 +297,14 @@ public class CaToRo
 				pa.setContent (new URI ((String) properties.get ("body")));
 				
 				annotations.add (pa);
+				statistics.addAnnotation ();
 				return true;
 			}
 			catch (IOException | URISyntaxException e)
 			{
-				LOGGER.warn (e, "wasn't able to reintegrate converted annotation ",
-					entry.getEntityPath ());
-				notifications.add (new CaRoNotification (
-					CaRoNotification.SERVERITY_WARN,
-					"wasn't able to reintegrate converted annotation "
-						+ entry.getEntityPath () + " : " + e.getMessage ()));
+				report (CaRoNotification.SERVERITY_WARN, e,
+					"wasn't able to reintegrate converted annotation %s : %s",
+					entry.getEntityPath (), e.getMessage ());
 			}
 		}
 		else if (entry.getFormat ().equals (URI_RO_COPY_ANNOTATION))
@@ -252,30 +312,97 @@ public class CaToRo
 			// reintegrate the file
 			try
 			{
-				File tmp = File.createTempFile ("CaRoFromCa", "tmp");
-				tmp.deleteOnExit ();
-				entry.extractFile (tmp);
 				Path target = researchObject.getRoot ()
 					.resolve (entry.getEntityPath ());
 				// copy entry
 				Files.createDirectories (target.getParent ());
-				Files.copy (tmp.toPath (), target);
+				copyEntry (entry, target);
 				return true;
 			}
 			catch (IOException e)
 			{
-				LOGGER.warn (e, "wasn't able to reintegrate converted annotation ",
-					entry.getEntityPath ());
-				notifications.add (new CaRoNotification (
-					CaRoNotification.SERVERITY_WARN,
-					"wasn't able to reintegrate converted annotation "
-						+ entry.getEntityPath () + " : " + e.getMessage ()));
+				report (CaRoNotification.SERVERITY_WARN, e,
+					"wasn't able to reintegrate converted annotation %s : %s",
+					entry.getEntityPath (), e.getMessage ());
 			}
 		}
 		return false;
 	}
 	
 	
+	/**
+	 * Copy an entry of the combine archive into the research object. If raw
+	 * copying is enabled only a placeholder is created, the compressed bytes
+	 * are copied when writing the bundle. If streaming is enabled the entry is
+	 * piped directly from the archive into the bundle, otherwise (or if
+	 * streaming fails) it is extracted to a temporary file first.
+	 * 
+	 * @param entry
+	 *          the archive entry
+	 * @param target
+	 *          the target path in the research object
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private long copyEntry (ArchiveEntry entry, Path target) throws IOException
+	{
+		setTargetFormat (target, entry.getFormat ());
+		ZipDirectory.Entry raw = claimRawEntry (entry.getPath (), target);
+		if (raw != null)
+		{
+			Files.createFile (target);
+			return raw.getSize ();
+		}
+		
+		if (streamEntries)
+		{
+			try
+			{
+				return streamEntry (entry, target);
+			}
+			catch (FileAlreadyExistsException | CaRoCancelledException e)
+			{
+				throw e;
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn (e, "wasn't able to stream entry ",
+					entry.getEntityPath (), " -- falling back to a temporary file");
+				Files.deleteIfExists (target);
+			}
+		}
+		File tmp = workspace.createFile ("CaRoFromCa", "tmp");
+		entry.extractFile (tmp);
+		statistics.addBytesRead (tmp.length ());
+		statistics.addTemporaryBytes (tmp.length ());
+		copy (tmp.toPath (), target);
+		statistics.addBytesWritten (tmp.length ());
+		return tmp.length ();
+	}
+	
+	
+	/**
+	 * Stream an entry of the combine archive directly into the research object.
+	 * 
+	 * @param entry
+	 *          the archive entry
+	 * @param target
+	 *          the target path in the research object
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private long streamEntry (ArchiveEntry entry, Path target)
+		throws IOException
+	{
+		long copied = copy (entry.getPath (), target);
+		statistics.addBytesRead (copied);
+		statistics.addBytesWritten (copied);
+		return copied;
+	}
+	
+	
 	/**
 	 * Add an annotation signalling that this is the main entry.
 	 * 
@@ -327,7 +454,7 @@ public class CaToRo
 					if (creator != null && creator.getOrganization () == null
 						|| creator.getOrganization ().length () == 0)
 					{
-						Agent agent = vcardToAgent (creator, notifications);
+						Agent agent = vcardToAgent (creator);
 						if (agent != null)
 						{
 							if (authors == null)
@@ -352,7 +479,7 @@ public class CaToRo
 					OmexDescription omex = ((OmexMetaDataObject) m).getOmexDescription ();
 					for (VCard creator : omex.getCreators ())
 					{
-						Agent agent = vcardToAgent (creator, notifications);
+						Agent agent = vcardToAgent (creator);
 						if (agent != null)
 						{
 							if (authors == null)
@@ -381,17 +508,15 @@ public class CaToRo
 					pa.setContent (file);
 					pa.generateAnnotationId ();
 					annotations.add (pa);
+					statistics.addAnnotation ();
 					// tag this annotation as a conversion from a combine archive
 					tagAnnotation (pa, annotations);
 				}
 				catch (IOException e)
 				{
-					LOGGER.error (e, "was not able to convert annotation for entry ",
-						m.getAbout ());
-					notifications.add (new CaRoNotification (
-						CaRoNotification.SERVERITY_WARN,
-						"skipping conversion of annotation for " + m.getAbout ()
-							+ " -- reason: " + e.getMessage ()));
+					report (CaRoNotification.SERVERITY_WARN, e,
+						"skipping conversion of annotation for %s -- reason: %s",
+						m.getAbout (), e.getMessage ());
 				}
 			}
 		
@@ -449,9 +574,8 @@ public class CaToRo
 		for (String path : RO_RESTRICTIONS)
 			if (target.startsWith (path))
 			{
-				notifications.add (new CaRoNotification (
-					CaRoNotification.SERVERITY_WARN, "dropping " + path
-						+ " as this is a special file in research objects!"));
+				report (CaRoNotification.SERVERITY_WARN,
+					"dropping %s as this is a special file in research objects!", path);
 				return false;
 			}
 		// special case for the evolution: if it's stored in /.ro/evolution.ttl and
@@ -460,15 +584,64 @@ public class CaToRo
 		if (target.startsWith ("/.ro/evolution.ttl")
 			&& !entry.getFormat ().equals (URI_TURTLE_MIME))
 		{
-			notifications
-				.add (new CaRoNotification (CaRoNotification.SERVERITY_WARN,
-					"dropping /.ro/evolution.ttl as this is a special file in research objects!"));
+			report (CaRoNotification.SERVERITY_WARN,
+				"dropping %s as this is a special file in research objects!",
+				"/.ro/evolution.ttl");
 			return false;
 		}
 		return true;
 	}
 	
 	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * de.unirostock.sems.caro.CaRoConverter#planEntries(de.unirostock.sems.caro
+	 * .ConversionPlan)
+	 */
+	@Override
+	protected void planEntries (ConversionPlan plan)
+	{
+		for (ArchiveEntry entry : combineArchive.getEntries ())
+		{
+			Path source = entry.getPath ();
+			if (entry.getFormat ().equals (URI_RO_CONV_ANNOTATION))
+				planEntry (plan, source, null, ConversionPlan.Action.REINTEGRATE,
+					entry.getFormat ());
+			else if (!includeFile (source, entry))
+				planEntry (plan, source, null, ConversionPlan.Action.DROP,
+					entry.getFormat ());
+			else
+				planEntry (plan, source, entry.getFilePath (),
+					ConversionPlan.Action.COPY, entry.getFormat ());
+		}
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see de.unirostock.sems.caro.CaRoConverter#discardTargetContainer()
+	 */
+	@Override
+	protected void discardTargetContainer ()
+	{
+		if (researchObject == null)
+			return;
+		try
+		{
+			researchObject.close ();
+		}
+		catch (IOException e)
+		{
+			LOGGER.warn (e, "wasn't able to discard the partial research object of ",
+				sourceFile);
+		}
+		researchObject = null;
+	}
+	
+	
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -481,16 +654,21 @@ public class CaToRo
 			return false;
 		try
 		{
-			Bundles.closeAndSaveBundle (researchObject, target.toPath ());
+			if (!needsRepack () && !writesToStream ())
+				Bundles.closeAndSaveBundle (researchObject, target.toPath ());
+			else
+			{
+				File saved = workspace.createLocation ("CaRoFromCa", ".ro");
+				Bundles.closeAndSaveBundle (researchObject, saved.toPath ());
+				writeTarget (saved, target);
+			}
 			return true;
 		}
 		catch (IOException e)
 		{
-			LOGGER.warn (e, "wasn't able to save research object to ", target);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR,
-				"wasn't able to save research object to " + target + " : "
-					+ e.getMessage ()));
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to save research object to %s : %s", target,
+				e.getMessage ());
 		}
 		return false;
 	}
@@ -18,24 +18,32 @@
  */
 package de.unirostock.sems.caro.converters;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.xml.transform.TransformerException;
 
 import org.apache.taverna.robundle.Bundles;
-import org.apache.taverna.robundle.fs.BundleFileSystemProvider;
 import org.apache.taverna.robundle.manifest.Agent;
 import org.apache.taverna.robundle.manifest.Manifest;
 import org.apache.taverna.robundle.manifest.PathAnnotation;
@@ -45,8 +53,15 @@ import org.jdom2.JDOMException;
 import de.binfalse.bflog.LOGGER;
 import de.binfalse.bfutils.AlphabetIterator;
 import de.unirostock.sems.caro.CaRo;
+import de.unirostock.sems.caro.CaRoCancelledException;
 import de.unirostock.sems.caro.CaRoConverter;
 import de.unirostock.sems.caro.CaRoNotification;
+import de.unirostock.sems.caro.ConversionPlan;
+import de.unirostock.sems.caro.ContainerSniffer;
+import de.unirostock.sems.caro.ContainerSniffer.ContainerType;
+import de.unirostock.sems.caro.VCardIndex;
+import de.unirostock.sems.caro.ZipDirectory;
+import de.unirostock.sems.caro.events.CaRoEvents;
 import de.unirostock.sems.cbarchive.ArchiveEntry;
 import de.unirostock.sems.cbarchive.CombineArchive;
 import de.unirostock.sems.cbarchive.CombineArchiveException;
@@ -55,7 +70,6 @@ import de.unirostock.sems.cbarchive.meta.MetaDataObject;
 import de.unirostock.sems.cbarchive.meta.OmexMetaDataObject;
 import de.unirostock.sems.cbarchive.meta.omex.OmexDescription;
 import de.unirostock.sems.cbarchive.meta.omex.VCard;
-import de.unirostock.sems.cbext.Formatizer;
 
 
 
@@ -68,10 +82,20 @@ public class RoToCa
 	extends CaRoConverter
 {
 	
-	private List<PathAnnotation>	handledAnnotations;
+	/** The annotations that were already converted. */
+	private Set<PathAnnotation>							handledAnnotations;
+	
+	/** The annotations of the RO manifest indexed by what they are about. */
+	private Map<URI, List<PathAnnotation>>	annotationsByAbout;
+	
+	/** The tags marking annotations as omex meta, indexed by the annotation. */
+	private Map<URI, PathAnnotation>				omexTags;
 	
 	/** The temporary location. */
-	private File									temporaryLocation;
+	private File														temporaryLocation;
+	
+	/** An empty file used as a placeholder when streaming entries. */
+	private File														placeholder;
 	
 	
 	/**
@@ -86,6 +110,19 @@ public class RoToCa
 	}
 	
 	
+	/**
+	 * Instantiates a new converter reading the research object from a stream, see
+	 * {@link CaRoConverter#CaRoConverter(InputStream)}.
+	 * 
+	 * @param researchObject
+	 *          the stream of the research object
+	 */
+	public RoToCa (InputStream researchObject)
+	{
+		super (researchObject);
+	}
+	
+	
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -96,21 +133,21 @@ public class RoToCa
 	{
 		try
 		{
-			String mime = Files.probeContentType (sourceFile.toPath ());
-			if (!mime.equals (BundleFileSystemProvider.APPLICATION_VND_WF4EVER_ROBUNDLE_ZIP))
+			ContainerType type = ContainerSniffer.sniff (sourceFile);
+			if (type != ContainerType.RESEARCH_OBJECT)
 			{
-				notifications.add (new CaRoNotification (
-					CaRoNotification.SERVERITY_ERROR, "file at " + sourceFile
-						+ " does not seem to be a research object: wrong mime type : " + mime));
+				report (CaRoNotification.SERVERITY_ERROR,
+					"file at %s does not seem to be a research object: found %s",
+					sourceFile, type);
 				return false;
 			}
 		}
 		catch (IOException e)
 		{
-			LOGGER.error (e, "wasn't able to get mime type of ", sourceFile);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR, "wasn't able to get mime type of "
-					+ sourceFile + " : " + e.getMessage ()));
+			// let the bundle library decide
+			report (CaRoNotification.SERVERITY_WARN, e,
+				"wasn't able to determine the type of %s : %s", sourceFile,
+				e.getMessage ());
 		}
 		try
 		{
@@ -119,12 +156,9 @@ public class RoToCa
 		}
 		catch (IOException e)
 		{
-			LOGGER.error (e, "wasn't able to read the research object at ",
-				sourceFile);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR,
-				"wasn't able to read the combine archive at " + sourceFile + " : "
-					+ e.getMessage ()));
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to read the research object at %s : %s", sourceFile,
+				e.getMessage ());
 		}
 		return false;
 	}
@@ -147,10 +181,9 @@ public class RoToCa
 		}
 		catch (IOException e)
 		{
-			LOGGER.error (e, "wasn't able to close research object ", sourceFile);
-			notifications.add (new CaRoNotification (CaRoNotification.SERVERITY_WARN,
-				"wasn't able to close the research object at " + sourceFile + " : "
-					+ e.getMessage ()));
+			report (CaRoNotification.SERVERITY_WARN, e,
+				"wasn't able to close the research object at %s : %s", sourceFile,
+				e.getMessage ());
 		}
 		return false;
 	}
@@ -164,19 +197,22 @@ public class RoToCa
 	@Override
 	protected boolean convert ()
 	{
-		handledAnnotations = new ArrayList<PathAnnotation> ();
+		handledAnnotations = Collections
+			.newSetFromMap (new IdentityHashMap<PathAnnotation, Boolean> ());
+		placeholder = null;
 		try
 		{
 			// setup empty combine archive
-			temporaryLocation = File.createTempFile ("CaRoFromRo", "container");
-			temporaryLocation.delete ();
+			temporaryLocation = workspace.createLocation ("CaRoFromRo", "container");
 			combineArchive = new CombineArchive (temporaryLocation);
 			HashMap<String, ArchiveEntry> archiveEntries = new HashMap<String, ArchiveEntry> ();
 			
 			// read bundle stuff
 			Manifest roManifest = researchObject.getManifest ();
 			List<PathAnnotation> annotations = roManifest.getAnnotations ();
+			indexAnnotations (annotations);
 			List<PathMetadata> aggregations = roManifest.getAggregates ();
+			List<Payload> payloads = new ArrayList<Payload> ();
 			for (PathMetadata pmd : aggregations)
 			{
 				if (pmd.getFile () != null && Files.isDirectory (pmd.getFile ()))
@@ -192,33 +228,12 @@ public class RoToCa
 						continue;
 				}
 				
-				// extract
-				File tmp = File.createTempFile ("CaRoFromRo", pmd.getFile ()
-					.getFileName ().toString ());
-				tmp.delete ();
-				Files.copy (pmd.getFile (), tmp.toPath ());
-				tmp.deleteOnExit ();
-				
 				// check some special files
 				if (!includeFile (pmd.getFile ()))
 					continue;
 				
-				// import
-				URI format = pmd.getConformsTo ();
-				if (format == null)
-				{
-					format = Formatizer.guessFormat (tmp);
-				}
-				ArchiveEntry entry = combineArchive.addEntry (tmp, pmd.getFile ()
-					.toString (), format);
-				archiveEntries.put (entry.getFilePath (), entry);
-				
-				// respect annotations
-				handleAnnotations (pmd.getFile (), pmd, annotations, entry,
-					archiveEntries);
-				
-				// handle manifest annotations
-				handleCreators (entry, pmd);
+				payloads.add (new Payload (pmd.getFile (), pmd.getFile ().toString (),
+					pmd.getConformsTo (), pmd));
 			}
 			
 			// evolution(s)?
@@ -226,34 +241,88 @@ public class RoToCa
 			{
 				for (Path hist : roManifest.getHistory ())
 				{
-					// extract
-					File tmp = File.createTempFile ("CaRoFromRo", hist.getFileName ()
-						.toString ());
-					tmp.delete ();
-					Files.copy (hist, tmp.toPath ());
-					tmp.deleteOnExit ();
-					
 					// check some special files
 					if (!includeFile (hist))
 						continue;
 					
-					// import
 					URI format = hist.toString ().equals ("evolution.ttl") ? URI_TURTLE_MIME
 						: null;
-					if (format == null)
+					// add it to the .ro directory to indicate, that it is coming from a research object
+					payloads.add (new Payload (hist, "/.ro/" + hist.toString (), format,
+						null));
+				}
+			}
+			
+			// extract files and guess formats -- the payloads are independent of
+			// each other, so this may run concurrently
+			setTotalEntries (payloads.size ());
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>> ();
+			for (final Payload payload : payloads)
+				tasks.add (new Callable<Void> ()
+				{
+					
+					@Override
+					public Void call () throws IOException
 					{
-						format = Formatizer.guessFormat (tmp);
+						checkAborted ();
+						Object event = CaRoEvents.beginEntry ();
+						extract (payload);
+						CaRoEvents.endEntry (event, RoToCa.this, "extract",
+							payload.source, payload.extracted == null ? -1
+								: payload.extracted.length (), payload.format,
+							payload.formatGuessed, false);
+						return null;
 					}
-					// add it to the .ro directory to indicate, that it is coming from a research object
-					ArchiveEntry entry = combineArchive.addEntry (tmp, "/.ro/" + hist.toString (),
-						format);
-					archiveEntries.put (entry.getFilePath (), entry);
+				});
+			execute (tasks);
+			
+			// import -- mutations of the archive happen sequentially
+			for (Payload payload : payloads)
+			{
+				checkAborted ();
+				Object event = CaRoEvents.beginEntry ();
+				register (payload);
+				archiveEntries.put (payload.entry.getFilePath (), payload.entry);
+				
+				boolean metadataParsed = false;
+				if (payload.pmd != null)
+				{
+					// respect annotations
+					metadataParsed = handleAnnotations (payload.source, payload.pmd,
+						payload.entry, archiveEntries);
+					
+					// handle manifest annotations
+					handleCreators (payload.entry, payload.pmd);
 				}
+				CaRoEvents.endEntry (event, this, "metadata", payload.source, -1,
+					payload.format, payload.formatGuessed, metadataParsed);
 			}
 			
+			// copy the contents into the registered entries
+			tasks.clear ();
+			for (final Payload payload : payloads)
+				tasks.add (new Callable<Void> ()
+				{
+					
+					@Override
+					public Void call () throws IOException
+					{
+						checkAborted ();
+						Object event = CaRoEvents.beginEntry ();
+						long size = transfer (payload);
+						CaRoEvents.endEntry (event, RoToCa.this, "transfer",
+							payload.source, size, payload.format, payload.formatGuessed,
+							false);
+						entryConverted ();
+						return null;
+					}
+				});
+			execute (tasks);
+			
 			// other ro meta data
 			String annotationsDir = "/.ro/annotations/";
 			AlphabetIterator alhpa = AlphabetIterator.getLowerCaseIterator ();
+			int annotationNumber = 0;
 			for (PathAnnotation annot : annotations)
 			{
 				if (!handledAnnotations.contains (annot))
@@ -263,23 +332,23 @@ public class RoToCa
 					
 					try
 					{
-						File newAnnotation = Files.createTempFile (
-							"CaRoFromRoConvertedAnnotation", ".fromRo").toFile ();
 						Properties properties = new Properties ();
 						properties.put ("about", annot.getAbout ().toString ());
 						properties.put ("body", annot.getContent ().toString ());
 						if (annot.getUri () != null)
 							properties.put ("uri", annot.getUri ().toString ());
-						FileOutputStream out = new FileOutputStream (newAnnotation);
+						ByteArrayOutputStream out = new ByteArrayOutputStream ();
 						properties.store (out, "conversion from research object");
 						out.close ();
 						
 						// import file
-						String targetName = newAnnotation.getName ().toString ();
+						String targetName = "CaRoFromRoConvertedAnnotation"
+							+ ++annotationNumber + ".fromRo";
 						while (combineArchive.getEntry (annotationsDir + targetName) != null)
 							targetName += alhpa.next ();
-						combineArchive.addEntry (newAnnotation,
+						addEntry (new ByteArrayInputStream (out.toByteArray ()),
 							annotationsDir + targetName, URI_RO_CONV_ANNOTATION);
+						statistics.addAnnotation ();
 						
 						// if the body is a file in the annotations directory we need to
 						// also incluse the file.
@@ -287,20 +356,14 @@ public class RoToCa
 							.startsWith ("/.ro/annotations/"))
 						{
 							String annotation = annot.getContent ().toString ();
-							File tmp = File.createTempFile ("CaRoFromRo", "annotation");
-							tmp.delete ();
-							Files.copy (researchObject.getRoot ().resolve (annotation),
-								tmp.toPath ());
-							combineArchive.addEntry (tmp, annotation, URI_RO_COPY_ANNOTATION);
+							addEntry (researchObject.getRoot ().resolve (annotation),
+								annotation, URI_RO_COPY_ANNOTATION);
 						}
 					}
 					catch (IOException e)
 					{
-						LOGGER.warn (e, "wasn't able to convert annotation about ",
-							annot.getAbout ());
-						notifications.add (new CaRoNotification (
-							CaRoNotification.SERVERITY_WARN,
-							"wasn't able to convert annotation about " + annot.getAbout ()));
+						report (CaRoNotification.SERVERITY_WARN, e,
+							"wasn't able to convert annotation about %s", annot.getAbout ());
 					}
 				}
 			}
@@ -316,64 +379,233 @@ public class RoToCa
 		catch (IOException | JDOMException | ParseException
 			| CombineArchiveException e)
 		{
-			LOGGER.warn (e, "wasn't able to convert research object at ", sourceFile,
-				" into a combine archive");
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR,
-				"wasn't able to convert research object at " + sourceFile
-					+ " into a combine archive : " + e.getMessage ()));
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to convert research object at %s into a combine archive : %s",
+				sourceFile, e.getMessage ());
 		}
 		return false;
 	}
 	
 	
+	/**
+	 * Add a file of the research object to the combine archive. If
+	 * <code>format</code> is <code>null</code> it will be guessed from the
+	 * file's contents.
+	 * 
+	 * @param source
+	 *          the file in the research object
+	 * @param targetName
+	 *          the target name in the combine archive
+	 * @param format
+	 *          the format of the file, may be <code>null</code>
+	 * @return the new archive entry
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private ArchiveEntry addEntry (Path source, String targetName, URI format)
+		throws IOException
+	{
+		Payload payload = new Payload (source, targetName, format, null);
+		extract (payload);
+		register (payload);
+		transfer (payload);
+		return payload.entry;
+	}
+	
+	
+	/**
+	 * Add some generated contents to the combine archive.
+	 * 
+	 * @param in
+	 *          the contents
+	 * @param targetName
+	 *          the target name in the combine archive
+	 * @param format
+	 *          the format of the contents
+	 * @return the new archive entry
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private ArchiveEntry addEntry (InputStream in, String targetName, URI format)
+		throws IOException
+	{
+		if (streamEntries)
+		{
+			ArchiveEntry entry = combineArchive.addEntry (getPlaceholder (),
+				targetName, format);
+			try (OutputStream out = Files.newOutputStream (entry.getPath ()))
+			{
+				statistics.addBytesWritten (copy (in, out));
+			}
+			return entry;
+		}
+		
+		File tmp = workspace.createFile ("CaRoFromRo", "generated");
+		try (OutputStream out = new FileOutputStream (tmp))
+		{
+			statistics.addTemporaryBytes (copy (in, out));
+		}
+		statistics.addBytesWritten (tmp.length ());
+		return combineArchive.addEntry (tmp, targetName, format);
+	}
+	
+	
+	/**
+	 * Extract a payload to a temporary file if necessary. That is the case if
+	 * the format needs to be guessed or if neither streaming nor raw copying is
+	 * enabled.
+	 * 
+	 * @param payload
+	 *          the payload
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private void extract (Payload payload) throws IOException
+	{
+		if ( (streamEntries || isRawCopy ()) && payload.format != null)
+			return;
+		
+		payload.extracted = workspace.createLocation ("CaRoFromRo",
+			payload.source.getFileName ().toString ());
+		copy (payload.source, payload.extracted.toPath ());
+		statistics.addBytesRead (payload.extracted.length ());
+		statistics.addTemporaryBytes (payload.extracted.length ());
+		if (payload.format == null)
+		{
+			payload.format = formatResolver.resolveFormat (payload.extracted);
+			payload.formatGuessed = true;
+			statistics.addFormatGuess ();
+		}
+	}
+	
+	
+	/**
+	 * Register a payload in the combine archive. The entry is created using an
+	 * empty placeholder file, its contents will be copied by
+	 * {@link #transfer(Payload)}.
+	 * 
+	 * @param payload
+	 *          the payload
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private void register (Payload payload) throws IOException
+	{
+		payload.entry = combineArchive.addEntry (getPlaceholder (),
+			payload.targetName, payload.format);
+		setTargetFormat (payload.entry.getPath (), payload.format);
+	}
+	
+	
+	/**
+	 * Copy the contents of a registered payload into the combine archive. If
+	 * raw copying is enabled the compressed bytes are copied when writing the
+	 * archive. Otherwise, if the payload was not extracted, it is streamed
+	 * directly from the research object, falling back to a temporary file if
+	 * streaming fails.
+	 * 
+	 * @param payload
+	 *          the payload
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private long transfer (Payload payload) throws IOException
+	{
+		ZipDirectory.Entry raw = claimRawEntry (payload.source,
+			payload.entry.getPath ());
+		if (raw != null)
+			return raw.getSize ();
+		
+		if (payload.extracted == null)
+		{
+			try
+			{
+				long transferred = transfer (payload.source, payload.entry.getPath ());
+				statistics.addBytesRead (transferred);
+				statistics.addBytesWritten (transferred);
+				return transferred;
+			}
+			catch (CaRoCancelledException e)
+			{
+				throw e;
+			}
+			catch (IOException e)
+			{
+				LOGGER.warn (e, "wasn't able to stream ", payload.source,
+					" -- falling back to a temporary file");
+				payload.extracted = workspace.createLocation ("CaRoFromRo",
+					payload.source.getFileName ().toString ());
+				copy (payload.source, payload.extracted.toPath ());
+				statistics.addBytesRead (payload.extracted.length ());
+				statistics.addTemporaryBytes (payload.extracted.length ());
+			}
+		}
+		long transferred = transfer (payload.extracted.toPath (),
+			payload.entry.getPath ());
+		statistics.addBytesWritten (transferred);
+		return transferred;
+	}
+	
+	
+	/**
+	 * Copy the contents of <code>source</code> to <code>target</code>,
+	 * replacing the current contents of <code>target</code>.
+	 * 
+	 * @param source
+	 *          the source file
+	 * @param target
+	 *          the target file
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private long transfer (Path source, Path target) throws IOException
+	{
+		try (InputStream in = Files.newInputStream (source);
+			OutputStream out = Files.newOutputStream (target))
+		{
+			return copy (in, out);
+		}
+	}
+	
+	
+	/**
+	 * Gets an empty placeholder file to register entries in the combine
+	 * archive.
+	 * 
+	 * @return the placeholder
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private synchronized File getPlaceholder () throws IOException
+	{
+		if (placeholder == null)
+			placeholder = workspace.createFile ("CaRoFromRo", "placeholder");
+		return placeholder;
+	}
+	
+	
 	/**
 	 * Handle a creator -- should that be included in the combine archive meta
 	 * data file?
 	 * 
 	 * @param author
 	 *          the author as stated in the RO manifest
-	 * @param descriptions
-	 *          meta date already available for the entry
+	 * @param known
+	 *          the creators already available for the entry or already chosen to
+	 *          be added
 	 * @param creatorsToAdd
 	 *          the creators to add
 	 */
-	private void handleCreator (Agent author, List<MetaDataObject> descriptions,
+	private void handleCreator (Agent author, VCardIndex known,
 		List<VCard> creatorsToAdd)
 	{
-		if (author != null)
-		{
-			VCard toAdd = agentToVCard (author);
-			boolean addVcard = true;
-			for (MetaDataObject meta : descriptions)
-			{
-				if (!addVcard)
-					break;
-				if (meta instanceof OmexMetaDataObject)
-				{
-					List<VCard> vcards = ((OmexMetaDataObject) meta)
-						.getOmexDescription ().getCreators ();
-					if (vcards != null && vcards.size () > 0)
-					{
-						for (VCard creator : vcards)
-						{
-							if (sameVcard (creator, toAdd))
-							{
-								addVcard = false;
-								break;
-							}
-						}
-					}
-				}
-			}
-			if (addVcard)
-			{
-				for (VCard exists : creatorsToAdd)
-					if (sameVcard (exists, toAdd))
-						return;
-				creatorsToAdd.add (toAdd);
-			}
-		}
+		VCard toAdd = agentToVCard (author);
+		if (toAdd == null || known.contains (toAdd))
+			return;
+		known.add (toAdd);
+		creatorsToAdd.add (toAdd);
 	}
 	
 	
@@ -389,11 +621,20 @@ public class RoToCa
 	{
 		List<MetaDataObject> descriptions = entry.getDescriptions ();
 		List<VCard> creatorsToAdd = new ArrayList<VCard> ();
+		VCardIndex known = new VCardIndex ();
+		for (MetaDataObject meta : descriptions)
+			if (meta instanceof OmexMetaDataObject)
+			{
+				List<VCard> vcards = ((OmexMetaDataObject) meta).getOmexDescription ()
+					.getCreators ();
+				if (vcards != null)
+					known.addAll (vcards);
+			}
 		
-		handleCreator (pmd.getCreatedBy (), descriptions, creatorsToAdd);
+		handleCreator (pmd.getCreatedBy (), known, creatorsToAdd);
 		if (pmd.getAuthoredBy () != null)
 			for (Agent author : pmd.getAuthoredBy ())
-				handleCreator (author, descriptions, creatorsToAdd);
+				handleCreator (author, known, creatorsToAdd);
 		
 		if (creatorsToAdd.size () > 0)
 		{
@@ -419,18 +660,17 @@ public class RoToCa
 	 *          the file
 	 * @param pmd
 	 *          the pmd
-	 * @param annotations
-	 *          the annotations
 	 * @param entry
 	 *          the entry
 	 * @param archiveEntries
 	 *          the archive entries
+	 * @return true, if an OMEX meta data file was parsed
 	 */
-	private void handleAnnotations (Path file, PathMetadata pmd,
-		List<PathAnnotation> annotations, ArchiveEntry entry,
-		HashMap<String, ArchiveEntry> archiveEntries)
+	private boolean handleAnnotations (Path file, PathMetadata pmd,
+		ArchiveEntry entry, HashMap<String, ArchiveEntry> archiveEntries)
 	{
-		List<PathAnnotation> curAnnotations = getAnnotations (pmd, annotations);
+		boolean parsed = false;
+		List<PathAnnotation> curAnnotations = getAnnotations (pmd);
 		for (PathAnnotation annot : curAnnotations)
 		{
 			if (annot.getContent ().equals (URI_MAIN_ENTRY)
@@ -442,7 +682,7 @@ public class RoToCa
 				continue;
 			}
 			
-			if (annotationHasOmexTag (annot, annotations))
+			if (annotationHasOmexTag (annot))
 			{
 				handledAnnotations.add (annot);
 				// copy it to the list of overall annotations
@@ -452,33 +692,59 @@ public class RoToCa
 					Path annoPath = researchObject.getRoot ().resolve (
 						annot.getContent ().toString ());
 					List<String> errors = new ArrayList<String> ();
+					parsed = true;
 					MetaDataFile.readFile (annoPath, archiveEntries, combineArchive,
 						null, null, true, errors);
+					statistics.addAnnotation ();
 					if (errors.size () > 0)
 						for (String err : errors)
 						{
-							LOGGER.warn ("wasn't able to read omex meta file ",
-								annot.getContent (), " in research object at ", sourceFile,
-								" because ", err);
-							notifications
-								.add (new CaRoNotification (CaRoNotification.SERVERITY_WARN,
-									"wasn't able to read omex meta file " + annot.getContent ()
-										+ " in research object at " + sourceFile + " because "
-										+ err));
+							report (CaRoNotification.SERVERITY_WARN,
+								"wasn't able to read omex meta file %s in research object at %s because %s",
+								annot.getContent (), sourceFile, err);
 						}
 				}
 				catch (IOException | ParseException | JDOMException
 					| CombineArchiveException e)
 				{
-					LOGGER.warn (e, "reading meta data file ", annot.getContent (),
-						" in research object at ", sourceFile, " failed");
-					notifications.add (new CaRoNotification (
-						CaRoNotification.SERVERITY_ERROR, "reading meta data file "
-							+ annot.getContent () + " in research object at " + sourceFile
-							+ " failed because: " + e.getMessage ()));
+					report (CaRoNotification.SERVERITY_ERROR, e,
+						"reading meta data file %s in research object at %s failed because: %s",
+						annot.getContent (), sourceFile, e.getMessage ());
 				}
 			}
 		}
+		return parsed;
+	}
+	
+	
+	/**
+	 * Index the annotations of the RO manifest, so that we do not need to scan
+	 * all annotations for every aggregate.
+	 * 
+	 * @param annotations
+	 *          the annotations
+	 */
+	private void indexAnnotations (List<PathAnnotation> annotations)
+	{
+		annotationsByAbout = new HashMap<URI, List<PathAnnotation>> ();
+		omexTags = new HashMap<URI, PathAnnotation> ();
+		for (PathAnnotation annot : annotations)
+		{
+			URI about = annot.getAbout ();
+			if (about == null)
+				continue;
+			List<PathAnnotation> list = annotationsByAbout.get (about);
+			if (list == null)
+			{
+				list = new ArrayList<PathAnnotation> ();
+				annotationsByAbout.put (about, list);
+			}
+			list.add (annot);
+			// is there the flag? only the first one counts
+			if (URI_OMEX_META.equals (annot.getContent ())
+				&& !omexTags.containsKey (about))
+				omexTags.put (about, annot);
+		}
 	}
 	
 	
@@ -487,23 +753,17 @@ public class RoToCa
 	 * 
 	 * @param annotation
 	 *          the annotation
-	 * @param annotations
-	 *          the annotations
 	 * @return true, if successful
 	 */
-	private boolean annotationHasOmexTag (PathAnnotation annotation,
-		List<PathAnnotation> annotations)
+	private boolean annotationHasOmexTag (PathAnnotation annotation)
 	{
-		for (PathAnnotation annot : annotations)
-			// does `annot` describe `annotation`?
-			if (annot.getAbout ().equals (annotation.getUri ()))
-				// is there the flag?
-				if (annot.getContent ().equals (URI_OMEX_META))
-				{
-					handledAnnotations.add (annot);
-					return true;
-				}
-		return false;
+		if (annotation.getUri () == null)
+			return false;
+		PathAnnotation tag = omexTags.get (annotation.getUri ());
+		if (tag == null)
+			return false;
+		handledAnnotations.add (tag);
+		return true;
 	}
 	
 	
@@ -512,19 +772,14 @@ public class RoToCa
 	 * 
 	 * @param pmd
 	 *          the pmd
-	 * @param annotations
-	 *          the annotations
 	 * @return the annotations
 	 */
-	private List<PathAnnotation> getAnnotations (PathMetadata pmd,
-		List<PathAnnotation> annotations)
+	private List<PathAnnotation> getAnnotations (PathMetadata pmd)
 	{
-		List<PathAnnotation> curAnnotations = new ArrayList<PathAnnotation> ();
-		for (PathAnnotation annot : annotations)
-		{
-			if (annot.getAbout ().equals (pmd.getUri ()))
-				curAnnotations.add (annot);
-		}
+		List<PathAnnotation> curAnnotations = annotationsByAbout.get (pmd
+			.getUri ());
+		if (curAnnotations == null)
+			return Collections.emptyList ();
 		return curAnnotations;
 	}
 	
@@ -539,11 +794,9 @@ public class RoToCa
 	private boolean handleRemoteFile (PathMetadata pmd)
 	{
 		// TODO: try to download the file?
-		LOGGER.warn ("skipping manifest entry ", pmd.getUri (),
-			" as it seems to be no local file");
-		notifications.add (new CaRoNotification (CaRoNotification.SERVERITY_WARN,
-			"skipping manifest entry " + pmd.getUri ()
-				+ " as it seems to be no local file"));
+		report (CaRoNotification.SERVERITY_WARN,
+			"skipping manifest entry %s as it seems to be no local file",
+			pmd.getUri ());
 		
 		return false;
 	}
@@ -561,15 +814,84 @@ public class RoToCa
 		for (String path : CA_RESTRICTIONS)
 			if (target.startsWith (path))
 			{
-				notifications.add (new CaRoNotification (
-					CaRoNotification.SERVERITY_WARN, "dropping " + path
-						+ " as this is a special file in combine archives!"));
+				report (CaRoNotification.SERVERITY_WARN,
+					"dropping %s as this is a special file in combine archives!", path);
 				return false;
 			}
 		return true;
 	}
 	
 	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * de.unirostock.sems.caro.CaRoConverter#planEntries(de.unirostock.sems.caro
+	 * .ConversionPlan)
+	 */
+	@Override
+	protected void planEntries (ConversionPlan plan) throws IOException
+	{
+		Manifest roManifest = researchObject.getManifest ();
+		for (PathMetadata pmd : roManifest.getAggregates ())
+		{
+			Path file = pmd.getFile ();
+			if (file != null && Files.isDirectory (file))
+				continue;
+			
+			if (file == null)
+			{
+				handleRemoteFile (pmd);
+				plan.add (new ConversionPlan.Entry (String.valueOf (pmd.getUri ()),
+					null, ConversionPlan.Action.REMOTE, pmd.getConformsTo (), -1, -1));
+			}
+			else if (!includeFile (file))
+				planEntry (plan, file, null, ConversionPlan.Action.DROP,
+					pmd.getConformsTo ());
+			else
+				planEntry (plan, file, file.toString (),
+					pmd.getConformsTo () == null ? ConversionPlan.Action.GUESS_FORMAT
+						: ConversionPlan.Action.COPY, pmd.getConformsTo ());
+		}
+		
+		if (roManifest.getHistory () != null)
+			for (Path hist : roManifest.getHistory ())
+			{
+				if (!includeFile (hist))
+					planEntry (plan, hist, null, ConversionPlan.Action.DROP, null);
+				else if (hist.toString ().equals ("evolution.ttl"))
+					planEntry (plan, hist, "/.ro/" + hist, ConversionPlan.Action.COPY,
+						URI_TURTLE_MIME);
+				else
+					planEntry (plan, hist, "/.ro/" + hist,
+						ConversionPlan.Action.GUESS_FORMAT, null);
+			}
+	}
+	
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see de.unirostock.sems.caro.CaRoConverter#discardTargetContainer()
+	 */
+	@Override
+	protected void discardTargetContainer ()
+	{
+		if (combineArchive == null)
+			return;
+		try
+		{
+			combineArchive.close ();
+		}
+		catch (IOException e)
+		{
+			LOGGER.warn (e, "wasn't able to discard the partial combine archive of ",
+				sourceFile);
+		}
+		combineArchive = null;
+	}
+	
+	
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -584,17 +906,14 @@ public class RoToCa
 		{
 			combineArchive.pack ();
 			combineArchive.close ();
-			Files.createDirectories (target.getParentFile ().toPath ());
-			Files.move (temporaryLocation.toPath (), target.toPath ());
+			writeTarget (temporaryLocation, target);
 			return true;
 		}
 		catch (IOException | TransformerException e)
 		{
-			LOGGER.warn (e, "wasn't able to save combine archive to ", target);
-			notifications.add (new CaRoNotification (
-				CaRoNotification.SERVERITY_ERROR,
-				"wasn't able to save combine archive to " + target + " : "
-					+ e.getMessage ()));
+			report (CaRoNotification.SERVERITY_ERROR, e,
+				"wasn't able to save combine archive to %s : %s", target,
+				e.getMessage ());
 		}
 		return false;
 	}
@@ -613,4 +932,55 @@ public class RoToCa
 		return combineArchive;
 	}
 	
+	
+	/**
+	 * A file of the research object that is to be copied into the combine
+	 * archive.
+	 */
+	private static class Payload
+	{
+		
+		/** The file in the research object. */
+		private Path					source;
+		
+		/** The target name in the combine archive. */
+		private String				targetName;
+		
+		/** The format, may be <code>null</code> until it was guessed. */
+		private URI						format;
+		
+		/** The meta data from the RO manifest, <code>null</code> for history. */
+		private PathMetadata	pmd;
+		
+		/** The temporary copy, if the file had to be extracted. */
+		private File					extracted;
+		
+		/** The registered archive entry. */
+		private ArchiveEntry	entry;
+		
+		/** Was the format guessed from the contents? */
+		private boolean				formatGuessed;
+		
+		
+		/**
+		 * Instantiates a new payload.
+		 * 
+		 * @param source
+		 *          the file in the research object
+		 * @param targetName
+		 *          the target name in the combine archive
+		 * @param format
+		 *          the format, may be <code>null</code>
+		 * @param pmd
+		 *          the meta data from the RO manifest, may be <code>null</code>
+		 */
+		public Payload (Path source, String targetName, URI format,
+			PathMetadata pmd)
+		{
+			this.source = source;
+			this.targetName = targetName;
+			this.format = format;
+			this.pmd = pmd;
+		}
+	}
 }
@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.events;
+
+import java.net.URI;
+
+import de.binfalse.bflog.LOGGER;
+
+
+
+/**
+ * The Class CaRoEvents emits Java Flight Recorder events for conversions. The
+ * events are only created if the running JVM ships the flight recorder API
+ * (<code>jdk.jfr</code>) and a recording enabled them, otherwise all methods
+ * are no-ops. Thus, the conversions and the per-entry work show up in a
+ * recording next to GC and I/O events, without attaching a profiler.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * Object event = CaRoEvents.beginEntry ();
+ * // do the work
+ * CaRoEvents.endEntry (event, ...);
+ * </pre>
+ * 
+ * @author Martin Scharm
+ */
+public class CaRoEvents
+{
+	
+	/** Is the flight recorder API available? */
+	private static final boolean	AVAILABLE	= isFlightRecorderAvailable ();
+	
+	
+	/**
+	 * Checks if the flight recorder API is available.
+	 * 
+	 * @return true, if available
+	 */
+	private static boolean isFlightRecorderAvailable ()
+	{
+		try
+		{
+			Class.forName ("jdk.jfr.Event");
+			return true;
+		}
+		catch (ClassNotFoundException | LinkageError e)
+		{
+			LOGGER.debug ("flight recorder not available, won't emit events");
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Is the flight recorder API available?
+	 * 
+	 * @return true, if events can be emitted
+	 */
+	public static boolean isAvailable ()
+	{
+		return AVAILABLE;
+	}
+	
+	
+	/**
+	 * Begin the event for a phase of a conversion.
+	 * 
+	 * @return the event to pass to
+	 *         {@link #endPhase(Object, Object, Object, String, boolean)}, or
+	 *         <code>null</code> if no event is recorded
+	 */
+	public static Object beginPhase ()
+	{
+		if (!AVAILABLE)
+			return null;
+		return JfrEvents.beginPhase ();
+	}
+	
+	
+	/**
+	 * End and commit the event for a phase of a conversion.
+	 * 
+	 * @param event
+	 *          the event returned by {@link #beginPhase()}
+	 * @param converter
+	 *          the converter
+	 * @param source
+	 *          the source container
+	 * @param phase
+	 *          the phase
+	 * @param success
+	 *          was the phase successful?
+	 */
+	public static void endPhase (Object event, Object converter, Object source,
+		String phase, boolean success)
+	{
+		if (event == null)
+			return;
+		JfrEvents.endPhase (event, converter.getClass ().getSimpleName (),
+			String.valueOf (source), phase, success);
+	}
+	
+	
+	/**
+	 * Begin the event for the work on a single entry.
+	 * 
+	 * @return the event to pass to
+	 *         {@link #endEntry(Object, Object, String, Object, long, URI, boolean, boolean)}
+	 *         , or <code>null</code> if no event is recorded
+	 */
+	public static Object beginEntry ()
+	{
+		if (!AVAILABLE)
+			return null;
+		return JfrEvents.beginEntry ();
+	}
+	
+	
+	/**
+	 * End and commit the event for the work on a single entry.
+	 * 
+	 * @param event
+	 *          the event returned by {@link #beginEntry()}
+	 * @param converter
+	 *          the converter
+	 * @param operation
+	 *          the operation, e.g. copy, extract or metadata
+	 * @param path
+	 *          the path of the entry
+	 * @param size
+	 *          the size of the entry, or -1 if unknown
+	 * @param format
+	 *          the format of the entry, may be <code>null</code>
+	 * @param formatGuessed
+	 *          was the format guessed from the contents?
+	 * @param metadataParsed
+	 *          was meta data parsed?
+	 */
+	public static void endEntry (Object event, Object converter,
+		String operation, Object path, long size, URI format,
+		boolean formatGuessed, boolean metadataParsed)
+	{
+		if (event == null)
+			return;
+		JfrEvents.endEntry (event, converter.getClass ().getSimpleName (),
+			operation, String.valueOf (path), size,
+			format == null ? null : format.toString (), formatGuessed,
+			metadataParsed);
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+
+/**
+ * The Class ConversionPhaseEvent is a Java Flight Recorder event that is
+ * emitted for every phase of a conversion.
+ * 
+ * @author Martin Scharm
+ */
+@Name("de.unirostock.sems.caro.ConversionPhase")
+@Label("Conversion Phase")
+@Category("CaRo")
+@Description("A phase of converting a container")
+public class ConversionPhaseEvent
+	extends jdk.jfr.Event
+{
+	
+	/** The converter. */
+	@Label("Converter")
+	public String		converter;
+	
+	/** The source container. */
+	@Label("Source")
+	public String		source;
+	
+	/** The phase. */
+	@Label("Phase")
+	public String		phase;
+	
+	/** Was the phase successful? */
+	@Label("Success")
+	public boolean	success;
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+
+/**
+ * The Class EntryEvent is a Java Flight Recorder event that is emitted for the
+ * work on a single entry of a container.
+ * 
+ * @author Martin Scharm
+ */
+@Name("de.unirostock.sems.caro.Entry")
+@Label("Entry")
+@Category("CaRo")
+@Description("Processing a single entry of a container")
+public class EntryEvent
+	extends jdk.jfr.Event
+{
+	
+	/** The converter. */
+	@Label("Converter")
+	public String		converter;
+	
+	/** The operation, e.g. copy, extract or metadata. */
+	@Label("Operation")
+	public String		operation;
+	
+	/** The path of the entry. */
+	@Label("Path")
+	public String		path;
+	
+	/** The size of the entry, or -1 if unknown. */
+	@Label("Size")
+	@DataAmount
+	public long			size;
+	
+	/** The format of the entry. */
+	@Label("Format")
+	public String		format;
+	
+	/** Was the format guessed from the contents? */
+	@Label("Format Guessed")
+	public boolean	formatGuessed;
+	
+	/** Was meta data parsed? */
+	@Label("Metadata Parsed")
+	public boolean	metadataParsed;
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro.events;
+
+
+
+/**
+ * The Class JfrEvents creates and commits the Java Flight Recorder events. It
+ * must only be loaded if the flight recorder API is available, see
+ * {@link CaRoEvents}.
+ * 
+ * @author Martin Scharm
+ */
+class JfrEvents
+{
+	
+	/**
+	 * Begin a phase event.
+	 * 
+	 * @return the event, or <code>null</code> if the event is disabled
+	 */
+	static Object beginPhase ()
+	{
+		ConversionPhaseEvent event = new ConversionPhaseEvent ();
+		if (!event.isEnabled ())
+			return null;
+		event.begin ();
+		return event;
+	}
+	
+	
+	/**
+	 * Commit a phase event.
+	 * 
+	 * @param token
+	 *          the event returned by {@link #beginPhase()}
+	 * @param converter
+	 *          the converter
+	 * @param source
+	 *          the source container
+	 * @param phase
+	 *          the phase
+	 * @param success
+	 *          was the phase successful?
+	 */
+	static void endPhase (Object token, String converter, String source,
+		String phase, boolean success)
+	{
+		ConversionPhaseEvent event = (ConversionPhaseEvent) token;
+		event.end ();
+		if (!event.shouldCommit ())
+			return;
+		event.converter = converter;
+		event.source = source;
+		event.phase = phase;
+		event.success = success;
+		event.commit ();
+	}
+	
+	
+	/**
+	 * Begin an entry event.
+	 * 
+	 * @return the event, or <code>null</code> if the event is disabled
+	 */
+	static Object beginEntry ()
+	{
+		EntryEvent event = new EntryEvent ();
+		if (!event.isEnabled ())
+			return null;
+		event.begin ();
+		return event;
+	}
+	
+	
+	/**
+	 * Commit an entry event.
+	 * 
+	 * @param token
+	 *          the event returned by {@link #beginEntry()}
+	 * @param converter
+	 *          the converter
+	 * @param operation
+	 *          the operation
+	 * @param path
+	 *          the path of the entry
+	 * @param size
+	 *          the size of the entry
+	 * @param format
+	 *          the format of the entry
+	 * @param formatGuessed
+	 *          was the format guessed?
+	 * @param metadataParsed
+	 *          was meta data parsed?
+	 */
+	static void endEntry (Object token, String converter, String operation,
+		String path, long size, String format, boolean formatGuessed,
+		boolean metadataParsed)
+	{
+		EntryEvent event = (EntryEvent) token;
+		event.end ();
+		if (!event.shouldCommit ())
+			return;
+		event.converter = converter;
+		event.operation = operation;
+		event.path = path;
+		event.size = size;
+		event.format = format;
+		event.formatGuessed = formatGuessed;
+		event.metadataParsed = metadataParsed;
+		event.commit ();
+	}
+}
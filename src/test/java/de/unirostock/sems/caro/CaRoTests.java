@@ -44,7 +44,7 @@ import de.unirostock.sems.cbarchive.CombineArchive;
  * 
  */
 @RunWith(Suite.class)
-@SuiteClasses({ TestMain.class, TestCaToRo.class, TestRoToCa.class, TestCaRoNotifications.class })
+@SuiteClasses({ TestMain.class, TestCaToRo.class, TestRoToCa.class, TestCaRoNotifications.class, TestContainerGenerator.class, TestCaRoEvents.class, TestCaRoListener.class, TestCaRoCancellation.class, TestCaRoAsync.class, TestCaRoExecutors.class, TestCaRoStreams.class, TestContainerSniffer.class, TestCachingFormatResolver.class, TestRawCopy.class, TestConversionPlan.class, TestContainerInspector.class, TestCompressionPolicy.class })
 public class CaRoTests
 {
 	
@@ -0,0 +1,495 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.taverna.robundle.Bundle;
+import org.apache.taverna.robundle.Bundles;
+import org.apache.taverna.robundle.manifest.Agent;
+import org.apache.taverna.robundle.manifest.Manifest;
+import org.apache.taverna.robundle.manifest.PathAnnotation;
+import org.apache.taverna.robundle.manifest.PathMetadata;
+
+import de.unirostock.sems.cbarchive.ArchiveEntry;
+import de.unirostock.sems.cbarchive.CombineArchive;
+import de.unirostock.sems.cbarchive.meta.OmexMetaDataObject;
+import de.unirostock.sems.cbarchive.meta.omex.OmexDescription;
+import de.unirostock.sems.cbarchive.meta.omex.VCard;
+
+
+
+/**
+ * The Class ContainerGenerator generates synthetic COMBINE archives and
+ * research objects for scale tests and benchmarks.
+ * 
+ * The generator is deterministic: two generators with the same seed and the
+ * same configuration produce containers with the same entries, the same
+ * contents and the same meta data (apart from time stamps written by the
+ * libraries). The shape of the containers can be configured:
+ * <ul>
+ * <li>the number of entries,</li>
+ * <li>the size distribution of the entries -- sizes are log-uniformly
+ * distributed between a minimum and a maximum size, optionally the first
+ * entries are large entries of a fixed size,</li>
+ * <li>the depth and fan-out of the directory tree the entries are stored
+ * in,</li>
+ * <li>the number of main entries,</li>
+ * <li>the meta data density, i.e. the fraction of entries that carry meta
+ * data, and</li>
+ * <li>the annotation fan-out, i.e. the number of meta data objects (in a
+ * COMBINE archive) or annotations (in a research object) attached to every
+ * annotated entry.</li>
+ * </ul>
+ * 
+ * Contents are streamed to disk in chunks, so entries may be larger than the
+ * available memory.
+ * 
+ * @author Martin Scharm
+ */
+public class ContainerGenerator
+{
+	
+	/** The format of the generated entries. */
+	public static final String	ENTRY_FORMAT				= "http://purl.org/NET/mediatypes/text/plain";
+	
+	/** The time stamp used for all generated meta data. */
+	public static final long		TIMESTAMP						= 1420070400000L;
+	
+	/** The seed of this generator. */
+	private long								seed;
+	
+	/** The number of entries. */
+	private int									entries;
+	
+	/** The minimal size of an entry. */
+	private long								minSize;
+	
+	/** The maximal size of an entry. */
+	private long								maxSize;
+	
+	/** The number of large entries. */
+	private int									largeEntries;
+	
+	/** The size of the large entries. */
+	private long								largeSize;
+	
+	/** The depth of the directory tree. */
+	private int									directoryDepth;
+	
+	/** The number of sub-directories per directory. */
+	private int									directoryFanOut;
+	
+	/** The number of main entries. */
+	private int									mainEntries;
+	
+	/** The fraction of entries carrying meta data. */
+	private double							metadataDensity;
+	
+	/** The number of annotations per annotated entry. */
+	private int									annotationFanOut;
+	
+	
+	/**
+	 * Instantiates a new generator. By default it will generate 10 entries of
+	 * 1 KiB in the <code>/data</code> directory, without any meta data.
+	 * 
+	 * @param seed
+	 *          the seed
+	 */
+	public ContainerGenerator (long seed)
+	{
+		this.seed = seed;
+		entries = 10;
+		minSize = 1024;
+		maxSize = 1024;
+		directoryFanOut = 4;
+		annotationFanOut = 1;
+	}
+	
+	
+	/**
+	 * Sets the number of entries.
+	 * 
+	 * @param entries
+	 *          the number of entries
+	 */
+	public void setEntries (int entries)
+	{
+		this.entries = entries;
+	}
+	
+	
+	/**
+	 * Gets the number of entries.
+	 * 
+	 * @return the number of entries
+	 */
+	public int getEntries ()
+	{
+		return entries;
+	}
+	
+	
+	/**
+	 * Sets the size distribution of the entries. Sizes will be distributed
+	 * log-uniformly between <code>minSize</code> and <code>maxSize</code>.
+	 * 
+	 * @param minSize
+	 *          the minimal size in bytes
+	 * @param maxSize
+	 *          the maximal size in bytes
+	 */
+	public void setSizes (long minSize, long maxSize)
+	{
+		if (minSize < 0 || maxSize < minSize)
+			throw new IllegalArgumentException ("invalid size range " + minSize
+				+ " - " + maxSize);
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+	}
+	
+	
+	/**
+	 * Make the first <code>count</code> entries large entries of a fixed size.
+	 * 
+	 * @param count
+	 *          the number of large entries
+	 * @param size
+	 *          the size of every large entry in bytes
+	 */
+	public void setLargeEntries (int count, long size)
+	{
+		this.largeEntries = count;
+		this.largeSize = size;
+	}
+	
+	
+	/**
+	 * Sets the shape of the directory tree. Entries are spread over the leaves
+	 * of a tree of <code>depth</code> levels below <code>/data</code>, every
+	 * directory having <code>fanOut</code> sub-directories.
+	 * 
+	 * @param depth
+	 *          the depth of the tree, 0 to store all entries in
+	 *          <code>/data</code>
+	 * @param fanOut
+	 *          the number of sub-directories per directory
+	 */
+	public void setDirectories (int depth, int fanOut)
+	{
+		if (fanOut < 1)
+			throw new IllegalArgumentException ("fan-out needs to be positive");
+		this.directoryDepth = depth;
+		this.directoryFanOut = fanOut;
+	}
+	
+	
+	/**
+	 * Sets the number of main entries.
+	 * 
+	 * @param mainEntries
+	 *          the number of main entries
+	 */
+	public void setMainEntries (int mainEntries)
+	{
+		this.mainEntries = mainEntries;
+	}
+	
+	
+	/**
+	 * Sets the meta data density.
+	 * 
+	 * @param metadataDensity
+	 *          the fraction of entries carrying meta data, between 0 and 1
+	 */
+	public void setMetadataDensity (double metadataDensity)
+	{
+		this.metadataDensity = metadataDensity;
+	}
+	
+	
+	/**
+	 * Sets the annotation fan-out.
+	 * 
+	 * @param annotationFanOut
+	 *          the number of meta data objects/annotations per annotated entry
+	 */
+	public void setAnnotationFanOut (int annotationFanOut)
+	{
+		this.annotationFanOut = annotationFanOut;
+	}
+	
+	
+	/**
+	 * Gets the path of an entry.
+	 * 
+	 * @param entry
+	 *          the number of the entry
+	 * @return the path, starting with a <code>/</code>
+	 */
+	public String getEntryName (int entry)
+	{
+		StringBuilder name = new StringBuilder ("/data");
+		int node = entry;
+		for (int level = 0; level < directoryDepth; level++)
+		{
+			name.append ("/d").append (node % directoryFanOut);
+			node /= directoryFanOut;
+		}
+		return name.append ("/entry").append (entry).append (".txt").toString ();
+	}
+	
+	
+	/**
+	 * Generate a COMBINE archive. An existing file at <code>target</code> will
+	 * be replaced.
+	 * 
+	 * @param target
+	 *          the location of the archive
+	 * @return the archive file
+	 * @throws Exception
+	 *           if the archive cannot be generated
+	 */
+	public File generateCombineArchive (File target) throws Exception
+	{
+		Files.deleteIfExists (target.toPath ());
+		Random random = new Random (seed);
+		Path content = createScratchFile (target);
+		CombineArchive archive = new CombineArchive (target, true);
+		try
+		{
+			URI format = new URI (ENTRY_FORMAT);
+			for (int i = 0; i < entries; i++)
+			{
+				long size = nextSize (i, random);
+				writeContent (content, i, size);
+				ArchiveEntry entry = archive.addEntry (content.toFile (),
+					getEntryName (i), format, i < mainEntries);
+				if (random.nextDouble () < metadataDensity)
+					for (int j = 0; j < annotationFanOut; j++)
+						entry.addDescription (new OmexMetaDataObject (new OmexDescription (
+							createVCard (i, j), new Date (TIMESTAMP), "generated entry " + i
+								+ " description " + j)));
+			}
+			archive.pack ();
+		}
+		finally
+		{
+			archive.close ();
+			Files.deleteIfExists (content);
+		}
+		return target;
+	}
+	
+	
+	/**
+	 * Generate a research object. An existing file at <code>target</code> will
+	 * be replaced.
+	 * 
+	 * @param target
+	 *          the location of the research object
+	 * @return the research object file
+	 * @throws Exception
+	 *           if the research object cannot be generated
+	 */
+	public File generateResearchObject (File target) throws Exception
+	{
+		Files.deleteIfExists (target.toPath ());
+		Random random = new Random (seed);
+		Path content = createScratchFile (target);
+		Bundle bundle = Bundles.createBundle ();
+		try
+		{
+			Manifest manifest = bundle.getManifest ();
+			List<PathAnnotation> annotations = manifest.getAnnotations ();
+			Path annotationsDir = bundle.getRoot ().resolve ("/.ro/annotations");
+			Files.createDirectories (annotationsDir);
+			for (int i = 0; i < entries; i++)
+			{
+				long size = nextSize (i, random);
+				writeContent (content, i, size);
+				Path path = bundle.getRoot ().resolve (getEntryName (i));
+				Files.createDirectories (path.getParent ());
+				Files.copy (content, path);
+				
+				PathMetadata pmd = manifest.getAggregation (path);
+				pmd.setMediatype ("text/plain");
+				pmd.setCreatedOn (FileTime.fromMillis (TIMESTAMP));
+				if (i < mainEntries)
+				{
+					PathAnnotation tag = new PathAnnotation ();
+					tag.setAbout (path);
+					tag.setContent (CaRoConverter.URI_MAIN_ENTRY);
+					annotations.add (tag);
+				}
+				if (random.nextDouble () < metadataDensity)
+				{
+					pmd.setCreatedBy (createAgent (i, 0));
+					List<Agent> authors = new ArrayList<Agent> ();
+					for (int j = 0; j < annotationFanOut; j++)
+					{
+						authors.add (createAgent (i, j));
+						Path body = annotationsDir.resolve ("generated-" + i + "-" + j
+							+ ".txt");
+						Files.write (body, ("generated entry " + i + " annotation " + j)
+							.getBytes (StandardCharsets.UTF_8));
+						PathAnnotation annotation = new PathAnnotation ();
+						annotation.setAbout (path);
+						annotation.setContent (body);
+						annotation.generateAnnotationId ();
+						annotations.add (annotation);
+					}
+					pmd.setAuthoredBy (authors);
+				}
+			}
+			Bundles.closeAndSaveBundle (bundle, target.toPath ());
+		}
+		finally
+		{
+			Files.deleteIfExists (content);
+		}
+		return target;
+	}
+	
+	
+	/**
+	 * Draw the size of the next entry.
+	 * 
+	 * @param entry
+	 *          the number of the entry
+	 * @param random
+	 *          the random number generator
+	 * @return the size in bytes
+	 */
+	private long nextSize (int entry, Random random)
+	{
+		// always draw to keep the sequence independent of the large entries
+		double r = random.nextDouble ();
+		if (entry < largeEntries)
+			return largeSize;
+		if (minSize == maxSize)
+			return minSize;
+		double min = Math.log (minSize + 1);
+		double max = Math.log (maxSize + 1);
+		return Math.min (maxSize,
+			Math.max (minSize, (long) Math.exp (min + r * (max - min)) - 1));
+	}
+	
+	
+	/**
+	 * Creates a VCard for the meta data of an entry.
+	 * 
+	 * @param entry
+	 *          the number of the entry
+	 * @param annotation
+	 *          the number of the annotation
+	 * @return the VCard
+	 */
+	private VCard createVCard (int entry, int annotation)
+	{
+		return new VCard ("Family" + annotation, "Given" + entry, "author"
+			+ annotation + "@example.org", "Generator");
+	}
+	
+	
+	/**
+	 * Creates an RO agent for the meta data of an entry.
+	 * 
+	 * @param entry
+	 *          the number of the entry
+	 * @param annotation
+	 *          the number of the annotation
+	 * @return the agent
+	 * @throws URISyntaxException
+	 *           the URI syntax exception
+	 */
+	private Agent createAgent (int entry, int annotation)
+		throws URISyntaxException
+	{
+		Agent agent = new Agent ("Given" + entry + " Family" + annotation);
+		agent.setUri (new URI ("mailto:author" + annotation + "@example.org"));
+		return agent;
+	}
+	
+	
+	/**
+	 * Creates a scratch file next to the target.
+	 * 
+	 * @param target
+	 *          the target
+	 * @return the scratch file
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private Path createScratchFile (File target) throws IOException
+	{
+		File dir = target.getAbsoluteFile ().getParentFile ();
+		Files.createDirectories (dir.toPath ());
+		return Files.createTempFile (dir.toPath (), "generator", ".txt");
+	}
+	
+	
+	/**
+	 * Write the content of an entry. The content only depends on the seed and
+	 * the number of the entry.
+	 * 
+	 * @param file
+	 *          the file to write to
+	 * @param entry
+	 *          the number of the entry
+	 * @param size
+	 *          the size in bytes
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private void writeContent (Path file, int entry, long size)
+		throws IOException
+	{
+		Random random = new Random (seed * 31 + entry);
+		byte[] buffer = new byte[64 * 1024];
+		OutputStream out = Files.newOutputStream (file);
+		try
+		{
+			while (size > 0)
+			{
+				random.nextBytes (buffer);
+				int len = (int) Math.min (buffer.length, size);
+				out.write (buffer, 0, len);
+				size -= len;
+			}
+		}
+		finally
+		{
+			out.close ();
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCaRoAsync
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Test asynchronous conversions on the shared executor.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testSharedExecutor () throws Exception
+	{
+		CaToRo caro = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		RoToCa roca = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+		File roTarget = new File (folder.getRoot (), "example.ro");
+		File caTarget = new File (folder.getRoot (), "metatests.omex");
+		CompletableFuture<ConversionResult> first = caro.convertToAsync (roTarget);
+		CompletableFuture<ConversionResult> second = roca.convertToAsync (caTarget);
+		CompletableFuture.allOf (first, second).get (1, TimeUnit.MINUTES);
+		
+		ConversionResult result = first.get ();
+		assertTrue ("converting did fail", result.isSuccessful ());
+		assertSame ("expected the converter", caro, result.getConverter ());
+		assertEquals ("expected the target", roTarget, result.getTarget ());
+		assertTrue ("expected a target", roTarget.exists ());
+		assertFalse ("didn't expect errors", result.hasErrors ());
+		assertSame ("expected the statistics of the conversion",
+			caro.getStatistics (), result.getStatistics ());
+		assertTrue ("expected some entries",
+			result.getStatistics ().getEntries () > 0);
+		
+		result = second.get ();
+		assertTrue ("converting did fail", result.isSuccessful ());
+		assertTrue ("expected warnings", result.hasWarnings ());
+		assertEquals ("expected the notifications of the converter",
+			roca.getNotifications (), result.getNotifications ());
+		assertTrue ("expected a target", caTarget.exists ());
+	}
+	
+	
+	/**
+	 * Test that failing conversions complete normally.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testFailure () throws Exception
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor ();
+		try
+		{
+			File target = new File (folder.getRoot (), "fail.omex");
+			ConversionResult result = new RoToCa (CaRoTests.CA_EXAMPLE1)
+				.convertToAsync (target, executor).get (1, TimeUnit.MINUTES);
+			assertFalse ("converting should fail", result.isSuccessful ());
+			assertTrue ("expected errors", result.hasErrors ());
+			assertFalse ("didn't expect a target", target.exists ());
+		}
+		finally
+		{
+			executor.shutdown ();
+		}
+	}
+	
+	
+	/**
+	 * Test that cancelling the future aborts the conversion.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCancel () throws Exception
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor ();
+		final CountDownLatch latch = new CountDownLatch (1);
+		try
+		{
+			// block the executor until the conversion was cancelled
+			executor.submit (new Runnable ()
+			{
+				
+				@Override
+				public void run ()
+				{
+					try
+					{
+						latch.await ();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread ().interrupt ();
+					}
+				}
+			});
+			CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			File target = new File (folder.getRoot (), "cancelled.ro");
+			CompletableFuture<ConversionResult> result = conv.convertToAsync (
+				target, executor);
+			assertTrue ("expected to cancel the conversion", result.cancel (true));
+			latch.countDown ();
+			executor.shutdown ();
+			assertTrue ("expected executor to finish",
+				executor.awaitTermination (1, TimeUnit.MINUTES));
+			
+			assertFalse ("didn't expect a target", target.exists ());
+			assertFalse ("converter shouldn't stay aborted", conv.isAborted ());
+			assertFalse ("token shouldn't be cancelled",
+				conv.getCancellationToken ().isCancelled ());
+		}
+		finally
+		{
+			latch.countDown ();
+			executor.shutdownNow ();
+		}
+	}
+	
+	
+	/**
+	 * Test that cancelling a running conversion neither affects later
+	 * conversions of the same converter nor converters sharing its token.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCancelRunning () throws Exception
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor ();
+		final CountDownLatch started = new CountDownLatch (1);
+		final CountDownLatch cancelled = new CountDownLatch (1);
+		final AtomicBoolean block = new AtomicBoolean (true);
+		try
+		{
+			CancellationToken token = new CancellationToken ();
+			CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			CaToRo sibling = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			conv.setCancellationToken (token);
+			sibling.setCancellationToken (token);
+			// hold the conversion after the first entry until it was cancelled
+			conv.addListener (new CaRoListener ()
+			{
+				
+				@Override
+				public void notified (CaRoConverter converter,
+					CaRoNotification notification)
+				{
+				}
+				
+				
+				@Override
+				public void progress (CaRoConverter converter, long entries,
+					long totalEntries, long bytes)
+				{
+					if (!block.getAndSet (false))
+						return;
+					started.countDown ();
+					try
+					{
+						cancelled.await ();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread ().interrupt ();
+					}
+				}
+			});
+			
+			File target = new File (folder.getRoot (), "cancelled.ro");
+			CompletableFuture<ConversionResult> result = conv.convertToAsync (
+				target, executor);
+			assertTrue ("conversion didn't start",
+				started.await (1, TimeUnit.MINUTES));
+			assertTrue ("expected to cancel the conversion", result.cancel (true));
+			assertTrue ("expected the running conversion to be aborted",
+				conv.isAborted ());
+			assertFalse ("sibling shouldn't be aborted", sibling.isAborted ());
+			cancelled.countDown ();
+			executor.shutdown ();
+			assertTrue ("expected executor to finish",
+				executor.awaitTermination (1, TimeUnit.MINUTES));
+			assertFalse ("didn't expect a target", target.exists ());
+			assertFalse ("token shouldn't be cancelled", token.isCancelled ());
+			assertTrue ("expected the cancelled run to report errors",
+				conv.hasErrors ());
+			
+			File siblingTarget = new File (folder.getRoot (), "sibling.ro");
+			assertTrue ("sibling should convert", sibling.convertTo (siblingTarget));
+			assertTrue ("expected a target", siblingTarget.exists ());
+			
+			ConversionResult again = conv.convertToAsync (target).get (1,
+				TimeUnit.MINUTES);
+			assertTrue ("converter should run again", again.isSuccessful ());
+			assertTrue ("expected a target", target.exists ());
+			assertFalse ("didn't expect the errors of the cancelled run",
+				again.hasErrors ());
+			
+			// the result keeps the notifications of its own run
+			conv.setTimeout (1, TimeUnit.NANOSECONDS);
+			assertFalse ("expected conversion to time out", conv.convertTo (new File (
+				folder.getRoot (), "timeout.ro")));
+			assertTrue ("expected errors", conv.hasErrors ());
+			assertFalse ("didn't expect the errors of a later run",
+				again.hasErrors ());
+		}
+		finally
+		{
+			cancelled.countDown ();
+			executor.shutdownNow ();
+		}
+	}
+}
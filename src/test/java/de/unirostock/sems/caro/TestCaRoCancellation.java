@@ -0,0 +1,242 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCaRoCancellation
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Test cancellation tokens.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testToken () throws Exception
+	{
+		CancellationToken token = new CancellationToken ();
+		assertFalse ("new token shouldn't be cancelled", token.isCancelled ());
+		assertNull ("new token shouldn't have a reason", token.getReason ());
+		token.check ();
+		
+		token.cancel ("first");
+		token.cancel ("second");
+		assertTrue ("expected token to be cancelled", token.isCancelled ());
+		assertEquals ("expected the first reason", "first", token.getReason ());
+		try
+		{
+			token.check ();
+			fail ("expected cancelled token to throw");
+		}
+		catch (CaRoCancelledException e)
+		{
+			assertEquals ("expected the reason as message", "first",
+				e.getMessage ());
+		}
+		
+		token = new CancellationToken (1, TimeUnit.HOURS);
+		assertFalse ("deadline shouldn't have passed", token.isCancelled ());
+		token.setDeadline (0, TimeUnit.NANOSECONDS);
+		assertTrue ("expected deadline to have passed", token.isCancelled ());
+		
+		CancellationToken parent = new CancellationToken ();
+		CancellationToken child = new CancellationToken (parent);
+		CancellationToken sibling = new CancellationToken (parent);
+		child.cancel ("child");
+		assertTrue ("expected child to be cancelled", child.isCancelled ());
+		assertFalse ("parent shouldn't be cancelled", parent.isCancelled ());
+		assertFalse ("sibling shouldn't be cancelled", sibling.isCancelled ());
+		parent.cancel ("parent");
+		assertEquals ("expected the reason of the child", "child",
+			child.getReason ());
+		assertEquals ("expected the reason of the parent", "parent",
+			sibling.getReason ());
+	}
+	
+	
+	/**
+	 * Test that a cancelled token stops conversions in both directions, without
+	 * leaving any files.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCancelledToken () throws Exception
+	{
+		CancellationToken token = new CancellationToken ();
+		token.cancel ();
+		File workspaces = folder.newFolder ("workspaces");
+		
+		CaRoConverter conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setCancellationToken (token);
+		conv.setTemporaryRoot (workspaces);
+		File target = new File (folder.getRoot (), "example.ro");
+		assertFalse ("expected conversion to fail", conv.convertTo (target));
+		assertTrue ("expected converter to be aborted", conv.isAborted ());
+		assertTrue ("expected errors", conv.hasErrors ());
+		assertFalse ("didn't expect a target", target.exists ());
+		assertNull ("expected research object to be discarded",
+			((CaToRo) conv).getResearchObject ());
+		
+		conv = new RoToCa (CaRoTests.RO_EXAMPLE1);
+		conv.setCancellationToken (token);
+		conv.setTemporaryRoot (workspaces);
+		target = new File (folder.getRoot (), "example.omex");
+		assertFalse ("expected conversion to fail", conv.convertTo (target));
+		assertTrue ("expected errors", conv.hasErrors ());
+		assertFalse ("didn't expect a target", target.exists ());
+		assertNull ("expected combine archive to be discarded",
+			((RoToCa) conv).getCombineArchive ());
+		
+		assertEquals ("expected workspaces to be removed", 0,
+			workspaces.list ().length);
+	}
+	
+	
+	/**
+	 * Test that a conversion failing for other reasons than a cancellation
+	 * discards the target container as well.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testFailedConversion () throws Exception
+	{
+		File workspaces = folder.newFolder ("workspaces");
+		// fail after the combine archive was created
+		RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE1)
+		{
+			
+			@Override
+			protected boolean convert ()
+			{
+				super.convert ();
+				return false;
+			}
+		};
+		conv.setTemporaryRoot (workspaces);
+		File target = new File (folder.getRoot (), "failed.omex");
+		assertFalse ("expected conversion to fail", conv.convertTo (target));
+		assertFalse ("didn't expect the converter to be aborted",
+			conv.isAborted ());
+		assertTrue ("expected errors", conv.hasErrors ());
+		assertFalse ("didn't expect a target", target.exists ());
+		assertNull ("expected combine archive to be discarded",
+			conv.getCombineArchive ());
+		assertEquals ("expected workspaces to be removed", 0,
+			workspaces.list ().length);
+	}
+	
+	
+	/**
+	 * Test that conversions stop while copying a large entry.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCancelWhileCopying () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (11);
+		generator.setEntries (1);
+		generator.setLargeEntries (1, 4 * 1024 * 1024);
+		File ca = generator.generateCombineArchive (folder.newFile ("large.omex"));
+		
+		// a token that is cancelled after a few checks, which happens in the
+		// middle of copying the entry
+		final AtomicInteger checks = new AtomicInteger ();
+		CancellationToken token = new CancellationToken ()
+		{
+			
+			@Override
+			public String getReason ()
+			{
+				if (checks.incrementAndGet () > 5)
+					cancel ();
+				return super.getReason ();
+			}
+		};
+		
+		CaToRo conv = new CaToRo (ca);
+		conv.setCancellationToken (token);
+		File target = new File (folder.getRoot (), "large.ro");
+		assertFalse ("expected conversion to fail", conv.convertTo (target));
+		assertTrue ("expected converter to be aborted", conv.isAborted ());
+		assertEquals ("didn't expect a finished entry", 0, conv.getStatistics ()
+			.getEntries ());
+		assertTrue ("expected copying to stop early", conv.getStatistics ()
+			.getBytesWritten () < 4 * 1024 * 1024);
+		assertFalse ("didn't expect a target", target.exists ());
+	}
+	
+	
+	/**
+	 * Test the time limit of conversions.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testTimeout () throws Exception
+	{
+		CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setTimeout (1, TimeUnit.NANOSECONDS);
+		File target = new File (folder.getRoot (), "timeout.ro");
+		assertFalse ("expected conversion to time out", conv.convertTo (target));
+		assertTrue ("expected converter to be aborted", conv.isAborted ());
+		assertFalse ("didn't expect a target", target.exists ());
+		
+		// the limit applies to every conversion
+		conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setTimeout (1, TimeUnit.HOURS);
+		assertTrue ("converting did fail",
+			conv.convertTo (new File (folder.getRoot (), "notimeout.ro")));
+		assertFalse ("didn't expect converter to be aborted", conv.isAborted ());
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+import de.unirostock.sems.caro.events.CaRoEvents;
+import de.unirostock.sems.caro.events.ConversionPhaseEvent;
+import de.unirostock.sems.caro.events.EntryEvent;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCaRoEvents
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Record the events of a conversion.
+	 * 
+	 * @param conv
+	 *          the converter
+	 * @param target
+	 *          the target of the conversion
+	 * @return the recorded events
+	 * @throws Exception
+	 *           the exception
+	 */
+	private List<RecordedEvent> record (CaRoConverter conv, File target)
+		throws Exception
+	{
+		Path dump = folder.newFile ().toPath ();
+		try (Recording recording = new Recording ())
+		{
+			recording.enable (ConversionPhaseEvent.class);
+			recording.enable (EntryEvent.class);
+			recording.start ();
+			assertTrue ("converting failed", conv.convertTo (target));
+			recording.stop ();
+			recording.dump (dump);
+		}
+		return RecordingFile.readAllEvents (dump);
+	}
+	
+	
+	/**
+	 * Test the flight recorder events.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testEvents () throws Exception
+	{
+		if (!CaRoEvents.isAvailable ())
+			return;
+		
+		List<RecordedEvent> events = record (new RoToCa (
+			CaRoTests.RO_EXAMPLE1), new File (folder.getRoot (), "events.omex"));
+		Set<String> phases = new HashSet<String> ();
+		Set<String> operations = new HashSet<String> ();
+		boolean guessed = false;
+		for (RecordedEvent event : events)
+		{
+			String name = event.getEventType ().getName ();
+			if (name.equals ("de.unirostock.sems.caro.ConversionPhase"))
+			{
+				assertEquals ("unexpected converter", "RoToCa",
+					event.getString ("converter"));
+				assertTrue ("phase failed", event.getBoolean ("success"));
+				phases.add (event.getString ("phase"));
+			}
+			else if (name.equals ("de.unirostock.sems.caro.Entry"))
+			{
+				operations.add (event.getString ("operation"));
+				guessed |= event.getBoolean ("formatGuessed");
+			}
+		}
+		assertEquals ("expected an event per phase", 4, phases.size ());
+		assertTrue ("expected extract events", operations.contains ("extract"));
+		assertTrue ("expected transfer events", operations.contains ("transfer"));
+		assertTrue ("expected metadata events", operations.contains ("metadata"));
+		assertTrue ("expected format guesses", guessed);
+		
+		events = record (new CaToRo (CaRoTests.CA_EXAMPLE1), new File (
+			folder.getRoot (), "events.ro"));
+		long copies = 0;
+		for (RecordedEvent event : events)
+			if (event.getEventType ().getName ()
+				.equals ("de.unirostock.sems.caro.Entry")
+				&& event.getString ("operation").equals ("copy"))
+			{
+				assertTrue ("expected size of copied entry",
+					event.getLong ("size") >= 0);
+				copies++;
+			}
+		assertTrue ("expected copy events", copies > 0);
+	}
+}
@@ -0,0 +1,390 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCaRoExecutors
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Test that the virtual thread executor doesn't bound the number of
+	 * concurrent tasks, no matter if virtual threads are supported.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testVirtualThreadExecutor () throws Exception
+	{
+		int tasks = 100;
+		final CountDownLatch started = new CountDownLatch (tasks);
+		final CountDownLatch release = new CountDownLatch (1);
+		ExecutorService executor = CaRoExecutors
+			.newVirtualThreadExecutor ("CaRo-test");
+		try
+		{
+			for (int i = 0; i < tasks; i++)
+				executor.submit (new Runnable ()
+				{
+					
+					@Override
+					public void run ()
+					{
+						started.countDown ();
+						try
+						{
+							release.await ();
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread ().interrupt ();
+						}
+					}
+				});
+			assertTrue ("expected all tasks to run concurrently",
+				started.await (1, TimeUnit.MINUTES));
+		}
+		finally
+		{
+			release.countDown ();
+			executor.shutdown ();
+		}
+		assertTrue ("expected executor to finish",
+			executor.awaitTermination (1, TimeUnit.MINUTES));
+	}
+	
+	
+	/**
+	 * Test processing entries in virtual threads.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testVirtualEntries () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (13);
+		generator.setEntries (25);
+		File ca = generator.generateCombineArchive (folder.newFile ("gen.omex"));
+		
+		CaToRo sequential = new CaToRo (ca);
+		assertTrue ("converting did fail",
+			sequential.convertTo (new File (folder.getRoot (), "sequential.ro")));
+		
+		CaToRo conv = new CaToRo (ca);
+		conv.setParallelism (4);
+		conv.setVirtualThreads (true);
+		assertTrue ("expected virtual threads", conv.isVirtualThreads ());
+		assertTrue ("converting did fail",
+			conv.convertTo (new File (folder.getRoot (), "virtual.ro")));
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		assertEquals ("expected the same entries", sequential.getStatistics ()
+			.getEntries (), conv.getStatistics ().getEntries ());
+		assertEquals ("expected the same bytes", sequential.getStatistics ()
+			.getBytesWritten (), conv.getStatistics ().getBytesWritten ());
+	}
+	
+	
+	/**
+	 * Test that a failing entry doesn't leave the other entries running: tasks
+	 * that already started are waited for, without being interrupted, and
+	 * tasks that didn't start are skipped.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testFailingEntry () throws Exception
+	{
+		testFailingEntry (false);
+		testFailingEntry (true);
+	}
+	
+	
+	/**
+	 * Let the first of some entries fail while others are still copying. With
+	 * virtual threads the entries hold permits, and the failing entry gives
+	 * back its permit only after its failure was recorded. Entries that start
+	 * after that point must be skipped. Without virtual threads there is no
+	 * such point to wait for, so only the running entries are checked.
+	 * 
+	 * @param virtual
+	 *          should the entries be processed in virtual threads?
+	 * @throws Exception
+	 *           the exception
+	 */
+	private void testFailingEntry (final boolean virtual) throws Exception
+	{
+		final int running = 3;
+		final int waiting = 10;
+		final CountDownLatch started = new CountDownLatch (running);
+		final CountDownLatch failing = new CountDownLatch (1);
+		final AtomicReference<Thread> failer = new AtomicReference<Thread> ();
+		final AtomicInteger finished = new AtomicInteger ();
+		final AtomicInteger interrupted = new AtomicInteger ();
+		final AtomicInteger executed = new AtomicInteger ();
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>> ();
+		tasks.add (new Callable<Integer> ()
+		{
+			
+			@Override
+			public Integer call () throws Exception
+			{
+				failer.set (Thread.currentThread ());
+				started.await ();
+				if (!virtual)
+					failing.countDown ();
+				throw new IOException ("entry failed");
+			}
+		});
+		for (int i = 0; i < running; i++)
+			tasks.add (new Callable<Integer> ()
+			{
+				
+				@Override
+				public Integer call () throws Exception
+				{
+					started.countDown ();
+					try
+					{
+						// still copying when the first entry fails
+						failing.await ();
+					}
+					catch (InterruptedException e)
+					{
+						interrupted.incrementAndGet ();
+					}
+					return finished.incrementAndGet ();
+				}
+			});
+		for (int i = 0; i < waiting; i++)
+			tasks.add (new Callable<Integer> ()
+			{
+				
+				@Override
+				public Integer call () throws Exception
+				{
+					// entries running before the failure are fine
+					if (failing.getCount () > 0)
+						return 0;
+					return executed.incrementAndGet ();
+				}
+			});
+		Semaphore permits = new Semaphore (running + 1)
+		{
+			
+			private static final long	serialVersionUID	= 1L;
+			
+			
+			@Override
+			public void release ()
+			{
+				super.release ();
+				if (Thread.currentThread () == failer.get ())
+					failing.countDown ();
+			}
+		};
+		
+		CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setParallelism (running + 1);
+		conv.setVirtualThreads (virtual);
+		conv.setEntryPermits (permits);
+		try
+		{
+			conv.execute (tasks);
+			fail ("expected the failure of the first entry");
+		}
+		catch (IOException e)
+		{
+			assertEquals ("unexpected failure", "entry failed", e.getMessage ());
+		}
+		assertEquals ("expected the running entries to finish", running,
+			finished.get ());
+		assertEquals ("didn't expect entries to be interrupted", 0,
+			interrupted.get ());
+		if (virtual)
+			assertEquals ("expected the waiting entries to be skipped", 0,
+				executed.get ());
+	}
+	
+	
+	/**
+	 * Test that conversions wait for a permit to open containers.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testContainerPermits () throws Exception
+	{
+		final CountDownLatch waiting = new CountDownLatch (1);
+		Semaphore permits = new Semaphore (0)
+		{
+			
+			private static final long	serialVersionUID	= 1L;
+			
+			
+			@Override
+			public void acquire () throws InterruptedException
+			{
+				waiting.countDown ();
+				super.acquire ();
+			}
+		};
+		CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setContainerPermits (permits);
+		CompletableFuture<ConversionResult> result = conv
+			.convertToAsync (new File (folder.getRoot (), "example.ro"));
+		
+		assertTrue ("expected the conversion to wait for a permit",
+			waiting.await (1, TimeUnit.MINUTES));
+		assertFalse ("conversion shouldn't start without a permit",
+			result.isDone ());
+		
+		permits.release ();
+		assertTrue ("converting did fail", result.get (1, TimeUnit.MINUTES)
+			.isSuccessful ());
+		assertEquals ("expected the permit to be returned", 1,
+			permits.availablePermits ());
+	}
+	
+	
+	/**
+	 * Test that batch conversions process the entries of a container
+	 * concurrently.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testBatchEntries () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (17);
+		generator.setEntries (10);
+		File ca = generator.generateCombineArchive (folder.newFile ("batch.omex"));
+		testBatchEntries (ca, true);
+		testBatchEntries (ca, false);
+	}
+	
+	
+	/**
+	 * Convert a container in batch mode, holding the first converted entry until
+	 * another entry was converted as well.
+	 * 
+	 * @param ca
+	 *          the container to convert
+	 * @param virtual
+	 *          should the conversions run in virtual threads?
+	 * @throws Exception
+	 *           the exception
+	 */
+	private void testBatchEntries (File ca, boolean virtual) throws Exception
+	{
+		final CountDownLatch converted = new CountDownLatch (2);
+		final AtomicBoolean sequential = new AtomicBoolean ();
+		final CaRoListener listener = new CaRoListener ()
+		{
+			
+			@Override
+			public void notified (CaRoConverter converter,
+				CaRoNotification notification)
+			{
+			}
+			
+			
+			@Override
+			public void progress (CaRoConverter converter, long entries,
+				long totalEntries, long bytes)
+			{
+				if (converted.getCount () == 0)
+					return;
+				converted.countDown ();
+				try
+				{
+					if (!converted.await (5, TimeUnit.SECONDS))
+						sequential.set (true);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread ().interrupt ();
+				}
+			}
+		};
+		CaRoBatch batch = new CaRoBatch (CaRoBatch.Direction.CARO,
+			folder.newFolder (), 2)
+		{
+			
+			@Override
+			protected CaRoConverter createConverter (File source,
+				Direction direction)
+			{
+				CaRoConverter conv = super.createConverter (source, direction);
+				conv.addListener (listener);
+				return conv;
+			}
+		};
+		batch.setVirtualThreads (virtual);
+		if (!virtual)
+			batch.setParallelism (2);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		assertEquals ("didn't expect failures", 0,
+			batch.convert (Arrays.asList (ca), new PrintStream (out)));
+		assertFalse ("expected entries to be converted concurrently",
+			sequential.get ());
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCaRoListener
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * A listener that records everything it receives.
+	 */
+	private class RecordingListener
+		implements CaRoListener
+	{
+		
+		/** The notifications received. */
+		List<CaRoNotification>	notifications	= new CopyOnWriteArrayList<CaRoNotification> ();
+		
+		/** The number of progress events received. */
+		AtomicLong							progressEvents	= new AtomicLong ();
+		
+		/** The largest number of entries seen. */
+		AtomicLong							entries				= new AtomicLong ();
+		
+		/** The total number of entries announced. */
+		AtomicLong							totalEntries	= new AtomicLong ();
+		
+		/** The largest number of bytes seen. */
+		AtomicLong							bytes					= new AtomicLong ();
+		
+		
+		@Override
+		public void notified (CaRoConverter converter,
+			CaRoNotification notification)
+		{
+			notifications.add (notification);
+		}
+		
+		
+		@Override
+		public void progress (CaRoConverter converter, long entries,
+			long totalEntries, long bytes)
+		{
+			progressEvents.incrementAndGet ();
+			this.totalEntries.set (totalEntries);
+			synchronized (this)
+			{
+				this.entries.set (Math.max (this.entries.get (), entries));
+				this.bytes.set (Math.max (this.bytes.get (), bytes));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Test progress events of a concurrent conversion.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testProgress () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (3);
+		generator.setEntries (30);
+		generator.setSizes (10, 5000);
+		File ca = generator.generateCombineArchive (folder.newFile ("gen.omex"));
+		
+		CaToRo conv = new CaToRo (ca);
+		conv.setParallelism (4);
+		RecordingListener listener = new RecordingListener ();
+		conv.addListener (listener);
+		assertTrue ("converting did fail", conv.convertTo (new File (folder
+			.getRoot (), "gen.ro")));
+		
+		long entries = conv.getStatistics ().getEntries ();
+		assertTrue ("expected some entries", entries > 0);
+		assertEquals ("expected a progress event per entry", entries,
+			listener.progressEvents.get ());
+		assertEquals ("expected progress to reach all entries", entries,
+			listener.entries.get ());
+		assertEquals ("expected different total", entries,
+			listener.totalEntries.get ());
+		assertEquals ("expected progress to report all bytes", conv
+			.getStatistics ().getBytesWritten (), listener.bytes.get ());
+	}
+	
+	
+	/**
+	 * Test that notifications are delivered while converting.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testNotifications () throws Exception
+	{
+		RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+		RecordingListener listener = new RecordingListener ();
+		conv.addListener (listener);
+		assertTrue ("converting did fail", conv.convertTo (new File (folder
+			.getRoot (), "metatests.omex")));
+		assertTrue ("expected warnings", conv.hasWarnings ());
+		assertEquals ("expected listener to see all notifications",
+			conv.getNotifications (), listener.notifications);
+		
+		// removed listeners don't receive anything
+		conv = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+		listener = new RecordingListener ();
+		conv.addListener (listener);
+		conv.removeListener (listener);
+		assertTrue ("converting did fail", conv.convertTo (new File (folder
+			.getRoot (), "metatests2.omex")));
+		assertTrue ("didn't expect notifications",
+			listener.notifications.isEmpty ());
+		assertEquals ("didn't expect progress", 0,
+			listener.progressEvents.get ());
+	}
+	
+	
+	/**
+	 * Test aborting a conversion from a listener.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testAbort () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (5);
+		generator.setEntries (10);
+		File ca = generator.generateCombineArchive (folder.newFile ("gen.omex"));
+		
+		CaToRo conv = new CaToRo (ca);
+		RecordingListener listener = new RecordingListener ()
+		{
+			
+			@Override
+			public void progress (CaRoConverter converter, long entries,
+				long totalEntries, long bytes)
+			{
+				super.progress (converter, entries, totalEntries, bytes);
+				converter.abort ();
+			}
+		};
+		conv.addListener (listener);
+		File target = new File (folder.getRoot (), "gen.ro");
+		assertFalse ("converting should be aborted", conv.convertTo (target));
+		assertTrue ("expected converter to be aborted", conv.isAborted ());
+		assertTrue ("expected errors", conv.hasErrors ());
+		assertEquals ("expected conversion to stop after the first entry", 1,
+			listener.progressEvents.get ());
+		assertFalse ("didn't expect a target", target.exists ());
+	}
+}
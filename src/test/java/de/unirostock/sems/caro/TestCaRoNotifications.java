@@ -19,10 +19,13 @@
 package de.unirostock.sems.caro;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import de.unirostock.sems.caro.converters.CaToRo;
+
 
 
 /**
@@ -59,4 +62,176 @@ public class TestCaRoNotifications
 			note.toString ().contains (
 				CaRoNotification.severityToString (CaRoNotification.SERVERITY_NOTE)));
 	}
+	
+	
+	/**
+	 * Test templated notifications.
+	 */
+	@Test
+	public void testTemplates ()
+	{
+		String template = "dropping %s";
+		CaRoNotification note = new CaRoNotification (
+			CaRoNotification.SERVERITY_WARN, template, "some/file");
+		assertEquals ("expected different message", "dropping some/file",
+			note.getMessage ());
+		assertEquals ("expected different template", template,
+			note.getTemplate ());
+		
+		note = new CaRoNotification (CaRoNotification.SERVERITY_NOTE, "plain");
+		assertEquals ("expected message to be the template", "plain",
+			note.getTemplate ());
+	}
+	
+	
+	/**
+	 * Test counting and bounding notifications.
+	 */
+	@Test
+	public void testCounts ()
+	{
+		CaRoNotifications notifications = new CaRoNotifications ();
+		for (int i = 0; i < 10; i++)
+			notifications.add (new CaRoNotification (
+				CaRoNotification.SERVERITY_WARN, "dropping %s", "file" + i));
+		notifications.add (new CaRoNotification (
+			CaRoNotification.SERVERITY_ERROR, "failed"));
+		assertEquals ("expected all notifications", 11, notifications.size ());
+		assertEquals ("unexpected number of warnings", 10,
+			notifications.getCount (CaRoNotification.SERVERITY_WARN));
+		assertEquals ("unexpected number of errors", 1,
+			notifications.getCount (CaRoNotification.SERVERITY_ERROR));
+		assertEquals ("unexpected number of notes", 0,
+			notifications.getCount (CaRoNotification.SERVERITY_NOTE));
+		assertEquals ("didn't expect suppressed notifications", 0,
+			notifications.getSuppressed ());
+		
+		notifications.clear ();
+		notifications.setLimit (3);
+		for (int i = 0; i < 10; i++)
+			assertEquals ("unexpected result of add", i < 3,
+				notifications.add (new CaRoNotification (
+					CaRoNotification.SERVERITY_WARN, "dropping %s", "file" + i)));
+		assertTrue ("expected other templates to be kept",
+			notifications.add (new CaRoNotification (
+				CaRoNotification.SERVERITY_ERROR, "failed")));
+		assertEquals ("expected bounded notifications", 4, notifications.size ());
+		assertEquals ("suppressed notifications need to be counted", 10,
+			notifications.getCount (CaRoNotification.SERVERITY_WARN));
+		assertEquals ("unexpected number of suppressed notifications", 7,
+			notifications.getSuppressed ());
+		assertEquals ("unexpected number of suppressed notifications", 7,
+			notifications.getSuppressed ("dropping %s"));
+		assertEquals ("unexpected number of suppressed notifications", 0,
+			notifications.getSuppressed ("failed"));
+		assertEquals ("expected first notifications to be kept",
+			"dropping file0", notifications.get (0).getMessage ());
+		
+		notifications.clear ();
+		assertTrue ("expected empty list", notifications.isEmpty ());
+		assertFalse ("expected no errors after clear",
+			notifications.getCount (CaRoNotification.SERVERITY_ERROR) > 0);
+	}
+	
+	
+	/**
+	 * Test that messages are only formatted when requested.
+	 */
+	@Test
+	public void testLazyMessages ()
+	{
+		final int[] formatted = new int[] { 0 };
+		Object arg = new Object ()
+		{
+			
+			@Override
+			public String toString ()
+			{
+				formatted[0]++;
+				return "arg";
+			}
+		};
+		CaRoNotification note = new CaRoNotification (
+			CaRoNotification.SERVERITY_WARN, "about %s", arg);
+		assertEquals ("message shouldn't be formatted yet", 0, formatted[0]);
+		assertEquals ("expected different message", "about arg",
+			note.getMessage ());
+		assertEquals ("expected different message", "about arg",
+			note.getMessage ());
+		assertTrue ("unexpected notification: " + note.toString (), note
+			.toString ().contains ("about arg"));
+		assertEquals ("message should be formatted exactly once", 1, formatted[0]);
+	}
+	
+	
+	/**
+	 * Test that reporting doesn't format the messages of notifications that are
+	 * filtered or suppressed.
+	 */
+	@Test
+	public void testLazyReport ()
+	{
+		final int[] formatted = new int[] { 0 };
+		Object arg = new Object ()
+		{
+			
+			@Override
+			public String toString ()
+			{
+				formatted[0]++;
+				return "arg";
+			}
+		};
+		CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setMinimumSeverity (CaRoNotification.SERVERITY_WARN);
+		conv.setNotificationLimit (1);
+		
+		conv.report (CaRoNotification.SERVERITY_NOTE, "filtered %s", arg);
+		assertEquals ("filtered notes shouldn't be formatted", 0, formatted[0]);
+		assertEquals ("didn't expect notifications", 0, conv.getNotifications ()
+			.size ());
+		
+		conv.report (CaRoNotification.SERVERITY_WARN, "limited %s", "first");
+		for (int i = 0; i < 10; i++)
+			conv.report (CaRoNotification.SERVERITY_WARN, new Exception (),
+				"limited %s", arg);
+		assertEquals ("suppressed warnings shouldn't be formatted", 0,
+			formatted[0]);
+		assertEquals ("expected the suppressed warnings to be counted", 10,
+			conv.getNotifications ().getSuppressed ("limited %s"));
+		assertEquals ("expected different message", "limited first", conv
+			.getNotifications ().get (0).getMessage ());
+	}
+	
+	
+	/**
+	 * Test the minimum severity of notifications.
+	 */
+	@Test
+	public void testMinimumSeverity ()
+	{
+		CaRoNotifications notifications = new CaRoNotifications ();
+		assertTrue ("notes should be recorded by default",
+			notifications.isRecorded (CaRoNotification.SERVERITY_NOTE));
+		
+		notifications.setMinimumSeverity (CaRoNotification.SERVERITY_WARN);
+		assertFalse ("notes shouldn't be recorded",
+			notifications.isRecorded (CaRoNotification.SERVERITY_NOTE));
+		assertTrue ("warnings should be recorded",
+			notifications.isRecorded (CaRoNotification.SERVERITY_WARN));
+		assertTrue ("errors should be recorded",
+			notifications.isRecorded (CaRoNotification.SERVERITY_ERROR));
+		
+		assertFalse ("expected note to be dropped",
+			notifications.add (new CaRoNotification (
+				CaRoNotification.SERVERITY_NOTE, "note")));
+		assertTrue ("expected warning to be kept",
+			notifications.add (new CaRoNotification (
+				CaRoNotification.SERVERITY_WARN, "warning")));
+		assertEquals ("expected only the warning", 1, notifications.size ());
+		assertEquals ("dropped notes shouldn't be counted", 0,
+			notifications.getCount (CaRoNotification.SERVERITY_NOTE));
+		assertEquals ("dropped notes aren't suppressed", 0,
+			notifications.getSuppressed ());
+	}
 }
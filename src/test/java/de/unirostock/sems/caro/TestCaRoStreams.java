@@ -0,0 +1,189 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.apache.taverna.robundle.Bundle;
+import org.apache.taverna.robundle.Bundles;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+import de.unirostock.sems.cbarchive.CombineArchive;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCaRoStreams
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Test converting a combine archive from a stream to a stream.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCaToRoStreams () throws Exception
+	{
+		File workspaces = folder.newFolder ("workspaces");
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		try (InputStream in = Files.newInputStream (CaRoTests.CA_EXAMPLE1
+			.toPath ()))
+		{
+			CaToRo conv = new CaToRo (in);
+			conv.setTemporaryRoot (workspaces);
+			assertTrue ("converting did fail", conv.convertTo (out));
+			assertFalse ("didn't expect errors", conv.hasErrors ());
+		}
+		assertEquals ("expected workspaces to be removed", 0,
+			workspaces.list ().length);
+		
+		File ro = folder.newFile ("streamed.ro");
+		Files.write (ro.toPath (), out.toByteArray ());
+		Bundle bundle = Bundles.openBundle (ro.toPath ());
+		try
+		{
+			CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			assertTrue ("converting did fail",
+				conv.convertTo (new File (folder.getRoot (), "file.ro")));
+			assertEquals ("expected the same aggregates as converting files", conv
+				.getResearchObject ().getManifest ().getAggregates ().size (), bundle
+				.getManifest ().getAggregates ().size ());
+		}
+		finally
+		{
+			bundle.close ();
+		}
+	}
+	
+	
+	/**
+	 * Test repacking a converted container straight into a stream.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testRepackedStream () throws Exception
+	{
+		File workspaces = folder.newFolder ("repacked");
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		try (InputStream in = Files.newInputStream (CaRoTests.CA_EXAMPLE1
+			.toPath ()))
+		{
+			CaToRo conv = new CaToRo (in);
+			conv.setTemporaryRoot (workspaces);
+			conv.setRawCopy (true);
+			conv.setCompressionPolicy (CompressionPolicy
+				.createDefault (CompressionPolicy.Compression.BEST));
+			assertTrue ("converting did fail", conv.convertTo (out));
+			assertFalse ("didn't expect errors", conv.hasErrors ());
+		}
+		assertEquals ("expected workspaces to be removed", 0,
+			workspaces.list ().length);
+		
+		File ro = folder.newFile ("repacked.ro");
+		Files.write (ro.toPath (), out.toByteArray ());
+		assertEquals ("expected a research object",
+			ContainerSniffer.ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (ro));
+		File expected = new File (folder.getRoot (), "expected.ro");
+		assertTrue ("converting did fail",
+			new CaToRo (CaRoTests.CA_EXAMPLE1).convertTo (expected));
+		// the manifest contains time stamps
+		TestRawCopy.assertSameContents (expected, ro, ".ro/");
+	}
+	
+	
+	/**
+	 * Test converting a research object from a stream to a stream.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testRoToCaStreams () throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		try (InputStream in = Files.newInputStream (CaRoTests.RO_EXAMPLE1
+			.toPath ()))
+		{
+			RoToCa conv = new RoToCa (in);
+			assertTrue ("converting did fail", conv.convertTo (out));
+			assertFalse ("didn't expect errors", conv.hasErrors ());
+		}
+		
+		File ca = folder.newFile ("streamed.omex");
+		Files.write (ca.toPath (), out.toByteArray ());
+		CombineArchive archive = new CombineArchive (ca);
+		try
+		{
+			assertTrue ("expected some entries", archive.getNumEntries () > 0);
+		}
+		finally
+		{
+			archive.close ();
+		}
+	}
+	
+	
+	/**
+	 * Test that failing streams fail the conversion without writing anything.
+	 */
+	@Test
+	public void testFailingStream ()
+	{
+		InputStream in = new InputStream ()
+		{
+			
+			@Override
+			public int read () throws IOException
+			{
+				throw new IOException ("connection reset");
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		CaToRo conv = new CaToRo (in);
+		assertFalse ("converting should fail", conv.convertTo (out));
+		assertTrue ("expected errors", conv.hasErrors ());
+		assertTrue ("expected the reason", conv.getNotifications ().get (0)
+			.getMessage ().contains ("connection reset"));
+		assertEquals ("didn't expect any output", 0, out.size ());
+	}
+}
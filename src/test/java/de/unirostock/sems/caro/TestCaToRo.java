@@ -25,7 +25,11 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.taverna.robundle.Bundle;
 import org.apache.taverna.robundle.Bundles;
@@ -37,6 +41,7 @@ import org.junit.rules.TemporaryFolder;
 import de.unirostock.sems.caro.CaRoTests.CaComparisonResult;
 import de.unirostock.sems.caro.converters.CaToRo;
 import de.unirostock.sems.caro.converters.RoToCa;
+import de.unirostock.sems.cbarchive.ArchiveEntry;
 import de.unirostock.sems.cbarchive.CombineArchive;
 import de.unirostock.sems.cbarchive.CombineArchiveException;
 
@@ -184,4 +189,187 @@ public class TestCaToRo
 		}
 	}
 	
+	
+	/**
+	 * Test that streaming entries and copying them through temporary files
+	 * result in the same research object.
+	 */
+	@Test
+	public void testStreaming ()
+	{
+		try
+		{
+			File streamed = folder.newFile ("streamed.ro");
+			File copied = folder.newFile ("copied.ro");
+			streamed.delete ();
+			copied.delete ();
+			
+			CaRoConverter conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			assertTrue ("streaming should be the default", conv.isStreamEntries ());
+			assertTrue ("converting failed", conv.convertTo (streamed));
+			
+			conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			conv.setStreamEntries (false);
+			assertTrue ("converting failed", conv.convertTo (copied));
+			
+			CombineArchive sourceCa = new CombineArchive (CaRoTests.CA_EXAMPLE1);
+			Bundle streamedBundle = Bundles.openBundleReadOnly (streamed.toPath ());
+			Bundle copiedBundle = Bundles.openBundleReadOnly (copied.toPath ());
+			for (ArchiveEntry entry : sourceCa.getEntries ())
+			{
+				Path a = streamedBundle.getRoot ().resolve (entry.getEntityPath ());
+				Path b = copiedBundle.getRoot ().resolve (entry.getEntityPath ());
+				assertEquals ("entries differ: " + entry.getEntityPath (),
+					Files.exists (a), Files.exists (b));
+				if (Files.exists (a))
+					assertTrue ("content differs: " + entry.getEntityPath (),
+						Arrays.equals (Files.readAllBytes (a), Files.readAllBytes (b)));
+			}
+			sourceCa.close ();
+			streamedBundle.close ();
+			copiedBundle.close ();
+		}
+		catch (IOException | JDOMException | ParseException
+			| CombineArchiveException e)
+		{
+			e.printStackTrace ();
+			fail ("converting failed");
+		}
+	}
+	
+	
+	/**
+	 * Test that temporary files are created in the configured directory and
+	 * removed after the conversion.
+	 */
+	@Test
+	public void testTemporaryRoot ()
+	{
+		try
+		{
+			File root = folder.newFolder ("scratch");
+			File ro = new File (folder.getRoot (), "converted.ro");
+			File ca = new File (folder.getRoot (), "converted.omex");
+			
+			CaRoConverter conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			conv.setTemporaryRoot (root);
+			conv.setStreamEntries (false);
+			assertEquals ("expected the configured root", root,
+				conv.getTemporaryRoot ());
+			assertTrue ("converting failed", conv.convertTo (ro));
+			assertEquals ("expected no leftovers in temporary root", 0,
+				root.list ().length);
+			
+			conv = new RoToCa (ro);
+			conv.setTemporaryRoot (root);
+			conv.setStreamEntries (false);
+			assertTrue ("converting failed", conv.convertTo (ca));
+			assertEquals ("expected no leftovers in temporary root", 0,
+				root.list ().length);
+			
+			// failing conversions must not leave anything behind
+			conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			conv.setTemporaryRoot (root);
+			assertFalse ("converting did not fail", conv.convertTo (new File (ro,
+				"does/not/exist")));
+			assertEquals ("expected no leftovers in temporary root", 0,
+				root.list ().length);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace ();
+			fail ("converting failed");
+		}
+	}
+	
+	
+	/**
+	 * Test processing entries concurrently.
+	 */
+	@Test
+	public void testParallel ()
+	{
+		try
+		{
+			File sequential = new File (folder.getRoot (), "sequential.ro");
+			File parallel = new File (folder.getRoot (), "parallel.ro");
+			
+			CaRoConverter conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			assertEquals ("expected sequential processing by default", 1,
+				conv.getParallelism ());
+			assertTrue ("converting failed", conv.convertTo (sequential));
+			
+			conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+			conv.setParallelism (4);
+			assertTrue ("converting failed", conv.convertTo (parallel));
+			
+			Bundle sequentialBundle = Bundles.openBundleReadOnly (sequential
+				.toPath ());
+			Bundle parallelBundle = Bundles.openBundleReadOnly (parallel.toPath ());
+			assertEquals ("expected same aggregates", sequentialBundle
+				.getManifest ().getAggregates ().size (), parallelBundle.getManifest ()
+				.getAggregates ().size ());
+			assertEquals ("expected same annotations", sequentialBundle
+				.getManifest ().getAnnotations ().size (), parallelBundle
+				.getManifest ().getAnnotations ().size ());
+			
+			CombineArchive sourceCa = new CombineArchive (CaRoTests.CA_EXAMPLE1);
+			CaRoTests.ComparisonResult comparison = CaRoTests.compareContainers (
+				sourceCa, parallelBundle);
+			assertEquals ("conversion resulted in diff in entries (ca only): "
+				+ comparison, 0, comparison.numCaOnly);
+			assertEquals ("conversion resulted in diff in entries (ro only): "
+				+ comparison, 0, comparison.numRoOnly);
+			sourceCa.close ();
+			sequentialBundle.close ();
+			parallelBundle.close ();
+		}
+		catch (IOException | JDOMException | ParseException
+			| CombineArchiveException e)
+		{
+			e.printStackTrace ();
+			fail ("converting failed");
+		}
+	}
+	
+	
+	
+	/**
+	 * Test the statistics of a conversion.
+	 */
+	@Test
+	public void testStatistics ()
+	{
+		CaRoConverter conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		assertEquals ("expected empty statistics", 0, conv.getStatistics ()
+			.getEntries ());
+		assertTrue ("converting failed",
+			conv.convertTo (new File (folder.getRoot (), "streamed.ro")));
+		ConversionStatistics stats = conv.getStatistics ();
+		assertTrue ("expected some entries", stats.getEntries () > 0);
+		assertTrue ("expected some bytes", stats.getBytesRead () > 0);
+		assertEquals ("expected to write what we read", stats.getBytesRead (),
+			stats.getBytesWritten ());
+		assertEquals ("expected no temporary files when streaming", 0,
+			stats.getTemporaryBytes ());
+		assertTrue ("expected converted annotations", stats.getAnnotations () > 0);
+		long phases = 0;
+		for (ConversionStatistics.Phase phase : ConversionStatistics.Phase
+			.values ())
+			phases += stats.getPhaseTime (phase, TimeUnit.NANOSECONDS);
+		assertEquals ("total time should sum up the phases", phases,
+			stats.getTotalTime (TimeUnit.NANOSECONDS));
+		assertTrue ("expected time spent in writing",
+			stats.getPhaseTime (ConversionStatistics.Phase.WRITE,
+				TimeUnit.NANOSECONDS) > 0);
+		
+		conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setStreamEntries (false);
+		assertTrue ("converting failed",
+			conv.convertTo (new File (folder.getRoot (), "copied.ro")));
+		assertEquals ("expected same number of entries", stats.getEntries (), conv
+			.getStatistics ().getEntries ());
+		assertEquals ("expected all entries in temporary files",
+			stats.getBytesRead (), conv.getStatistics ().getTemporaryBytes ());
+	}
 }
@@ -0,0 +1,258 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.RoToCa;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCachingFormatResolver
+{
+	
+	/** The format returned by the fallback. */
+	private static final URI	GUESSED	= URI
+																			.create ("http://identifiers.org/combine.specifications/sbml");
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder		folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * A resolver counting the guesses.
+	 */
+	private static class CountingResolver
+		extends CachingFormatResolver
+	{
+		
+		/** The number of guesses. */
+		private AtomicInteger	guesses	= new AtomicInteger ();
+		
+		/** The format to guess. */
+		private volatile URI	guess		= GUESSED;
+		
+		
+		/**
+		 * Instantiates a new counting resolver.
+		 * 
+		 * @param cacheSize
+		 *          the cache size
+		 */
+		private CountingResolver (int cacheSize)
+		{
+			super (cacheSize);
+		}
+		
+		
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * de.unirostock.sems.caro.CachingFormatResolver#guessFormat(java.io.File)
+		 */
+		@Override
+		protected URI guessFormat (File file) throws IOException
+		{
+			guesses.incrementAndGet ();
+			return guess;
+		}
+	}
+	
+	
+	/**
+	 * Write a file.
+	 * 
+	 * @param name
+	 *          the name of the file
+	 * @param content
+	 *          the content
+	 * @return the file
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private File write (String name, byte[] content) throws IOException
+	{
+		File file = new File (folder.getRoot (), name);
+		Files.write (file.toPath (), content);
+		return file;
+	}
+	
+	
+	/**
+	 * Test resolving formats using the table of extensions.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testTable () throws IOException
+	{
+		CountingResolver resolver = new CountingResolver (10);
+		
+		File png = write ("image.PNG", new byte[] { (byte) 0x89, 'P', 'N', 'G',
+			'\r', '\n' });
+		assertEquals ("expected a png",
+			URI.create (CachingFormatResolver.MEDIATYPES + "image/png"),
+			resolver.resolveFormat (png));
+		assertEquals ("expected a table hit", 1, resolver.getTableHits ());
+		assertEquals ("didn't expect guesses", 0, resolver.guesses.get ());
+		
+		// the extension lies about the contents
+		File fake = write ("fake.png", "<sbml/>".getBytes ());
+		assertEquals ("expected a guess", GUESSED, resolver.resolveFormat (fake));
+		assertEquals ("expected a guess", 1, resolver.guesses.get ());
+		assertEquals ("expected a miss", 1, resolver.getMisses ());
+		
+		// extensions without magic bytes don't tell anything about the contents
+		File text = write ("model.txt", "<sbml/>".getBytes ());
+		assertEquals ("expected a guess", GUESSED, resolver.resolveFormat (text));
+		assertEquals ("expected a guess", 2, resolver.guesses.get ());
+		assertEquals ("expected a single table hit", 1, resolver.getTableHits ());
+		
+		// but they are used if guessing fails
+		resolver.guess = null;
+		assertEquals ("expected plain text",
+			URI.create (CachingFormatResolver.MEDIATYPES + "text/plain"),
+			resolver.resolveFormat (write ("notes.txt", "some notes".getBytes ())));
+		
+		// rules may be added
+		resolver.addMediaType ("text/x-markdown", null, "md");
+		assertEquals ("expected markdown",
+			URI.create (CachingFormatResolver.MEDIATYPES + "text/x-markdown"),
+			resolver.resolveFormat (write ("README.md", "# CaRo".getBytes ())));
+		resolver.addMediaType ("image/x-portable-pixmap", "P6".getBytes (),
+			"ppm");
+		assertEquals ("didn't expect a format", null,
+			resolver.resolveFormat (write ("fake.ppm", "# CaRo".getBytes ())));
+	}
+	
+	
+	/**
+	 * Test caching guesses.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testCache () throws IOException
+	{
+		CountingResolver resolver = new CountingResolver (2);
+		byte[] model = "<sbml level=\"3\"/>".getBytes ();
+		
+		assertEquals ("expected a guess", GUESSED,
+			resolver.resolveFormat (write ("a.xml", model)));
+		assertEquals ("expected a cached guess", GUESSED,
+			resolver.resolveFormat (write ("b.xml", model)));
+		assertEquals ("expected a single guess", 1, resolver.guesses.get ());
+		assertEquals ("expected a cache hit", 1, resolver.getCacheHits ());
+		
+		// same content but different extension
+		resolver.resolveFormat (write ("c.sbml", model));
+		assertEquals ("expected another guess", 2, resolver.guesses.get ());
+		
+		// evict the least recently used guess
+		resolver.resolveFormat (write ("b.xml", model));
+		resolver.resolveFormat (write ("d.xml", "<sedML/>".getBytes ()));
+		assertEquals ("expected two cached guesses", 2, resolver.getCacheSize ());
+		resolver.resolveFormat (write ("e.sbml", model));
+		assertEquals ("expected the sbml guess to be evicted", 4,
+			resolver.guesses.get ());
+		resolver.resolveFormat (write ("f.xml", "<sedML/>".getBytes ()));
+		assertEquals ("expected the sedml guess to be cached", 4,
+			resolver.guesses.get ());
+		
+		resolver.clearCache ();
+		resolver.resolveFormat (write ("a.xml", model));
+		assertEquals ("expected a guess after clearing the cache", 5,
+			resolver.guesses.get ());
+		assertEquals ("expected consistent counters", 5, resolver.getMisses ());
+	}
+	
+	
+	/**
+	 * Test that large files are not cached, while small files are cached by
+	 * their complete contents.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testLargeFiles () throws IOException
+	{
+		CountingResolver resolver = new CountingResolver (10);
+		byte[] model = new byte[(int) CachingFormatResolver.MAX_CACHED_SIZE + 1];
+		Arrays.fill (model, (byte) 'a');
+		
+		resolver.resolveFormat (write ("a.xml", model));
+		resolver.resolveFormat (write ("b.xml", model));
+		assertEquals ("expected every large file to be guessed", 2,
+			resolver.guesses.get ());
+		assertEquals ("didn't expect cache hits", 0, resolver.getCacheHits ());
+		assertEquals ("didn't expect cached guesses", 0, resolver.getCacheSize ());
+		
+		// small files differing only in the middle
+		byte[] small = Arrays.copyOf (model,
+			(int) CachingFormatResolver.MAX_CACHED_SIZE);
+		resolver.resolveFormat (write ("c.xml", small));
+		small[small.length / 2] = 'b';
+		resolver.resolveFormat (write ("d.xml", small));
+		assertEquals ("expected another two guesses", 4, resolver.guesses.get ());
+		resolver.resolveFormat (write ("e.xml", small));
+		assertEquals ("expected a cache hit", 1, resolver.getCacheHits ());
+	}
+	
+	
+	/**
+	 * Test that converters use their resolver for entries without a format.
+	 */
+	@Test
+	public void testConverter ()
+	{
+		CountingResolver resolver = new CountingResolver (10);
+		RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE1);
+		assertTrue ("expected the default resolver",
+			conv.getFormatResolver () == CaRoConverter.getDefaultFormatResolver ());
+		conv.setFormatResolver (resolver);
+		assertTrue ("converting did fail",
+			conv.convertTo (new File (folder.getRoot (), "example.omex")));
+		assertEquals ("expected every guess to go through the resolver", conv
+			.getStatistics ().getFormatGuesses (), resolver.getTableHits ()
+			+ resolver.getCacheHits () + resolver.getMisses ());
+		assertEquals ("expected every miss to be guessed", resolver.getMisses (),
+			resolver.guesses.get ());
+	}
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.taverna.robundle.Bundle;
+import org.apache.taverna.robundle.Bundles;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.CompressionPolicy.Compression;
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+import de.unirostock.sems.cbarchive.CombineArchive;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestCompressionPolicy
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Test the decisions of a policy.
+	 */
+	@Test
+	public void testPolicy ()
+	{
+		CompressionPolicy policy = CompressionPolicy.createDefault ();
+		assertEquals ("images should be stored", Compression.STORE,
+			policy.getCompression ("img/figure.PNG", (URI) null, 100000));
+		assertEquals ("hdf5 should be stored", Compression.STORE,
+			policy.getCompression ("data.h5", (URI) null, 100000));
+		assertEquals ("nested archives should be stored", Compression.STORE,
+			policy.getCompression ("nested.omex", (URI) null, 100000));
+		assertEquals ("videos should be stored", Compression.STORE, policy
+			.getCompression ("movie",
+				URI.create (CachingFormatResolver.MEDIATYPES + "video/mp4"), 100000));
+		assertEquals ("the declared format should win", Compression.STORE, policy
+			.getCompression ("figure.xml",
+				URI.create (CachingFormatResolver.MEDIATYPES + "image/png"), 100000));
+		assertEquals ("small entries should be stored", Compression.STORE,
+			policy.getCompression ("model.xml", (URI) null, 100));
+		assertEquals ("large models should be deflated", Compression.DEFAULT,
+			policy.getCompression ("model.xml",
+				URI.create ("http://identifiers.org/combine.specifications/sbml"),
+				100000));
+		
+		policy.setCompression ("application/xml", Compression.BEST);
+		assertEquals ("expected the media type rule", Compression.BEST,
+			policy.getCompression ("model.xml", (URI) null, 100));
+		policy.setCompression ("application/xml", null);
+		policy.setSmallEntries (0, null);
+		policy.setDefaultCompression (Compression.FAST);
+		assertEquals ("expected the default compression", Compression.FAST,
+			policy.getCompression ("model.xml", (URI) null, 100));
+		
+		assertNull ("extension of a directory isn't a media type",
+			policy.getMediaType ("dir.png/file", null));
+		assertEquals ("unexpected media type", "text/plain",
+			policy.getMediaType ("file", "text/plain"));
+		
+		policy = new CompressionPolicy (Compression.BEST);
+		assertEquals ("an empty policy shouldn't have rules", Compression.BEST,
+			policy.getCompression ("img/figure.png", (URI) null, 1));
+	}
+	
+	
+	/**
+	 * Test repacking a zip file using every compression.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testWriteEntry () throws Exception
+	{
+		for (Compression compression : Compression.values ())
+		{
+			File repacked = new File (folder.getRoot (), compression + ".omex");
+			try (ZipDirectory source = new ZipDirectory (CaRoTests.CA_EXAMPLE1);
+				RawZipWriter writer = new RawZipWriter (repacked))
+			{
+				for (ZipDirectory.Entry entry : source.getEntries ())
+					writer.writeEntry (source, entry, compression);
+			}
+			TestRawCopy.assertSameContents (CaRoTests.CA_EXAMPLE1, repacked);
+			
+			try (ZipDirectory directory = new ZipDirectory (repacked))
+			{
+				for (ZipDirectory.Entry entry : directory.getEntries ())
+				{
+					if (entry.getSize () == 0)
+						assertEquals ("empty entries should be stored",
+							ZipDirectory.STORED, entry.getMethod ());
+					else
+						assertEquals ("unexpected method of " + entry.getName (),
+							compression.getMethod (), entry.getMethod ());
+					if (entry.getMethod () == ZipDirectory.STORED)
+						assertEquals ("stored entries shouldn't be compressed",
+							entry.getSize (), entry.getCompressedSize ());
+					assertTrue ("entries should be copyable", entry.isRawCopyable ());
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Test repacking a zip file into a stream, which needs data descriptors
+	 * for deflated entries.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testWriteStream () throws Exception
+	{
+		for (Compression compression : Compression.values ())
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream ();
+			try (ZipDirectory source = new ZipDirectory (CaRoTests.CA_EXAMPLE1);
+				RawZipWriter writer = new RawZipWriter (out))
+			{
+				for (ZipDirectory.Entry entry : source.getEntries ())
+					writer.writeEntry (source, entry, compression);
+			}
+			File repacked = new File (folder.getRoot (), compression + ".stream");
+			Files.write (repacked.toPath (), out.toByteArray ());
+			TestRawCopy.assertSameContents (CaRoTests.CA_EXAMPLE1, repacked);
+			
+			try (ZipDirectory directory = new ZipDirectory (repacked))
+			{
+				for (ZipDirectory.Entry entry : directory.getEntries ())
+					if ( (entry.getFlags () & 0x0008) != 0)
+						assertEquals ("only deflated entries need data descriptors",
+							ZipDirectory.DEFLATED, entry.getMethod ());
+					else if (compression == Compression.BEST && entry.getSize () > 0)
+						fail ("expected a data descriptor for " + entry.getName ());
+			}
+			
+			// the stream needs to be readable without the central directory
+			int entries = 0;
+			try (ZipFile expected = new ZipFile (CaRoTests.CA_EXAMPLE1);
+				ZipInputStream in = new ZipInputStream (
+					new ByteArrayInputStream (out.toByteArray ())))
+			{
+				ZipEntry entry;
+				while ( (entry = in.getNextEntry ()) != null)
+				{
+					try (InputStream expectedIn = expected.getInputStream (expected
+						.getEntry (entry.getName ())))
+					{
+						assertTrue ("unexpected contents of " + entry.getName (),
+							Arrays.equals (readAll (expectedIn), readAll (in)));
+					}
+					entries++;
+				}
+				assertEquals ("expected all entries", expected.size (), entries);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Read the rest of a stream.
+	 * 
+	 * @param in
+	 *          the stream
+	 * @return the bytes read
+	 * @throws Exception
+	 *           the exception
+	 */
+	private static byte[] readAll (InputStream in) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ( (n = in.read (buffer)) > 0)
+			out.write (buffer, 0, n);
+		return out.toByteArray ();
+	}
+	
+	
+	/**
+	 * Test converting a combine archive into a research object using a
+	 * compression policy.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCaToRo () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (11);
+		generator.setEntries (20);
+		File ca = generator.generateCombineArchive (folder.newFile ("gen.omex"));
+		
+		File expected = new File (folder.getRoot (), "expected.ro");
+		assertTrue ("converting did fail", new CaToRo (ca).convertTo (expected));
+		
+		File compressed = new File (folder.getRoot (), "compressed.ro");
+		CaToRo conv = new CaToRo (ca);
+		conv.setCompressionPolicy (CompressionPolicy
+			.createDefault (Compression.BEST));
+		assertNotNull ("expected a policy", conv.getCompressionPolicy ());
+		assertTrue ("converting did fail", conv.convertTo (compressed));
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		
+		// the manifest contains time stamps
+		TestRawCopy.assertSameContents (expected, compressed, ".ro/");
+		try (ZipDirectory directory = new ZipDirectory (compressed))
+		{
+			ZipDirectory.Entry first = directory.getEntries ().get (0);
+			assertEquals ("research objects start with their mime type",
+				"mimetype", first.getName ());
+			assertEquals ("the mime type needs to be stored", ZipDirectory.STORED,
+				first.getMethod ());
+			for (ZipDirectory.Entry entry : directory.getEntries ())
+				if (entry.getSize () >= CompressionPolicy.DEFAULT_SMALL_SIZE)
+					assertEquals ("expected to deflate " + entry.getName (),
+						ZipDirectory.DEFLATED, entry.getMethod ());
+				else
+					assertEquals ("expected to store " + entry.getName (),
+						ZipDirectory.STORED, entry.getMethod ());
+		}
+		assertEquals ("expected a research object",
+			ContainerSniffer.ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (compressed));
+		Bundle bundle = Bundles.openBundleReadOnly (compressed.toPath ());
+		try
+		{
+			assertEquals ("expected all entries", 20, bundle.getManifest ()
+				.getAggregates ().size ());
+		}
+		finally
+		{
+			bundle.close ();
+		}
+	}
+	
+	
+	/**
+	 * Test converting a research object into a combine archive using a
+	 * compression policy.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testRoToCa () throws Exception
+	{
+		File expected = new File (folder.getRoot (), "expected.omex");
+		assertTrue ("converting did fail",
+			new RoToCa (CaRoTests.RO_EXAMPLE1).convertTo (expected));
+		
+		File compressed = new File (folder.getRoot (), "compressed.omex");
+		RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE1);
+		conv.setCompressionPolicy (CompressionPolicy.createDefault ());
+		assertTrue ("converting did fail", conv.convertTo (compressed));
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		
+		// the meta data contains time stamps, and the order of the manifest
+		// isn't stable
+		TestRawCopy.assertSameContents (expected, compressed, "metadata.rdf",
+			"manifest.xml");
+		int images = 0;
+		try (ZipDirectory directory = new ZipDirectory (compressed))
+		{
+			for (ZipDirectory.Entry entry : directory.getEntries ())
+				if (entry.getName ().endsWith (".png"))
+				{
+					assertEquals ("images should be stored", ZipDirectory.STORED,
+						entry.getMethod ());
+					images++;
+				}
+		}
+		assertTrue ("expected some images", images > 0);
+		CombineArchive archive = new CombineArchive (compressed);
+		try
+		{
+			assertTrue ("expected some entries", archive.getNumEntries () > 0);
+		}
+		finally
+		{
+			archive.close ();
+		}
+	}
+	
+	
+	/**
+	 * Test that entries copied raw keep their compression.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testRawCopy () throws Exception
+	{
+		File compressed = new File (folder.getRoot (), "compressed.omex");
+		RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE1);
+		conv.setRawCopy (true);
+		conv.setCompressionPolicy (new CompressionPolicy (Compression.STORE));
+		assertTrue ("converting did fail", conv.convertTo (compressed));
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		
+		try (ZipDirectory source = new ZipDirectory (CaRoTests.RO_EXAMPLE1);
+			ZipDirectory target = new ZipDirectory (compressed))
+		{
+			for (ZipDirectory.Entry entry : target.getEntries ())
+			{
+				ZipDirectory.Entry original = source.getEntry (entry.getName ());
+				// annotations of the research object aren't copied raw
+				if (original != null && !original.isDirectory ()
+					&& !entry.getName ().startsWith (".ro/"))
+					assertEquals ("expected the compression of the source",
+						original.getMethod (), entry.getMethod ());
+				else
+					assertEquals ("expected to store " + entry.getName (),
+						ZipDirectory.STORED, entry.getMethod ());
+			}
+		}
+	}
+}
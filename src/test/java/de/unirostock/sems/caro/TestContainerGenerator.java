@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.apache.taverna.robundle.Bundle;
+import org.apache.taverna.robundle.Bundles;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+import de.unirostock.sems.cbarchive.ArchiveEntry;
+import de.unirostock.sems.cbarchive.CombineArchive;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestContainerGenerator
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Creates a generator for a small but non-trivial shape.
+	 * 
+	 * @param seed
+	 *          the seed
+	 * @return the generator
+	 */
+	private ContainerGenerator createGenerator (long seed)
+	{
+		ContainerGenerator generator = new ContainerGenerator (seed);
+		generator.setEntries (20);
+		generator.setSizes (10, 5000);
+		generator.setLargeEntries (1, 100000);
+		generator.setDirectories (2, 3);
+		generator.setMainEntries (2);
+		generator.setMetadataDensity (0.5);
+		generator.setAnnotationFanOut (2);
+		return generator;
+	}
+	
+	
+	/**
+	 * Test that the generated combine archives are deterministic and have the
+	 * requested shape.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCombineArchive () throws Exception
+	{
+		File first = createGenerator (42).generateCombineArchive (folder
+			.newFile ("first.omex"));
+		File second = createGenerator (42).generateCombineArchive (folder
+			.newFile ("second.omex"));
+		
+		CombineArchive ca1 = new CombineArchive (first);
+		CombineArchive ca2 = new CombineArchive (second);
+		try
+		{
+			assertEquals ("unexpected number of entries", 20, ca1.getNumEntries ());
+			assertEquals ("unexpected number of main entries", 2, ca1
+				.getMainEntries ().size ());
+			assertEquals ("unexpected number of entries", ca1.getNumEntries (),
+				ca2.getNumEntries ());
+			
+			int descriptions = 0;
+			for (ArchiveEntry entry : ca1.getEntries ())
+			{
+				ArchiveEntry other = ca2.getEntry (entry.getFilePath ());
+				assertTrue ("missing entry " + entry.getFilePath (), other != null);
+				assertArrayEquals ("contents of " + entry.getFilePath ()
+					+ " differ", Files.readAllBytes (entry.getPath ()),
+					Files.readAllBytes (other.getPath ()));
+				assertEquals ("meta data of " + entry.getFilePath () + " differ",
+					entry.getDescriptions ().size (), other.getDescriptions ().size ());
+				descriptions += entry.getDescriptions ().size ();
+			}
+			assertTrue ("expected some meta data", descriptions > 0);
+			assertTrue ("expected large entry", Files.size (ca1.getEntry (
+				"/data/d0/d0/entry0.txt").getPath ()) == 100000);
+		}
+		finally
+		{
+			ca1.close ();
+			ca2.close ();
+		}
+		
+		CaRoConverter conv = new CaToRo (first);
+		assertTrue ("conversion of generated archive failed",
+			conv.convertTo (new File (folder.getRoot (), "converted.ro")));
+		assertFalse ("unexpected errors", conv.hasErrors ());
+	}
+	
+	
+	/**
+	 * Test that the generated research objects have the requested shape.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testResearchObject () throws Exception
+	{
+		ContainerGenerator generator = createGenerator (7);
+		File ro = generator.generateResearchObject (folder.newFile ("gen.ro"));
+		
+		Bundle bundle = Bundles.openBundle (ro.toPath ());
+		try
+		{
+			for (int i = 0; i < generator.getEntries (); i++)
+				assertTrue ("missing entry " + i, Files.exists (bundle.getRoot ()
+					.resolve (generator.getEntryName (i))));
+			assertTrue ("expected some annotations", bundle.getManifest ()
+				.getAnnotations ().size () > 2);
+		}
+		finally
+		{
+			bundle.close ();
+		}
+		
+		File converted = new File (folder.getRoot (), "converted.omex");
+		CaRoConverter conv = new RoToCa (ro);
+		assertTrue ("conversion of generated research object failed",
+			conv.convertTo (converted));
+		assertFalse ("unexpected errors", conv.hasErrors ());
+		
+		CombineArchive ca = new CombineArchive (converted);
+		try
+		{
+			assertEquals ("unexpected number of main entries", 2, ca
+				.getMainEntries ().size ());
+			assertTrue ("missing entry", ca.getEntry (generator.getEntryName (19)) != null);
+		}
+		finally
+		{
+			ca.close ();
+		}
+	}
+}
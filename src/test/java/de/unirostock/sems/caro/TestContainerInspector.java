@@ -0,0 +1,198 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.ContainerInspector.EntryKind;
+import de.unirostock.sems.caro.ContainerSniffer.ContainerType;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestContainerInspector
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Compare the inspection to what java.util.zip finds in the container.
+	 * 
+	 * @param inspector
+	 *          the inspector
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private static void assertConsistent (ContainerInspector inspector)
+		throws IOException
+	{
+		List<ZipDirectory.Entry> entries = inspector.getEntries ();
+		long size = 0, compressedSize = 0;
+		int n = 0;
+		try (ZipFile zip = new ZipFile (inspector.getFile ()))
+		{
+			Enumeration<? extends ZipEntry> zipEntries = zip.entries ();
+			while (zipEntries.hasMoreElements ())
+			{
+				ZipEntry zipEntry = zipEntries.nextElement ();
+				ZipDirectory.Entry entry = entries.get (n++);
+				assertEquals ("unexpected entry", zipEntry.getName (),
+					entry.getName ());
+				assertEquals ("unexpected size of " + entry.getName (),
+					zipEntry.getSize (), entry.getSize ());
+				assertEquals ("unexpected compressed size of " + entry.getName (),
+					zipEntry.getCompressedSize (), entry.getCompressedSize ());
+				size += entry.getSize ();
+				compressedSize += entry.getCompressedSize ();
+			}
+		}
+		assertEquals ("unexpected number of entries", n, entries.size ());
+		assertEquals ("unexpected size", size, inspector.getSize ());
+		assertEquals ("unexpected compressed size", compressedSize,
+			inspector.getCompressedSize ());
+		
+		int counted = 0;
+		for (EntryKind kind : EntryKind.values ())
+			counted += inspector.getCount (kind);
+		assertEquals ("every entry should be of exactly one kind", n, counted);
+	}
+	
+	
+	/**
+	 * Test inspecting the combine archive shipped with the tests.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testCombineArchive () throws IOException
+	{
+		ContainerInspector inspector = new ContainerInspector (
+			CaRoTests.CA_EXAMPLE1);
+		assertConsistent (inspector);
+		assertEquals ("expected a combine archive", ContainerType.COMBINE_ARCHIVE,
+			inspector.getType ());
+		assertEquals ("expected a manifest", 1,
+			inspector.getCount (EntryKind.MANIFEST));
+		assertEquals ("expected a meta data file", 1,
+			inspector.getCount (EntryKind.METADATA));
+		assertEquals ("didn't expect annotations", 0,
+			inspector.getCount (EntryKind.ANNOTATION));
+		assertTrue ("summary should name the type", inspector.toString ()
+			.contains (ContainerType.COMBINE_ARCHIVE.toString ()));
+	}
+	
+	
+	/**
+	 * Test inspecting the research object shipped with the tests.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testResearchObject () throws IOException
+	{
+		ContainerInspector inspector = new ContainerInspector (
+			CaRoTests.RO_EXAMPLE1);
+		assertConsistent (inspector);
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			inspector.getType ());
+		// mimetype and .ro/manifest.json
+		assertEquals ("expected two manifests", 2,
+			inspector.getCount (EntryKind.MANIFEST));
+		// .ro/evolution.ttl
+		assertEquals ("expected a meta data file", 1,
+			inspector.getCount (EntryKind.METADATA));
+	}
+	
+	
+	/**
+	 * Test inspecting generated containers.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testGenerated () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (5);
+		generator.setMetadataDensity (1);
+		generator.setAnnotationFanOut (2);
+		File ca = generator.generateCombineArchive (new File (folder.getRoot (),
+			"gen.omex"));
+		File ro = generator.generateResearchObject (new File (folder.getRoot (),
+			"gen.ro"));
+		
+		ContainerInspector inspector = new ContainerInspector (ca);
+		assertConsistent (inspector);
+		assertEquals ("expected a combine archive", ContainerType.COMBINE_ARCHIVE,
+			inspector.getType ());
+		
+		inspector = new ContainerInspector (ro);
+		assertConsistent (inspector);
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			inspector.getType ());
+		assertTrue ("expected annotations",
+			inspector.getCount (EntryKind.ANNOTATION) > 0);
+	}
+	
+	
+	/**
+	 * Test inspecting a file that isn't a zip file.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testNoZip () throws IOException
+	{
+		File text = folder.newFile ("text");
+		Files.write (text.toPath (), "this is definitely not a zip file"
+			.getBytes ());
+		try
+		{
+			new ContainerInspector (text);
+			fail ("shouldn't be able to inspect a text file");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+}
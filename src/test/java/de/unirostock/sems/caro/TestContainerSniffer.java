@@ -0,0 +1,238 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.ContainerSniffer.ContainerType;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestContainerSniffer
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Test sniffing the containers shipped with the tests.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testExamples () throws IOException
+	{
+		assertEquals ("expected a combine archive", ContainerType.COMBINE_ARCHIVE,
+			ContainerSniffer.sniff (CaRoTests.CA_EXAMPLE1));
+		assertEquals ("expected a combine archive", ContainerType.COMBINE_ARCHIVE,
+			ContainerSniffer.sniff (CaRoTests.CA_EXAMPLE_CONTAINS_MANIFEST));
+		assertEquals ("expected a combine archive", ContainerType.COMBINE_ARCHIVE,
+			ContainerSniffer.sniff (CaRoTests.CA_EXAMPLE_CONTAINS_EVOLUTION));
+		
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (CaRoTests.RO_EXAMPLE1));
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (CaRoTests.RO_EXAMPLE_CONTAINING_REMOTES));
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (CaRoTests.RO_EXAMPLE_CONTAINS_MANIFEST));
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (CaRoTests.RO_EXAMPLE_CONTAINS_METAFILE));
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS));
+	}
+	
+	
+	/**
+	 * Test sniffing generated containers.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testGenerated () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (5);
+		File ca = generator.generateCombineArchive (new File (folder.getRoot (),
+			"gen.omex"));
+		File ro = generator.generateResearchObject (new File (folder.getRoot (),
+			"gen.ro"));
+		assertEquals ("expected a combine archive", ContainerType.COMBINE_ARCHIVE,
+			ContainerSniffer.sniff (ca));
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (ro));
+	}
+	
+	
+	/**
+	 * Turn a zip file into a zip64 file: the fields of the end of central
+	 * directory record are set to their limits and the actual values are
+	 * stored in a zip64 end of central directory record. The zip file must not
+	 * have a comment.
+	 * 
+	 * @param zip
+	 *          the zip file
+	 * @param zip64
+	 *          the zip64 file to create
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	private static void toZip64 (File zip, File zip64) throws IOException
+	{
+		byte[] bytes = Files.readAllBytes (zip.toPath ());
+		int endOffset = bytes.length - ZipDirectory.END_OF_DIRECTORY_SIZE;
+		ByteBuffer end = ByteBuffer.wrap (bytes, endOffset,
+			ZipDirectory.END_OF_DIRECTORY_SIZE).slice ().order (
+			ByteOrder.LITTLE_ENDIAN);
+		assertEquals ("expected an end of central directory record",
+			ZipDirectory.END_OF_DIRECTORY_SIGNATURE, end.getInt (0));
+		long count = end.getShort (10) & 0xffff;
+		long directorySize = end.getInt (12) & 0xffffffffL;
+		long directoryOffset = end.getInt (16) & 0xffffffffL;
+		
+		ByteBuffer tail = ByteBuffer.allocate (
+			ZipDirectory.ZIP64_END_OF_DIRECTORY_SIZE
+				+ ZipDirectory.ZIP64_LOCATOR_SIZE + ZipDirectory.END_OF_DIRECTORY_SIZE)
+			.order (ByteOrder.LITTLE_ENDIAN);
+		tail.putInt (ZipDirectory.ZIP64_END_OF_DIRECTORY_SIGNATURE);
+		tail.putLong (ZipDirectory.ZIP64_END_OF_DIRECTORY_SIZE - 12);
+		tail.putShort ((short) 45);
+		tail.putShort ((short) 45);
+		tail.putInt (0);
+		tail.putInt (0);
+		tail.putLong (count);
+		tail.putLong (count);
+		tail.putLong (directorySize);
+		tail.putLong (directoryOffset);
+		tail.putInt (ZipDirectory.ZIP64_LOCATOR_SIGNATURE);
+		tail.putInt (0);
+		tail.putLong (endOffset);
+		tail.putInt (1);
+		tail.putInt (ZipDirectory.END_OF_DIRECTORY_SIGNATURE);
+		tail.putShort ((short) 0);
+		tail.putShort ((short) 0);
+		tail.putShort ((short) 0xffff);
+		tail.putShort ((short) 0xffff);
+		tail.putInt ((int) ZipDirectory.ZIP64_LIMIT);
+		tail.putInt ((int) ZipDirectory.ZIP64_LIMIT);
+		tail.putShort ((short) 0);
+		
+		try (OutputStream out = Files.newOutputStream (zip64.toPath ()))
+		{
+			out.write (bytes, 0, endOffset);
+			out.write (tail.array ());
+		}
+	}
+	
+	
+	/**
+	 * Test sniffing zip64 containers, whose end of central directory record
+	 * doesn't tell where the central directory is.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testZip64 () throws Exception
+	{
+		File ca = new File (folder.getRoot (), "ca.zip");
+		try (ZipOutputStream out = new ZipOutputStream (Files.newOutputStream (ca
+			.toPath ())))
+		{
+			out.putNextEntry (new ZipEntry ("model.xml"));
+			out.write ("<sbml/>".getBytes ());
+			out.putNextEntry (new ZipEntry ("manifest.xml"));
+			out.write ("<omexManifest/>".getBytes ());
+		}
+		File ca64 = new File (folder.getRoot (), "ca64.omex");
+		toZip64 (ca, ca64);
+		assertEquals ("expected a combine archive", ContainerType.COMBINE_ARCHIVE,
+			ContainerSniffer.sniff (ca64));
+		
+		// the mime type isn't the first entry
+		File ro = new File (folder.getRoot (), "ro.zip");
+		try (ZipOutputStream out = new ZipOutputStream (Files.newOutputStream (ro
+			.toPath ())))
+		{
+			out.putNextEntry (new ZipEntry ("data.txt"));
+			out.write ("data".getBytes ());
+			out.putNextEntry (new ZipEntry (".ro/manifest.json"));
+			out.write ("{}".getBytes ());
+		}
+		File ro64 = new File (folder.getRoot (), "ro64.ro");
+		toZip64 (ro, ro64);
+		assertEquals ("expected a research object", ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (ro64));
+		
+		try (SeekableByteChannel channel = Files.newByteChannel (ro64.toPath ()))
+		{
+			assertEquals ("expected a research object",
+				ContainerType.RESEARCH_OBJECT, ContainerSniffer.sniff (channel));
+		}
+	}
+	
+	
+	/**
+	 * Test sniffing files that aren't containers.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testUnknown () throws IOException
+	{
+		File empty = folder.newFile ("empty");
+		assertEquals ("expected an unknown container", ContainerType.UNKNOWN,
+			ContainerSniffer.sniff (empty));
+		
+		File text = folder.newFile ("text");
+		Files.write (text.toPath (), "this is definitely not a zip file"
+			.getBytes ());
+		assertEquals ("expected an unknown container", ContainerType.UNKNOWN,
+			ContainerSniffer.sniff (text));
+		
+		// a zip header without a central directory
+		File truncated = folder.newFile ("truncated");
+		byte[] head = Files.readAllBytes (CaRoTests.CA_EXAMPLE1.toPath ());
+		Files.write (truncated.toPath (), Arrays.copyOf (head, 100));
+		assertEquals ("expected an unknown container", ContainerType.UNKNOWN,
+			ContainerSniffer.sniff (truncated));
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.ConversionPlan.Action;
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestConversionPlan
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Test planning the conversion of combine archives.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCaToRo () throws Exception
+	{
+		File workspaces = folder.newFolder ("workspaces");
+		CaToRo conv = new CaToRo (CaRoTests.CA_EXAMPLE1);
+		conv.setTemporaryRoot (workspaces);
+		ConversionPlan plan = conv.plan ();
+		assertNotNull ("planning did fail", plan);
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		assertEquals ("expected workspaces to be removed", 0,
+			workspaces.list ().length);
+		assertEquals ("didn't expect to drop entries", 0, plan.getCount (Action.DROP));
+		for (ConversionPlan.Entry entry : plan.getEntries (Action.COPY))
+			assertTrue ("expected the size of " + entry, entry.getSize () >= 0
+				&& entry.getCompressedSize () >= 0);
+		
+		File ro = new File (folder.getRoot (), "example.ro");
+		assertTrue ("converting did fail", conv.convertTo (ro));
+		assertEquals ("expected the planned entries to be converted",
+			conv.getStatistics ().getEntries (), plan.getCount (Action.COPY));
+		assertEquals ("expected the planned payload", conv.getStatistics ()
+			.getBytesWritten (), plan.getPayloadSize ());
+		assertTrue ("expected a reasonable estimation", plan.getEstimatedSize () > ro
+			.length () / 2 && plan.getEstimatedSize () < ro.length () * 2);
+		
+		// special files are dropped
+		conv = new CaToRo (CaRoTests.CA_EXAMPLE_CONTAINS_MANIFEST);
+		plan = conv.plan ();
+		assertNotNull ("planning did fail", plan);
+		assertTrue ("expected dropped entries", plan.getCount (Action.DROP) > 0);
+		assertTrue ("expected a warning", conv.hasWarnings ());
+		for (ConversionPlan.Entry entry : plan.getEntries (Action.DROP))
+			assertEquals ("didn't expect a target", null, entry.getTarget ());
+	}
+	
+	
+	/**
+	 * Test planning the conversion of research objects.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testRoToCa () throws Exception
+	{
+		RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE1);
+		ConversionPlan plan = conv.plan ();
+		assertNotNull ("planning did fail", plan);
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		
+		assertTrue ("converting did fail",
+			conv.convertTo (new File (folder.getRoot (), "example.omex")));
+		assertEquals ("expected the planned entries to be converted", conv
+			.getStatistics ().getEntries (), plan.getCount (Action.COPY)
+			+ plan.getCount (Action.GUESS_FORMAT));
+		assertEquals ("expected the planned format guesses", conv
+			.getStatistics ().getFormatGuesses (),
+			plan.getCount (Action.GUESS_FORMAT));
+		
+		// remote files are skipped
+		plan = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINING_REMOTES).plan ();
+		assertNotNull ("planning did fail", plan);
+		assertTrue ("expected remote entries", plan.getCount (Action.REMOTE) > 0);
+		
+		// special files are dropped
+		plan = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_MANIFEST).plan ();
+		assertNotNull ("planning did fail", plan);
+		assertTrue ("expected dropped entries", plan.getCount (Action.DROP) > 0);
+	}
+	
+	
+	/**
+	 * Test planning and converting a container read from a stream.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testStream () throws Exception
+	{
+		File workspaces = folder.newFolder ("workspaces");
+		try (InputStream in = Files.newInputStream (CaRoTests.CA_EXAMPLE1
+			.toPath ()))
+		{
+			CaToRo conv = new CaToRo (in);
+			conv.setTemporaryRoot (workspaces);
+			ConversionPlan plan = conv.plan ();
+			assertNotNull ("planning did fail", plan);
+			assertEquals ("expected the spooled container to be kept", 1,
+				workspaces.list ().length);
+			
+			File ro = new File (folder.getRoot (), "stream.ro");
+			assertTrue ("converting did fail", conv.convertTo (ro));
+			assertFalse ("didn't expect errors", conv.hasErrors ());
+			assertEquals ("expected the planned entries to be converted", conv
+				.getStatistics ().getEntries (), plan.getCount (Action.COPY));
+			assertEquals ("expected workspaces to be removed", 0,
+				workspaces.list ().length);
+		}
+		
+		// closing removes the spooled container if it isn't converted
+		try (InputStream in = Files.newInputStream (CaRoTests.CA_EXAMPLE1
+			.toPath ()))
+		{
+			CaToRo conv = new CaToRo (in);
+			conv.setTemporaryRoot (workspaces);
+			assertNotNull ("planning did fail", conv.plan ());
+			assertNotNull ("planning twice did fail", conv.plan ());
+			conv.close ();
+			assertEquals ("expected workspaces to be removed", 0,
+				workspaces.list ().length);
+		}
+	}
+	
+	
+	/**
+	 * Test planning the conversion of something that is no container.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testBroken () throws Exception
+	{
+		File broken = folder.newFile ("broken.ro");
+		RoToCa conv = new RoToCa (broken);
+		assertEquals ("expected planning to fail", null, conv.plan ());
+		assertTrue ("expected errors", conv.hasErrors ());
+	}
+}
@@ -23,14 +23,21 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.apache.taverna.robundle.Bundle;
+import org.apache.taverna.robundle.Bundles;
 import org.apache.taverna.robundle.fs.BundleFileSystemProvider;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import de.unirostock.sems.cbarchive.meta.omex.VCard;
 
@@ -53,6 +60,10 @@ public class TestMain
 	
 	private static PrintStream		out, err;
 	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder				folder	= new TemporaryFolder ();
+	
 	
 	/**
 	 * Test files.
@@ -276,6 +287,286 @@ public class TestMain
 	}
 	
 	
+	/**
+	 * Test converting from stdin to stdout.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testStandardStreams () throws IOException
+	{
+		CaRo.DIE = false;
+		InputStream in = System.in;
+		try
+		{
+			System.setIn (Files.newInputStream (CaRoTests.CA_EXAMPLE1.toPath ()));
+			CaRo.main (new String[] { "--caro", "-i", "-", "-o", "-" });
+		}
+		finally
+		{
+			System.in.close ();
+			System.setIn (in);
+		}
+		
+		byte[] converted = outContent.toByteArray ();
+		assertTrue ("expected a zip on stdout", converted.length > 4
+			&& converted[0] == 'P' && converted[1] == 'K');
+		File ro = folder.newFile ("stdout.ro");
+		Files.write (ro.toPath (), converted);
+		Bundle bundle = Bundles.openBundle (ro.toPath ());
+		assertTrue ("expected aggregates in the converted container", bundle
+			.getManifest ().getAggregates ().size () > 0);
+		bundle.close ();
+		
+		// the type of a container read from stdin can be detected
+		errContent.reset ();
+		File omex = new File (folder.getRoot (), "stdin.omex");
+		try
+		{
+			System.setIn (Files.newInputStream (ro.toPath ()));
+			CaRo.main (new String[] { "--auto", "-i", "-", "-o",
+				omex.getAbsolutePath () });
+		}
+		finally
+		{
+			System.in.close ();
+			System.setIn (in);
+		}
+		assertFalse ("did not expect the type to be unknown: " + errContent,
+			errContent.toString ().contains ("neither"));
+		assertTrue ("expected a combine archive", omex.exists ());
+		
+		// batch mode needs files
+		errContent.reset ();
+		CaRo.main (new String[] { "--caro", "--batch", "-i", "-", "-o",
+			folder.getRoot ().getAbsolutePath () });
+		assertTrue ("expected an error", errContent.toString ().contains ("stdin"));
+	}
+	
+	
+	/**
+	 * Test the batch mode.
+	 */
+	@Test
+	public void testBatch ()
+	{
+		CaRo.DIE = false;
+		try
+		{
+			File in = folder.newFolder ("in");
+			File outDir = new File (folder.getRoot (), "out");
+			for (int i = 0; i < 3; i++)
+				Files.copy (CaRoTests.CA_EXAMPLE1.toPath (), new File (in, "archive" + i
+					+ ".omex").toPath ());
+			Files.write (new File (in, "broken.omex").toPath (), "no zip".getBytes ());
+			
+			CaRo.main (new String[] { "--caro", "--batch", "-j", "2", "-i",
+				in.getAbsolutePath (), "-o", outDir.getAbsolutePath () });
+			
+			String[] lines = outContent.toString ().trim ().split ("\n");
+			assertEquals ("expected a result line per container: "
+				+ outContent.toString (), 4, lines.length);
+			for (int i = 0; i < 3; i++)
+				assertTrue ("expected converted container",
+					new File (outDir, "archive" + i + ".ro").exists ());
+			assertFalse ("did not expect converted container", new File (outDir,
+				"broken.ro").exists ());
+			assertTrue ("expected a summary of failures", errContent.toString ()
+				.contains ("1 of 4"));
+			
+			errContent.reset ();
+			outContent.reset ();
+			
+			// convert them back, using a list file
+			File list = new File (folder.getRoot (), "list");
+			Files.write (list.toPath (), ("# converted ROs\n"
+				+ new File (outDir, "archive0.ro").getAbsolutePath () + "\n\n"
+				+ new File (outDir, "archive1.ro").getAbsolutePath () + "\n")
+				.getBytes ());
+			File outDir2 = new File (folder.getRoot (), "out2");
+			CaRo.main (new String[] { "--roca", "--batch", "-i",
+				list.getAbsolutePath (), "-o", outDir2.getAbsolutePath () });
+			assertEquals ("did not expect an error: " + errContent.toString (), 0,
+				errContent.toString ().length ());
+			lines = outContent.toString ().trim ().split ("\n");
+			assertEquals ("expected a result line per container", 2, lines.length);
+			assertTrue ("expected converted container", new File (outDir2,
+				"archive0.omex").exists ());
+			assertTrue ("expected converted container", new File (outDir2,
+				"archive1.omex").exists ());
+			
+			errContent.reset ();
+			outContent.reset ();
+			
+			// convert in virtual threads, with at most one open container
+			File outDir3 = new File (folder.getRoot (), "out3");
+			CaRo.main (new String[] { "--caro", "--batch", "--virtual", "-j", "1",
+				"-i", in.getAbsolutePath (), "-o", outDir3.getAbsolutePath () });
+			lines = outContent.toString ().trim ().split ("\n");
+			assertEquals ("expected a result line per container", 4, lines.length);
+			for (int i = 0; i < 3; i++)
+				assertTrue ("expected converted container",
+					new File (outDir3, "archive" + i + ".ro").exists ());
+		}
+		catch (IOException e)
+		{
+			fail ("failed to prepare batch: " + e.getMessage ());
+		}
+	}
+	
+	
+	/**
+	 * Test detecting the direction of conversions.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testAuto () throws IOException
+	{
+		CaRo.DIE = false;
+		File ro = new File (folder.getRoot (), "auto.ro");
+		File ca = new File (folder.getRoot (), "auto.omex");
+		
+		CaRo.main (new String[] { "--auto", "-i",
+			CaRoTests.CA_EXAMPLE1.getAbsolutePath (), "-o", ro.getAbsolutePath () });
+		assertEquals ("did not expect an error: " + errContent.toString (), 0,
+			errContent.toString ().length ());
+		assertTrue ("expected a research object", ro.exists ());
+		Bundle bundle = Bundles.openBundleReadOnly (ro.toPath ());
+		assertEquals ("expected a research object",
+			BundleFileSystemProvider.APPLICATION_VND_WF4EVER_ROBUNDLE_ZIP,
+			Bundles.getMimeType (bundle));
+		bundle.close ();
+		
+		CaRo.main (new String[] { "-a", "-i", ro.getAbsolutePath (), "-o",
+			ca.getAbsolutePath () });
+		assertEquals ("did not expect an error: " + errContent.toString (), 0,
+			errContent.toString ().length ());
+		assertTrue ("expected a combine archive", ca.exists ());
+		
+		// neither a combine archive nor a research object
+		File broken = folder.newFile ("broken");
+		Files.write (broken.toPath (), "no zip".getBytes ());
+		CaRo.main (new String[] { "--auto", "-i", broken.getAbsolutePath (), "-o",
+			new File (folder.getRoot (), "broken.out").getAbsolutePath () });
+		assertTrue ("expected an error", errContent.toString ().contains (
+			"neither a combine archive nor a research object"));
+		
+		errContent.reset ();
+		
+		// only one direction is allowed
+		CaRo.main (new String[] { "--auto", "--caro", "-i",
+			CaRoTests.CA_EXAMPLE1.getAbsolutePath (), "-o",
+			new File (folder.getRoot (), "twice.ro").getAbsolutePath () });
+		assertTrue ("expected an error", errContent.toString ().contains (
+			"exactly one of"));
+		
+		errContent.reset ();
+		outContent.reset ();
+		
+		// batch mode with mixed containers
+		File in = folder.newFolder ("mixed");
+		Files.copy (CaRoTests.CA_EXAMPLE1.toPath (), new File (in, "archive.omex")
+			.toPath ());
+		Files.copy (CaRoTests.RO_EXAMPLE1.toPath (), new File (in, "object.ro")
+			.toPath ());
+		File outDir = new File (folder.getRoot (), "mixed-out");
+		CaRo.main (new String[] { "--auto", "--batch", "-i", in.getAbsolutePath (),
+			"-o", outDir.getAbsolutePath () });
+		assertEquals ("did not expect an error: " + errContent.toString (), 0,
+			errContent.toString ().length ());
+		assertTrue ("expected converted container",
+			new File (outDir, "archive.ro").exists ());
+		assertTrue ("expected converted container",
+			new File (outDir, "object.omex").exists ());
+		
+		// missing containers are reported without a target, as the direction is
+		// unknown
+		outContent.reset ();
+		File missing = new File (in, "missing.omex");
+		File list = folder.newFile ("missing.txt");
+		Files.write (list.toPath (), missing.getAbsolutePath ().getBytes ());
+		CaRo.main (new String[] { "--auto", "--batch", "-i",
+			list.getAbsolutePath (), "-o", outDir.getAbsolutePath () });
+		assertTrue ("expected the missing container: " + outContent.toString (),
+			outContent.toString ().contains (
+				"FAILED " + missing + " : file does not exist"));
+	}
+	
+	
+	/**
+	 * Test copying compressed entries from the command line.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testRaw () throws IOException
+	{
+		CaRo.DIE = false;
+		File ro = new File (folder.getRoot (), "raw.ro");
+		CaRo.main (new String[] { "--caro", "--raw", "-i",
+			CaRoTests.CA_EXAMPLE1.getAbsolutePath (), "-o", ro.getAbsolutePath () });
+		assertEquals ("did not expect an error: " + errContent.toString (), 0,
+			errContent.toString ().length ());
+		Bundle bundle = Bundles.openBundleReadOnly (ro.toPath ());
+		try
+		{
+			assertTrue ("expected aggregates", bundle.getManifest ()
+				.getAggregates ().size () > 0);
+		}
+		finally
+		{
+			bundle.close ();
+		}
+	}
+	
+	
+	/**
+	 * Test converting with a compression policy from the command line.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testCompression () throws IOException
+	{
+		CaRo.DIE = false;
+		File omex = new File (folder.getRoot (), "compressed.omex");
+		CaRo.main (new String[] { "--roca", "--compression", "best", "-i",
+			CaRoTests.RO_EXAMPLE1.getAbsolutePath (), "-o", omex.getAbsolutePath () });
+		assertEquals ("did not expect an error: " + errContent.toString (), 0,
+			errContent.toString ().length ());
+		assertTrue ("expected the target to be written", omex.exists ());
+		
+		omex = new File (folder.getRoot (), "unknown.omex");
+		CaRo.main (new String[] { "--roca", "--compression", "maximum", "-i",
+			CaRoTests.RO_EXAMPLE1.getAbsolutePath (), "-o", omex.getAbsolutePath () });
+		assertTrue ("expected an error", errContent.toString ().length () > 0);
+		assertFalse ("didn't expect the target to be written", omex.exists ());
+	}
+	
+	
+	/**
+	 * Test planning a conversion from the command line.
+	 */
+	@Test
+	public void testPlan ()
+	{
+		CaRo.DIE = false;
+		File ro = new File (folder.getRoot (), "planned.ro");
+		CaRo.main (new String[] { "--caro", "--plan", "-i",
+			CaRoTests.CA_EXAMPLE1.getAbsolutePath (), "-o", ro.getAbsolutePath () });
+		assertEquals ("did not expect an error: " + errContent.toString (), 0,
+			errContent.toString ().length ());
+		assertTrue ("expected the plan", outContent.toString ().contains (
+			"entries to copy"));
+		assertFalse ("didn't expect the target to be written", ro.exists ());
+	}
+	
+	
 	/**
 	 * Test stream collection.
 	 */
@@ -334,4 +625,39 @@ public class TestMain
 		v1.setFamilyName ("thing");
 		assertFalse ("expected vcards to not be equal", CaRoConverter.sameVcard (v1, v2));
 	}
+	
+	
+	/**
+	 * Test that the VCard index agrees with the pairwise comparison.
+	 */
+	@Test
+	public void testVcardIndex ()
+	{
+		String[] values = new String[] { null, "a", "b" };
+		List<VCard> vcards = new ArrayList<VCard> ();
+		for (String given : values)
+			for (String family : values)
+				for (String mail : values)
+					vcards.add (new VCard (family, given, mail, null));
+		
+		for (VCard a : vcards)
+		{
+			VCardIndex index = new VCardIndex ();
+			index.add (a);
+			for (VCard b : vcards)
+				assertEquals ("index disagrees with sameVcard for " + a + " and " + b,
+					CaRoConverter.sameVcard (a, b), index.contains (b));
+		}
+		
+		VCardIndex index = new VCardIndex ();
+		index.addAll (vcards);
+		for (VCard b : vcards)
+		{
+			boolean expected = false;
+			for (VCard a : vcards)
+				expected |= CaRoConverter.sameVcard (a, b);
+			assertEquals ("index disagrees with sameVcard for " + b, expected,
+				index.contains (b));
+		}
+	}
 }
@@ -0,0 +1,367 @@
+/**
+ * Copyright © 2015 Martin Scharm <martin@binfalse.de>
+ * 
+ * This file is part of CaRo.
+ * 
+ * CaRo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * CaRo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CaRo. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unirostock.sems.caro;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.taverna.robundle.Bundle;
+import org.apache.taverna.robundle.Bundles;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unirostock.sems.caro.converters.CaToRo;
+import de.unirostock.sems.caro.converters.RoToCa;
+import de.unirostock.sems.cbarchive.CombineArchive;
+
+
+
+/**
+ * @author Martin Scharm
+ * 
+ */
+public class TestRawCopy
+{
+	
+	/** A temporary folder. */
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder ();
+	
+	
+	/**
+	 * Read an entry of a zip file.
+	 * 
+	 * @param zip
+	 *          the zip file
+	 * @param entry
+	 *          the entry
+	 * @return the contents
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	static byte[] read (ZipFile zip, ZipEntry entry) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		try (InputStream in = zip.getInputStream (entry))
+		{
+			byte[] buffer = new byte[4096];
+			int n;
+			while ( (n = in.read (buffer)) > 0)
+				out.write (buffer, 0, n);
+		}
+		return out.toByteArray ();
+	}
+	
+	
+	/**
+	 * Assert that two zip files contain the same entries with the same
+	 * contents.
+	 * 
+	 * @param expected
+	 *          the expected zip file
+	 * @param actual
+	 *          the actual zip file
+	 * @param ignore
+	 *          the contents of entries starting with these prefixes are not
+	 *          compared
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	static void assertSameContents (File expected, File actual,
+		String... ignore) throws IOException
+	{
+		try (ZipFile expectedZip = new ZipFile (expected);
+			ZipFile actualZip = new ZipFile (actual))
+		{
+			assertEquals ("expected the same number of entries",
+				expectedZip.size (), actualZip.size ());
+			Enumeration<? extends ZipEntry> entries = expectedZip.entries ();
+			while (entries.hasMoreElements ())
+			{
+				ZipEntry entry = entries.nextElement ();
+				ZipEntry other = actualZip.getEntry (entry.getName ());
+				assertNotNull ("missing entry " + entry.getName (), other);
+				if (isIgnored (entry.getName (), ignore))
+					continue;
+				assertArrayEquals ("different contents of " + entry.getName (),
+					read (expectedZip, entry), read (actualZip, other));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Should the contents of an entry be ignored?
+	 * 
+	 * @param name
+	 *          the name of the entry
+	 * @param ignore
+	 *          the prefixes of ignored entries
+	 * @return true, if the entry starts with one of the prefixes
+	 */
+	private static boolean isIgnored (String name, String... ignore)
+	{
+		for (String prefix : ignore)
+			if (name.startsWith (prefix))
+				return true;
+		return false;
+	}
+	
+	
+	/**
+	 * Test repacking a zip file without changing anything.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testRepack () throws IOException
+	{
+		File copy = new File (folder.getRoot (), "copy.omex");
+		try (ZipDirectory source = new ZipDirectory (CaRoTests.CA_EXAMPLE1);
+			RawZipWriter writer = new RawZipWriter (copy))
+		{
+			for (ZipDirectory.Entry entry : source.getEntries ())
+				writer.copyEntry (source, entry);
+			assertEquals ("expected all entries", source.getEntries ().size (),
+				writer.getEntryCount ());
+		}
+		assertSameContents (CaRoTests.CA_EXAMPLE1, copy);
+		
+		try (ZipDirectory source = new ZipDirectory (CaRoTests.CA_EXAMPLE1);
+			ZipDirectory repacked = new ZipDirectory (copy))
+		{
+			for (ZipDirectory.Entry entry : source.getEntries ())
+			{
+				ZipDirectory.Entry other = repacked.getEntry (entry.getName ());
+				assertEquals ("expected the same compressed size", entry
+					.getCompressedSize (), other.getCompressedSize ());
+				assertEquals ("expected the same crc", entry.getCrc (),
+					other.getCrc ());
+				assertEquals ("expected the same method", entry.getMethod (),
+					other.getMethod ());
+			}
+		}
+	}
+	
+	
+	/**
+	 * Test repacking a zip file with more entries than fit into the end of
+	 * central directory record.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testZip64 () throws IOException
+	{
+		int count = 0x10000 + 10;
+		File zip = new File (folder.getRoot (), "many.zip");
+		try (ZipOutputStream out = new ZipOutputStream (Files.newOutputStream (zip
+			.toPath ())))
+		{
+			for (int i = 0; i < count; i++)
+			{
+				out.putNextEntry (new ZipEntry ("entry" + i));
+				out.write ( ("content " + i).getBytes ());
+			}
+		}
+		
+		File copy = new File (folder.getRoot (), "copy.zip");
+		try (ZipDirectory source = new ZipDirectory (zip);
+			RawZipWriter writer = new RawZipWriter (copy))
+		{
+			assertEquals ("expected all entries", count, source.getEntries ()
+				.size ());
+			for (ZipDirectory.Entry entry : source.getEntries ())
+				writer.copyEntry (source, entry);
+		}
+		try (ZipDirectory repacked = new ZipDirectory (copy))
+		{
+			assertEquals ("expected all entries", count, repacked.getEntries ()
+				.size ());
+		}
+		try (ZipFile copied = new ZipFile (copy))
+		{
+			assertEquals ("expected all entries", count, copied.size ());
+			assertArrayEquals ("expected the contents", "content 65540".getBytes (),
+				read (copied, copied.getEntry ("entry65540")));
+		}
+	}
+	
+	
+	/**
+	 * Test that files other than zip files are rejected.
+	 * 
+	 * @throws IOException
+	 *           Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testNoZip () throws IOException
+	{
+		File file = folder.newFile ("nozip");
+		Files.write (file.toPath (), "no zip".getBytes ());
+		try
+		{
+			new ZipDirectory (file).close ();
+			fail ("expected the file to be rejected");
+		}
+		catch (ZipException e)
+		{
+			// expected
+		}
+	}
+	
+	
+	/**
+	 * Test copying the entries of a combine archive raw into a research object.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testCaToRo () throws Exception
+	{
+		ContainerGenerator generator = new ContainerGenerator (7);
+		generator.setEntries (20);
+		File ca = generator.generateCombineArchive (folder.newFile ("gen.omex"));
+		
+		File expected = new File (folder.getRoot (), "expected.ro");
+		assertTrue ("converting did fail", new CaToRo (ca).convertTo (expected));
+		
+		File raw = new File (folder.getRoot (), "raw.ro");
+		CaToRo conv = new CaToRo (ca);
+		conv.setRawCopy (true);
+		assertTrue ("expected raw copying", conv.isRawCopy ());
+		assertTrue ("converting did fail", conv.convertTo (raw));
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		
+		// the manifest contains time stamps
+		assertSameContents (expected, raw, ".ro/");
+		assertEquals ("research objects start with their mime type",
+			ContainerSniffer.ContainerType.RESEARCH_OBJECT,
+			ContainerSniffer.sniff (raw));
+		Bundle bundle = Bundles.openBundleReadOnly (raw.toPath ());
+		try
+		{
+			assertEquals ("expected all entries", 20, bundle.getManifest ()
+				.getAggregates ().size ());
+		}
+		finally
+		{
+			bundle.close ();
+		}
+		
+		// the compressed bytes are the same as in the archive
+		try (ZipDirectory source = new ZipDirectory (ca);
+			ZipDirectory target = new ZipDirectory (raw))
+		{
+			for (ZipDirectory.Entry entry : source.getEntries ())
+			{
+				if (entry.getName ().equals ("manifest.xml")
+					|| entry.getName ().equals ("metadata.rdf"))
+					continue;
+				ZipDirectory.Entry copied = target.getEntry (entry.getName ());
+				assertNotNull ("missing entry " + entry.getName (), copied);
+				assertEquals ("expected the same compressed size", entry
+					.getCompressedSize (), copied.getCompressedSize ());
+			}
+		}
+	}
+	
+	
+	/**
+	 * Test copying the entries of a research object raw into a combine archive.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testRoToCa () throws Exception
+	{
+		File expected = new File (folder.getRoot (), "expected.omex");
+		assertTrue ("converting did fail",
+			new RoToCa (CaRoTests.RO_EXAMPLE1).convertTo (expected));
+		
+		File raw = new File (folder.getRoot (), "raw.omex");
+		RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE1);
+		conv.setRawCopy (true);
+		assertTrue ("converting did fail", conv.convertTo (raw));
+		assertFalse ("didn't expect errors", conv.hasErrors ());
+		
+		// the meta data contains time stamps, and the order of the manifest
+		// isn't stable
+		assertSameContents (expected, raw, "metadata.rdf", "manifest.xml");
+		CombineArchive archive = new CombineArchive (raw);
+		try
+		{
+			assertTrue ("expected some entries", archive.getNumEntries () > 0);
+		}
+		finally
+		{
+			archive.close ();
+		}
+	}
+	
+	
+	/**
+	 * Test copying raw if the source container is read from a stream.
+	 * 
+	 * @throws Exception
+	 *           the exception
+	 */
+	@Test
+	public void testStreamed () throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		try (InputStream in = Files.newInputStream (CaRoTests.CA_EXAMPLE1
+			.toPath ()))
+		{
+			CaToRo conv = new CaToRo (in);
+			conv.setRawCopy (true);
+			assertTrue ("converting did fail", conv.convertTo (out));
+		}
+		File raw = folder.newFile ("streamed.ro");
+		try (OutputStream file = Files.newOutputStream (raw.toPath ()))
+		{
+			out.writeTo (file);
+		}
+		File expected = new File (folder.getRoot (), "expected.ro");
+		assertTrue ("converting did fail",
+			new CaToRo (CaRoTests.CA_EXAMPLE1).convertTo (expected));
+		assertSameContents (expected, raw, ".ro/");
+	}
+}
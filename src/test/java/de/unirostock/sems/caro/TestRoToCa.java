@@ -27,6 +27,8 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.jena.ext.com.google.common.io.Files;
 import org.apache.taverna.robundle.Bundle;
@@ -36,6 +38,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import de.unirostock.sems.caro.CaRoTests.CaComparisonResult;
 import de.unirostock.sems.caro.converters.CaToRo;
 import de.unirostock.sems.caro.converters.RoToCa;
 import de.unirostock.sems.cbarchive.ArchiveEntry;
@@ -241,6 +244,15 @@ public class TestRoToCa
 			assertEquals ("expected 11 annotations", 11, ro.getManifest ().getAnnotations ().size ());
 			tmp.delete ();
 			//tmp2.delete ();
+			
+			// warnings can be ignored
+			conv = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+			conv.setMinimumSeverity (CaRoNotification.SERVERITY_ERROR);
+			assertTrue ("converting did fail", conv.convertTo (tmp));
+			assertFalse ("expected warnings to be ignored", conv.hasWarnings ());
+			assertEquals ("expected no notifications", 0, conv.getNotifications ()
+				.size ());
+			tmp.delete ();
 		}
 		catch (IOException e)
 		{
@@ -283,6 +295,105 @@ public class TestRoToCa
 	}
 	
 	
+	/**
+	 * Test that streaming entries and copying them through temporary files
+	 * result in the same combine archive.
+	 */
+	@Test
+	public void testStreaming ()
+	{
+		try
+		{
+			File streamed = folder.newFile ("streamed.omex");
+			File copied = folder.newFile ("copied.omex");
+			streamed.delete ();
+			copied.delete ();
+			
+			CaRoConverter conv = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+			assertTrue ("converting failed", conv.convertTo (streamed));
+			
+			conv = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+			conv.setStreamEntries (false);
+			assertTrue ("converting failed", conv.convertTo (copied));
+			
+			CombineArchive streamedCa = new CombineArchive (streamed);
+			CombineArchive copiedCa = new CombineArchive (copied);
+			assertEquals ("expected same number of entries", copiedCa.getEntries ()
+				.size (), streamedCa.getEntries ().size ());
+			assertEquals ("expected same number of main entries", copiedCa
+				.getMainEntries ().size (), streamedCa.getMainEntries ().size ());
+			for (ArchiveEntry entry : copiedCa.getEntries ())
+			{
+				ArchiveEntry other = streamedCa.getEntry (entry.getFilePath ());
+				assertNotNull ("missing entry " + entry.getFilePath (), other);
+				assertEquals ("format differs", entry.getFormat (), other.getFormat ());
+				assertEquals ("meta differs", entry.getDescriptions ().size (), other
+					.getDescriptions ().size ());
+				if (!entry.getFormat ().equals (CaRoConverter.URI_RO_CONV_ANNOTATION))
+					assertTrue ("content differs: " + entry.getFilePath (),
+						Arrays.equals (java.nio.file.Files.readAllBytes (entry.getPath ()),
+							java.nio.file.Files.readAllBytes (other.getPath ())));
+			}
+			streamedCa.close ();
+			copiedCa.close ();
+		}
+		catch (IOException | JDOMException | ParseException
+			| CombineArchiveException e)
+		{
+			e.printStackTrace ();
+			fail ("converting failed");
+		}
+	}
+	
+	
+	/**
+	 * Test processing entries concurrently.
+	 */
+	@Test
+	public void testParallel ()
+	{
+		try
+		{
+			File sequential = new File (folder.getRoot (), "sequential.omex");
+			File parallel = new File (folder.getRoot (), "parallel.omex");
+			
+			RoToCa conv = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+			assertTrue ("converting failed", conv.convertTo (sequential));
+			
+			conv = new RoToCa (CaRoTests.RO_EXAMPLE_CONTAINS_METATESTS);
+			conv.setParallelism (4);
+			assertTrue ("converting failed", conv.convertTo (parallel));
+			assertEquals ("expected exactly 2 notifications", 2, conv
+				.getNotifications ().size ());
+			
+			CombineArchive sequentialCa = new CombineArchive (sequential);
+			CombineArchive parallelCa = new CombineArchive (parallel);
+			CaComparisonResult comparison = CaRoTests.compareContainers (
+				sequentialCa, parallelCa);
+			assertEquals ("parallel conversion resulted in diff in entries: "
+				+ comparison, 0, comparison.numCa1Only + comparison.numCa2Only);
+			assertEquals ("parallel conversion resulted in diff in meta: "
+				+ comparison, 0, comparison.numMetaDiff);
+			assertEquals ("parallel conversion resulted in diff in main files: "
+				+ comparison, 0, comparison.numMainDiff);
+			for (ArchiveEntry entry : sequentialCa.getEntries ())
+				if (!entry.getFormat ().equals (CaRoConverter.URI_RO_CONV_ANNOTATION))
+					assertTrue ("content differs: " + entry.getFilePath (),
+						Arrays.equals (java.nio.file.Files.readAllBytes (entry.getPath ()),
+							java.nio.file.Files.readAllBytes (parallelCa.getEntry (
+								entry.getFilePath ()).getPath ())));
+			sequentialCa.close ();
+			parallelCa.close ();
+		}
+		catch (IOException | JDOMException | ParseException
+			| CombineArchiveException e)
+		{
+			e.printStackTrace ();
+			fail ("converting failed");
+		}
+	}
+	
+	
 	/**
 	 * Initial tests.
 	 */
@@ -304,4 +415,28 @@ public class TestRoToCa
 			fail ("converting failed");
 		}
 	}
+	
+	
+	/**
+	 * Test the statistics of a conversion.
+	 */
+	@Test
+	public void testStatistics ()
+	{
+		CaRoConverter conv = new RoToCa (CaRoTests.RO_EXAMPLE1);
+		assertTrue ("converting failed",
+			conv.convertTo (new File (folder.getRoot (), "stats.omex")));
+		ConversionStatistics stats = conv.getStatistics ();
+		assertTrue ("expected some entries", stats.getEntries () > 0);
+		assertTrue ("expected some bytes", stats.getBytesRead () > 0);
+		assertTrue ("expected to write at least what we read",
+			stats.getBytesWritten () >= stats.getBytesRead ());
+		assertTrue ("expected format guesses", stats.getFormatGuesses () > 0);
+		assertTrue ("guessing formats requires temporary files",
+			stats.getTemporaryBytes () > 0);
+		assertTrue ("expected time spent in conversion",
+			stats.getTotalTime (TimeUnit.NANOSECONDS) > 0);
+		assertTrue ("expected statistics in string representation", stats
+			.toString ().contains ("format guesses: " + stats.getFormatGuesses ()));
+	}
 }